@@ -22,7 +22,7 @@ public class Avaluacio {
 
     public static String DCG(Usuari LR, Usuari LT) {
         HashMap<Item, Double> copyLR = LR.getRatedItems();
-        HashMap<Item, Double> copyLT = LT.getRatedItems();
+        MapaIntDouble copyLT = LT.getValoraciones();
         HashMap<Item, Double> valueHolder = new HashMap<>(copyLR);
         double DCG, iDCG;
         iDCG = computeIdealDCG(sortByValue(valueHolder));
@@ -30,7 +30,7 @@ public class Avaluacio {
         i = 1;
         DCG = 0.;
         for (Item item : copyLR.keySet()) {
-            if (copyLT.get(item) != null) {
+            if (copyLT.contains(item.getOrdinal())) {
                 DCG += (Math.pow(2, copyLR.get(item)) - 1) / log(i + 1, 2);
             } else DCG += (Math.pow(2, 0) - 1) / log(i + 1, 2);
             i++;
@@ -0,0 +1,493 @@
+/**
+ @file CatalogoMapeado.java
+ @brief Codigo de la clase CatalogoMapeado
+
+ */
+package dominio.clases;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * @class CatalogoMapeado
+ * @brief Catalogo de items de solo lectura guardado en un fichero binario junto a items.csv y proyectado en memoria.
+ *    Los atributos enteros, reales, fechas (año) y booleanos (codigo del valor) se guardan en columnas de ancho fijo con la misma
+ *    disposicion que ColumnasItems (ordinal*numAtributos + atributo); los identificadores y las palabras de los BitSet
+ *    de los atributos categoricos van en una zona de longitud variable, indexada por una tabla de desplazamientos. El
+ *    catalogo se lee directamente de la proyeccion, sin deserializarlo al heap, de modo que varios procesos que abren el
+ *    mismo fichero comparten sus paginas en la cache del sistema operativo. Las distancias dan el mismo resultado que
+ *    NormalizacionItems. El fichero no puede superar los 2 GiB.
+ * @author Houda El Fezzak Bekkouri
+ */
+public final class CatalogoMapeado {
+
+    /**
+     * @brief Marca y version del formato del fichero del catalogo
+     */
+    private static final int MAGIA = 0x43415441;
+    private static final int VERSION = 3;
+
+    /**
+     * @brief Proyeccion del fichero del catalogo
+     */
+    private final ByteBuffer datos;
+
+    /**
+     * @brief Numero de items y de atributos de cada tipo (nCat es el maximo de atributos categoricos de un item)
+     */
+    private final int n, nInt, nDouble, nDate, nBool, nCat;
+
+    /**
+     * @brief Inverso del rango de cada atributo entero, real y fecha, como en NormalizacionItems
+     */
+    private final double[] invRangoInt, invRangoDouble, invRangoDate;
+
+    /**
+     * @brief Posicion en el fichero de cada seccion
+     */
+    private final int pEnteros, pReales, pAnyos, pBooleanos, pNumCat, pOffCat, pPalabras, pOffIds, pIds;
+
+    private CatalogoMapeado(ByteBuffer datos) throws IOException {
+        this.datos = datos;
+        int p = 8 + 32;
+        n = datos.getInt(p);
+        nInt = datos.getInt(p + 4);
+        nDouble = datos.getInt(p + 8);
+        nDate = datos.getInt(p + 12);
+        nBool = datos.getInt(p + 16);
+        nCat = datos.getInt(p + 20);
+        p += 24;
+        invRangoInt = new double[datos.getInt(p)];
+        invRangoDouble = new double[datos.getInt(p + 4)];
+        invRangoDate = new double[datos.getInt(p + 8)];
+        p += 16;
+        for (double[] inv : new double[][] {invRangoInt, invRangoDouble, invRangoDate})
+            for (int i = 0; i < inv.length; ++i, p += 8) inv[i] = datos.getDouble(p);
+        int[] secciones = new int[9];
+        for (int s = 0; s < secciones.length; ++s, p += 4) secciones[s] = datos.getInt(p);
+        pEnteros = secciones[0];
+        pReales = secciones[1];
+        pAnyos = secciones[2];
+        pBooleanos = secciones[3];
+        pNumCat = secciones[4];
+        pOffCat = secciones[5];
+        pPalabras = secciones[6];
+        pOffIds = secciones[7];
+        pIds = secciones[8];
+        if (pIds + datos.getInt(pOffIds + 4 * n) != datos.capacity()) throw new IOException("Catalogo truncado");
+    }
+
+    /**
+     * @brief Devuelve la ruta del fichero del catalogo correspondiente a un fichero de items
+     * @param pathToItems Ruta del fichero de items (items.csv)
+     * @return Ruta del fichero del catalogo, junto al de items
+     */
+    public static String rutaCatalogo(String pathToItems) {
+        return pathToItems + ".catalogo";
+    }
+
+    /**
+     * @brief Proyecta en memoria el catalogo guardado para un fichero de items
+     * @param pathToItems Ruta del fichero de items
+     * @param pathToAttrData_types Ruta del fichero con el tipo de dato de cada atributo
+     * @return El catalogo, o null si no existe o no corresponde a la version actual del fichero de items o del de tipos
+     * @throws IOException si el fichero del catalogo no se puede leer
+     */
+    public static CatalogoMapeado abrir(String pathToItems, String pathToAttrData_types) throws IOException {
+        File fichero = new File(rutaCatalogo(pathToItems));
+        if (!fichero.isFile()) return null;
+        File fuente = new File(pathToItems);
+        File tipos = new File(pathToAttrData_types);
+        try (FileChannel canal = FileChannel.open(fichero.toPath(), StandardOpenOption.READ)) {
+            if (canal.size() > Integer.MAX_VALUE) throw new IOException("Catalogo demasiado grande para proyectarlo");
+            MappedByteBuffer datos = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            datos.order(ByteOrder.nativeOrder());
+            if (datos.capacity() < 80 || datos.getInt(0) != MAGIA || datos.getInt(4) != VERSION) return null;
+            if (datos.getLong(8) != fuente.length() || datos.getLong(16) != fuente.lastModified()) return null;
+            if (datos.getLong(24) != tipos.length() || datos.getLong(32) != tipos.lastModified()) return null;
+            return new CatalogoMapeado(datos);
+        }
+    }
+
+    /**
+     * @brief Proyecta en memoria el catalogo guardado para un fichero de items o, si no existe o esta desactualizado, lo
+     * escribe a partir del conjunto de items leido de ese fichero
+     * @param dataset Conjunto de items leido del fichero
+     * @param pathToItems Ruta del fichero de items
+     * @param pathToAttrData_types Ruta del fichero con el tipo de dato de cada atributo
+     * @return El catalogo, o null si no se ha podido escribir ni leer
+     */
+    public static CatalogoMapeado abrirOEscribir(Cjt_items dataset, String pathToItems, String pathToAttrData_types) {
+        try {
+            CatalogoMapeado catalogo = abrir(pathToItems, pathToAttrData_types);
+            if (catalogo != null) return catalogo;
+            escribir(dataset, pathToItems, pathToAttrData_types);
+            return abrir(pathToItems, pathToAttrData_types);
+        } catch (IOException e) {
+            System.out.println(e);
+            return null;
+        }
+    }
+
+    /**
+     * @brief Escribe el catalogo de un conjunto de items en el fichero asociado al fichero de items. Se escribe en un
+     * fichero temporal que luego se renombra, para que un proceso que lo este leyendo nunca vea un catalogo a medias
+     * @param dataset Conjunto de items leido del fichero, con los atributos de cada item (sin catalogo asociado)
+     * @param pathToItems Ruta del fichero de items
+     * @param pathToAttrData_types Ruta del fichero con el tipo de dato de cada atributo, del que dependen las columnas
+     * y los rangos guardados
+     * @throws IOException si no se puede escribir el fichero
+     */
+    public static void escribir(Cjt_items dataset, String pathToItems, String pathToAttrData_types) throws IOException {
+        if (dataset.getCatalogo() != null) throw new IllegalArgumentException("Los atributos del conjunto ya se leen de un catalogo");
+        ColumnasItems columnas = dataset.getColumnas();
+        NormalizacionItems normalizacion = dataset.getNormalizacion();
+        double[] invInt = normalizacion.getInvRangoInt();
+        double[] invDouble = normalizacion.getInvRangoDouble();
+        double[] invDate = normalizacion.getInvRangoDate();
+        int n = columnas.size();
+        int nInt = columnas.getNumEnteros(), nDouble = columnas.getNumReales();
+        int nDate = columnas.getNumFechas(), nBool = columnas.getNumBooleanos();
+        int nCat = 0;
+        byte[][] ids = new byte[n][];
+        int bytesIds = 0;
+        for (int o = 0; o < n; ++o) {
+            Item it = columnas.getItem(o);
+            nCat = Math.max(nCat, it.getCategoryPscBits().size());
+            ids[o] = it.getId().getBytes(StandardCharsets.UTF_8);
+            bytesIds += ids[o].length;
+        }
+        long[][] palabras = new long[n * nCat][];
+        int nPalabras = 0;
+        for (int o = 0; o < n; ++o) {
+            ArrayList<BitSet> cats = columnas.getItem(o).getCategoryPscBits();
+            for (int c = 0; c < nCat; ++c) {
+                BitSet bs = c < cats.size() ? cats.get(c) : null;
+                palabras[o * nCat + c] = bs == null ? new long[0] : bs.toLongArray();
+                nPalabras += palabras[o * nCat + c].length;
+            }
+        }
+
+        long p = alinear(8 + 32 + 24 + 16 + 8L * (invInt.length + invDouble.length + invDate.length) + 4 * 9);
+        long pEnteros = p;
+        long pReales = p += 8L * n * nInt;
+        long pAnyos = p += 8L * n * nDouble;
+        long pBooleanos = p = alinear(p + 4L * n * nDate);
+        long pNumCat = p = alinear(p + 4L * n * nBool);
+        long pOffCat = p = alinear(p + 4L * n);
+        long pPalabras = p = alinear(p + 4L * (n * nCat + 1));
+        long pOffIds = p += 8L * nPalabras;
+        long pIds = p = alinear(p + 4L * (n + 1));
+        long total = p + bytesIds;
+        if (total > Integer.MAX_VALUE) throw new IOException("Catalogo demasiado grande para proyectarlo");
+
+        ByteBuffer out = ByteBuffer.allocate((int) total).order(ByteOrder.nativeOrder());
+        File fuente = new File(pathToItems), tipos = new File(pathToAttrData_types);
+        out.putInt(MAGIA).putInt(VERSION).putLong(fuente.length()).putLong(fuente.lastModified());
+        out.putLong(tipos.length()).putLong(tipos.lastModified());
+        out.putInt(n).putInt(nInt).putInt(nDouble).putInt(nDate).putInt(nBool).putInt(nCat);
+        out.putInt(invInt.length).putInt(invDouble.length).putInt(invDate.length).putInt(0);
+        for (double[] inv : new double[][] {invInt, invDouble, invDate})
+            for (double d : inv) out.putDouble(d);
+        for (long s : new long[] {pEnteros, pReales, pAnyos, pBooleanos, pNumCat, pOffCat, pPalabras, pOffIds, pIds})
+            out.putInt((int) s);
+
+        out.position((int) pEnteros);
+        for (long v : columnas.getEnteros()) out.putLong(v);
+        for (double v : columnas.getReales()) out.putDouble(v);
+        for (int v : columnas.getAnyos()) out.putInt(v);
+        out.position((int) pBooleanos);
+        for (int v : columnas.getBooleanos()) out.putInt(v);
+        out.position((int) pNumCat);
+        for (int o = 0; o < n; ++o) out.putInt(columnas.getItem(o).getCategoryPscBits().size());
+        out.position((int) pOffCat);
+        int off = 0;
+        for (long[] w : palabras) {
+            out.putInt(off);
+            off += w.length;
+        }
+        out.putInt(off);
+        out.position((int) pPalabras);
+        for (long[] w : palabras)
+            for (long v : w) out.putLong(v);
+        off = 0;
+        for (byte[] id : ids) {
+            out.putInt(off);
+            off += id.length;
+        }
+        out.putInt(off);
+        out.position((int) pIds);
+        for (byte[] id : ids) out.put(id);
+
+        Path destino = Paths.get(rutaCatalogo(pathToItems));
+        Path temporal = Paths.get(rutaCatalogo(pathToItems) + ".tmp");
+        out.flip();
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) canal.write(out);
+        }
+        try {
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static long alinear(long p) {
+        return (p + 7) & ~7L;
+    }
+
+    /**
+     * @brief Devuelve el numero de items del catalogo
+     * @return Numero de items
+     */
+    public int size() { return n; }
+
+    public int getNumEnteros() { return nInt; }
+
+    public int getNumReales() { return nDouble; }
+
+    public int getNumFechas() { return nDate; }
+
+    public int getNumBooleanos() { return nBool; }
+
+    /**
+     * @brief Inverso del rango de cada atributo entero, real y fecha (0 si el rango es nulo)
+     */
+    double[] getInvRangoInt() { return invRangoInt; }
+
+    double[] getInvRangoDouble() { return invRangoDouble; }
+
+    double[] getInvRangoDate() { return invRangoDate; }
+
+    /**
+     * @brief Numero de atributos categoricos del item con ordinal o
+     */
+    public int getNumCategorias(int o) { return datos.getInt(pNumCat + 4 * o); }
+
+    /**
+     * @brief Identificador del item con ordinal o
+     */
+    public String getId(int o) {
+        int a = datos.getInt(pOffIds + 4 * o), z = datos.getInt(pOffIds + 4 * (o + 1));
+        byte[] id = new byte[z - a];
+        for (int p = 0; p < id.length; ++p) id[p] = datos.get(pIds + a + p);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @brief Metodo que devuelve el ordinal de un identificador. Los ordinales siguen el orden de los identificadores,
+     * como en Cjt_items, asi que se busca por biseccion
+     * @param id Identificador del item
+     * @return El ordinal del item, o -1 si no esta en el catalogo
+     */
+    public int ordinal(String id) {
+        int lo = 0, hi = n - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compararId(mid, id);
+            if (cmp < 0) lo = mid + 1;
+            else if (cmp > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * @brief Metodo que devuelve el ordinal de un item en el catalogo. Si el ordinal que tiene asignado apunta a un item
+     * con su mismo identificador se usa directamente, y si no se busca por identificador
+     * @param item Item a buscar
+     * @return El ordinal del item, o -1 si no esta en el catalogo
+     */
+    public int ordinal(Item item) {
+        int o = item.getOrdinal();
+        if (o >= 0 && o < n && compararId(o, item.getId()) == 0) return o;
+        return ordinal(item.getId());
+    }
+
+    /**
+     * @brief Compara el identificador del item con ordinal o con id, con el mismo orden que String.compareTo. Los bytes
+     * UTF-8 del catalogo se decodifican sobre la marcha a caracteres UTF-16, sin construir el String
+     * @return Un numero negativo, cero o positivo si el identificador es menor, igual o mayor que id
+     */
+    private int compararId(int o, String id) {
+        int p = pIds + datos.getInt(pOffIds + 4 * o), z = pIds + datos.getInt(pOffIds + 4 * (o + 1));
+        int i = 0, m = id.length();
+        while (p < z && i < m) {
+            int b = datos.get(p) & 0xff, cp;
+            if (b < 0x80) {
+                cp = b;
+                p += 1;
+            } else if (b < 0xe0) {
+                cp = (b & 0x1f) << 6 | datos.get(p + 1) & 0x3f;
+                p += 2;
+            } else if (b < 0xf0) {
+                cp = (b & 0x0f) << 12 | (datos.get(p + 1) & 0x3f) << 6 | datos.get(p + 2) & 0x3f;
+                p += 3;
+            } else {
+                cp = (b & 0x07) << 18 | (datos.get(p + 1) & 0x3f) << 12 | (datos.get(p + 2) & 0x3f) << 6 | datos.get(p + 3) & 0x3f;
+                p += 4;
+            }
+            if (cp < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                int c = id.charAt(i++);
+                if (cp != c) return cp - c;
+            } else {
+                int c = id.charAt(i++);
+                if (Character.highSurrogate(cp) != c) return Character.highSurrogate(cp) - c;
+                if (i == m) return 1;
+                c = id.charAt(i++);
+                if (Character.lowSurrogate(cp) != c) return Character.lowSurrogate(cp) - c;
+            }
+        }
+        if (p < z) return 1;
+        return i < m ? -1 : 0;
+    }
+
+    /**
+     * @brief Metodo que devuelve el item con ordinal o como una referencia ligera: solo lleva el identificador y el
+     * ordinal, y sus atributos se leen del catalogo. Sirve como clave de las recomendaciones, ya que los items se
+     * comparan por identificador
+     * @param o Ordinal del item
+     * @return El item sin atributos
+     */
+    public Item getItem(int o) {
+        Item item = new Item(getId(o));
+        item.setOrdinal(o);
+        return item;
+    }
+
+    /**
+     * @brief Atributo entero j del item con ordinal o, ColumnasItems.LONG_NULO si es nulo
+     */
+    public long getEntero(int o, int j) { return datos.getLong(pEnteros + 8 * (o * nInt + j)); }
+
+    /**
+     * @brief Atributo real j del item con ordinal o, NaN si es nulo
+     */
+    public double getReal(int o, int j) { return datos.getDouble(pReales + 8 * (o * nDouble + j)); }
+
+    /**
+     * @brief Año del atributo fecha j del item con ordinal o, ColumnasItems.ANYO_NULO si es nulo
+     */
+    public int getAnyo(int o, int j) { return datos.getInt(pAnyos + 4 * (o * nDate + j)); }
+
+    /**
+     * @brief Codigo del atributo booleano j del item con ordinal o, como en ColumnasItems (ColumnasItems.BOOL_NULO si es
+     * nulo): dos items tienen el mismo valor si y solo si tienen el mismo codigo
+     */
+    public int getCodigoBooleano(int o, int j) { return datos.getInt(pBooleanos + 4 * (o * nBool + j)); }
+
+    /**
+     * @brief Copia en un BitSet el atributo categorico c del item con ordinal o
+     */
+    public BitSet getCategorias(int o, int c) {
+        int a = inicioCategoria(o, c), z = finCategoria(o, c);
+        long[] palabras = new long[z - a];
+        for (int w = 0; w < palabras.length; ++w) palabras[w] = datos.getLong(pPalabras + 8 * (a + w));
+        return BitSet.valueOf(palabras);
+    }
+
+    private int inicioCategoria(int o, int c) {
+        return c < nCat ? datos.getInt(pOffCat + 4 * (o * nCat + c)) : 0;
+    }
+
+    private int finCategoria(int o, int c) {
+        return c < nCat ? datos.getInt(pOffCat + 4 * (o * nCat + c + 1)) : 0;
+    }
+
+    /**
+     * @brief Metodo que devuelve la distancia entre los items con ordinales a y b, leyendo sus atributos del catalogo,
+     * con el mismo resultado que NormalizacionItems.distance()
+     * @param a Ordinal del primer item en el computo de la distancia
+     * @param b Ordinal del segundo item en el computo de la distancia
+     * @return Devuelve el valor de la distancia, un double entre 0 y 1
+     */
+    public double distance(int a, int b) {
+        double distInt = distColumnaInt(a, b);
+        double distBool = distColumnaBool(a, b);
+        double distDate = distColumnaDate(a, b);
+        double distDouble = distColumnaDouble(a, b);
+        double distBS = distCategorias(a, b);
+        return 0.2*distInt + 0.2*distDouble + 0.2*distDate + 0.1*distBool + 0.3*distBS;
+    }
+
+    private double distColumnaInt(int a, int b) {
+        if (nInt == 0) return 0.0;
+        int m = Math.min(nInt, invRangoInt.length);
+        double dist = 0.0;
+        for (int i = 0; i < m; ++i) {
+            long x = getEntero(a, i), y = getEntero(b, i);
+            if (x != ColumnasItems.LONG_NULO && y != ColumnasItems.LONG_NULO) {
+                double d = (x - y) * invRangoInt[i];
+                dist += d * d;
+            }
+        }
+        return Math.sqrt(dist/nInt);
+    }
+
+    private double distColumnaDouble(int a, int b) {
+        if (nDouble == 0) return 0.0;
+        int m = Math.min(nDouble, invRangoDouble.length);
+        double dist = 0.0;
+        for (int i = 0; i < m; ++i) {
+            double d = (getReal(a, i) - getReal(b, i)) * invRangoDouble[i];
+            if (d == d) dist += d * d;
+        }
+        return Math.sqrt(dist/nDouble);
+    }
+
+    private double distColumnaDate(int a, int b) {
+        if (nDate == 0) return 0.0;
+        int m = Math.min(nDate, invRangoDate.length);
+        double dist = 0.0;
+        for (int i = 0; i < m; ++i) {
+            int x = getAnyo(a, i), y = getAnyo(b, i);
+            if (x != ColumnasItems.ANYO_NULO && y != ColumnasItems.ANYO_NULO) {
+                double d = (x - y) * invRangoDate[i];
+                dist += d * d;
+            }
+        }
+        return Math.sqrt(dist/nDate);
+    }
+
+    private double distColumnaBool(int a, int b) {
+        if (nBool == 0) return 0.0;
+        double dist = 0.0;
+        for (int i = 0; i < nBool; ++i)
+            if (getCodigoBooleano(a, i) != getCodigoBooleano(b, i)) dist += 1;
+        return Math.sqrt(dist/nBool);
+    }
+
+    /**
+     * @brief Distancia entre los atributos categoricos: la interseccion y la union se cuentan palabra a palabra sobre el
+     * catalogo, sin construir los BitSet
+     */
+    private double distCategorias(int a, int b) {
+        int n = getNumCategorias(a);
+        if (n == 0) return 0.0;
+        double dist = 0.0;
+        for (int i = 0; i < n; ++i) {
+            int pa = inicioCategoria(a, i), za = finCategoria(a, i);
+            int pb = inicioCategoria(b, i), zb = finCategoria(b, i);
+            int interseccio = 0, cardA = 0, cardB = 0;
+            for (int w = 0; w < za - pa || w < zb - pb; ++w) {
+                long x = w < za - pa ? datos.getLong(pPalabras + 8 * (pa + w)) : 0L;
+                long y = w < zb - pb ? datos.getLong(pPalabras + 8 * (pb + w)) : 0L;
+                interseccio += Long.bitCount(x & y);
+                cardA += Long.bitCount(x);
+                cardB += Long.bitCount(y);
+            }
+            int unio = cardA + cardB - interseccio;
+            if (unio != 0) {
+                double d = 1 - (double) interseccio / unio;
+                dist += d * d;
+            }
+        }
+        return Math.sqrt(dist/n);
+    }
+}
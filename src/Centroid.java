@@ -37,8 +37,39 @@ public class Centroid {
 
     private HashMap<Item, Double> centroid = new HashMap<>();
 
+    /**
+     * @brief Vista primitiva del centroide indexada por el ordinal de los items, construida bajo demanda
+     */
+    private MapaIntDouble vector;
+
+    /**
+     * @brief Vista de vector ordenada por ordinal de item, y la vista primitiva a partir de la cual se construyo
+     */
+    private VectorOrdenado ordenado;
+    private MapaIntDouble ordenadoDe;
+
     private HashMap<Item,Double> valoraciones = new HashMap<>();
     private HashMap<Item,Integer> times = new HashMap<>();
+
+    /**
+     * @brief Acumuladores densos indexados por el ordinal de los items: suma y numero de valoraciones de los usuarios
+     * asignados, y su media (NaN si ningun usuario asignado ha valorado el item). Son null mientras el centroide no se
+     * use en modo denso; en modo denso sustituyen a valoraciones y times, que no se actualizan
+     */
+    private double[] sumas;
+    private int[] cuentas;
+    private double[] media;
+
+    /**
+     * @brief Numero de items con media definida en modo denso
+     */
+    private int soporte;
+
+    /**
+     * @brief Ordinales de los items que han ganado o perdido la media en la ultima llamada a promediarConDeriva
+     */
+    private int[] cambios = new int[0];
+    private int nCambios;
     private HashSet<Usuari> users = new HashSet<>();
 
     /**
@@ -49,6 +80,184 @@ public class Centroid {
         return centroid;
     }
 
+    /**
+     * @brief Getter de la vista primitiva del centroide. Se construye la primera vez que se pide despues de cada setCentroid,
+     * por lo que el mapa devuelto por getCentroid() no debe modificarse una vez consultada la vista
+     * @return Mapa de ordinal de item a valoracion del centroide
+     */
+    public MapaIntDouble getVector() {
+        if (vector == null) {
+            MapaIntDouble v;
+            if (media != null) {
+                v = new MapaIntDouble(soporte);
+                for (int o = 0; o < media.length; ++o)
+                    if (media[o] == media[o]) v.put(o, media[o]);
+            }
+            else {
+                v = new MapaIntDouble(centroid.size());
+                for (Map.Entry<Item, Double> e : centroid.entrySet())
+                    if (e.getKey().getOrdinal() >= 0) v.put(e.getKey().getOrdinal(), e.getValue());
+            }
+            vector = v;
+        }
+        return vector;
+    }
+
+    /**
+     * @brief Getter de la vista del centroide ordenada por ordinal de item, para compararlo por mezcla. Se reconstruye
+     * cuando cambia la vista primitiva
+     * @return Vector ordenado con las mismas entradas que getVector()
+     */
+    public VectorOrdenado getVectorOrdenado() {
+        MapaIntDouble v = getVector();
+        if (ordenadoDe != v) {
+            ordenado = new VectorOrdenado(v);
+            ordenadoDe = v;
+        }
+        return ordenado;
+    }
+
+    /**
+     * @brief Pasa el centroide a modo denso: reserva los acumuladores y toma como media inicial el centroide actual
+     * @param nItems Numero de items (los ordinales de las valoraciones que se acumulen deben ser menores)
+     */
+    public void inicializarDenso(int nItems) {
+        MapaIntDouble v = getVector();
+        sumas = new double[nItems];
+        cuentas = new int[nItems];
+        media = new double[nItems];
+        Arrays.fill(media, Double.NaN);
+        soporte = 0;
+        for (int p = 0; p < v.capacidad(); ++p)
+            if (v.ocupada(p) && v.clave(p) < nItems) {
+                media[v.clave(p)] = v.valor(p);
+                ++soporte;
+            }
+        vector = null;
+    }
+
+    /**
+     * @brief Indica si el centroide esta en modo denso
+     */
+    public boolean esDenso() { return media != null; }
+
+    /**
+     * @brief Media de cada item en modo denso, indexada por ordinal (NaN si no esta definida). No debe modificarse
+     */
+    public double[] getMedia() { return media; }
+
+    /**
+     * @brief Numero de items con media definida en modo denso
+     */
+    public int getSoporte() { return soporte; }
+
+    /**
+     * @brief Suma las valoraciones de un usuario a los acumuladores densos, sin crear objetos
+     * @param r Valoraciones del usuario indexadas por ordinal de item
+     */
+    public void anadirUsuari(MapaIntDouble r) {
+        for (int p = 0; p < r.capacidad(); ++p) {
+            if (!r.ocupada(p)) continue;
+            int o = r.clave(p);
+            if (cuentas[o]++ == 0) sumas[o] = r.valor(p);
+            else sumas[o] += r.valor(p);
+        }
+    }
+
+    /**
+     * @brief Resta las valoraciones de un usuario de los acumuladores densos, sin crear objetos
+     * @param r Valoraciones del usuario indexadas por ordinal de item
+     */
+    public void quitarUsuari(MapaIntDouble r) {
+        for (int p = 0; p < r.capacidad(); ++p) {
+            if (!r.ocupada(p)) continue;
+            int o = r.clave(p);
+            sumas[o] -= r.valor(p);
+            if (--cuentas[o] == 0) sumas[o] = 0.0;
+        }
+    }
+
+    /**
+     * @brief Recalcula la media de cada item en el array de medias ya reservado
+     */
+    public void promediar() {
+        promediarConDeriva();
+    }
+
+    /**
+     * @brief Recalcula la media de cada item en el array de medias ya reservado y devuelve cuanto se ha desplazado. Los
+     * items que ganan o pierden la media quedan registrados (getNumCambios, getCambio) y no cuentan en el desplazamiento
+     * @return La distancia euclidiana entre la media anterior y la nueva, sobre los items con media antes y despues
+     */
+    public double promediarConDeriva() {
+        soporte = 0;
+        nCambios = 0;
+        double suma = 0.0;
+        for (int o = 0; o < media.length; ++o) {
+            double nueva = cuentas[o] > 0 ? sumas[o] / cuentas[o] : Double.NaN;
+            boolean antes = media[o] == media[o], ahora = nueva == nueva;
+            if (antes != ahora) {
+                if (nCambios == cambios.length) cambios = Arrays.copyOf(cambios, Math.max(8, 2 * nCambios));
+                cambios[nCambios++] = o;
+            }
+            else if (ahora) {
+                double d = nueva - media[o];
+                suma += d * d;
+            }
+            media[o] = nueva;
+            if (ahora) ++soporte;
+        }
+        vector = null;
+        return Math.sqrt(suma);
+    }
+
+    /**
+     * @brief Numero de items que han ganado o perdido la media en la ultima llamada a promediarConDeriva
+     */
+    public int getNumCambios() { return nCambios; }
+
+    /**
+     * @brief Ordinal del i-esimo item que ha ganado o perdido la media en la ultima llamada a promediarConDeriva
+     */
+    public int getCambio(int i) { return cambios[i]; }
+
+    /**
+     * @brief Acerca la media densa a las valoraciones de un usuario (paso del k-means por mini-lotes). La media de cada
+     * item valorado se mueve con tasa 1/n, donde n cuenta las valoraciones de ese item recibidas por el centroide
+     * @param r Valoraciones del usuario indexadas por ordinal de item
+     * @return El cuadrado del desplazamiento de la media sobre los items que ya tenian media
+     */
+    public double actualizarMiniLote(MapaIntDouble r) {
+        double desplazamiento = 0.0;
+        for (int p = 0; p < r.capacidad(); ++p) {
+            if (!r.ocupada(p)) continue;
+            int o = r.clave(p);
+            double eta = 1.0 / ++cuentas[o];
+            if (media[o] != media[o]) {
+                media[o] = r.valor(p);
+                ++soporte;
+            }
+            else {
+                double d = eta * (r.valor(p) - media[o]);
+                media[o] += d;
+                desplazamiento += d * d;
+            }
+        }
+        vector = null;
+        return desplazamiento;
+    }
+
+    /**
+     * @brief Construye el centroide como diccionario de items a partir de la media densa
+     * @param items Items indexados por su ordinal
+     */
+    public void sincronizar(Item[] items) {
+        HashMap<Item, Double> c = new HashMap<>();
+        for (int o = 0; o < media.length; ++o)
+            if (media[o] == media[o] && items[o] != null) c.put(items[o], media[o]);
+        centroid = c;
+    }
+
     /**
      * @brief Getter del numero de centroide
      * @return Nº del centroide
@@ -73,6 +282,7 @@ public class Centroid {
     public void setCentroid(HashMap<Item, Double> centroid) {
 
         this.centroid = centroid;
+        this.vector = null;
     }
 
     public HashMap<Item, Double> getValoraciones() {
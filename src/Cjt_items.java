@@ -23,6 +23,7 @@ import java.lang.String;
 import java.time.format.DateTimeFormatter;
 import java.lang.Boolean;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -120,6 +121,27 @@ public class Cjt_items {
 
     private int itemId_index;
 
+    /**
+     * @brief Contexto de normalizacion de atributos, construido bajo demanda la primera vez que se pide
+     * */
+    private NormalizacionItems normalizacion;
+
+    /**
+     * @brief Almacen columnar de los atributos de los items, construido bajo demanda la primera vez que se pide
+     * */
+    private ColumnasItems columnas;
+
+    /**
+     * @brief Catalogo proyectado en memoria del que se leen los atributos de los items al calcular distancias (null si se
+     * leen de los propios items)
+     * */
+    private CatalogoMapeado catalogo;
+
+    /**
+     * @brief Diccionario que asigna a cada identificador de item su ordinal denso
+     * */
+    private Diccionario diccionario = new Diccionario();
+
     /**
      * @brief Constructora vacia para la clase Cjt_items. Inicializa una nueva instancia.
      */
@@ -241,6 +263,79 @@ public class Cjt_items {
     }
 
 
+    /**
+     * @brief Metodo que devuelve el contexto de normalizacion de atributos del conjunto. Se construye una sola vez a partir de
+     * los valores maximos y minimos de los atributos y se reutiliza en todos los calculos de distancia entre items. Si el
+     * conjunto tiene un catalogo proyectado, las distancias se leen de el
+     *
+     * @return Contexto de normalizacion del conjunto de items
+     */
+    public NormalizacionItems getNormalizacion() {
+        if (normalizacion == null) normalizacion = catalogo != null ? new NormalizacionItems(catalogo) : new NormalizacionItems(this);
+        return normalizacion;
+    }
+
+    /**
+     * @brief Metodo que asocia al conjunto el catalogo proyectado en memoria de sus items, del que a partir de ahora se
+     * leen los atributos al calcular distancias. Asi los items pueden no llevar sus atributos (como los que carga
+     * InstantaneaDataset a partir de un catalogo). Si se cambian los items del conjunto, el catalogo se descarta
+     *
+     * @param catalogo Catalogo escrito a partir de estos mismos items, o null para leer los atributos de los items
+     */
+    public void setCatalogo(CatalogoMapeado catalogo) {
+        if (catalogo != null && catalogo.size() != diccionario.size())
+            throw new IllegalArgumentException("El catalogo no corresponde al conjunto de items");
+        this.catalogo = catalogo;
+        normalizacion = null;
+    }
+
+    /**
+     * @brief Metodo que devuelve el catalogo proyectado asociado al conjunto
+     *
+     * @return El catalogo, o null si los atributos se leen de los items
+     */
+    public CatalogoMapeado getCatalogo() {
+        return catalogo;
+    }
+
+    /**
+     * @brief Metodo que devuelve el almacen columnar de los atributos del conjunto. Al construirlo se asigna a cada item
+     * un ordinal, siguiendo el orden de sus identificadores, que indexa sus atributos dentro del almacen
+     *
+     * @return Almacen columnar de los atributos de los items
+     */
+    public ColumnasItems getColumnas() {
+        if (columnas == null) {
+            Item[] porOrdinal = new Item[diccionario.size()];
+            for (int o = 0; o < porOrdinal.length; ++o) porOrdinal[o] = this.Items.get(diccionario.id(o));
+            columnas = new ColumnasItems(porOrdinal);
+        }
+        return columnas;
+    }
+
+    /**
+     * @brief Metodo que devuelve el diccionario de ordinales de los items del conjunto
+     *
+     * @return Diccionario que asocia a cada identificador de item su ordinal
+     */
+    public Diccionario getDiccionario() {
+        return diccionario;
+    }
+
+    /**
+     * @brief Metodo que construye el diccionario de ordinales del conjunto, registrando los identificadores en orden, y
+     * asigna a cada item su ordinal
+     */
+    private void indexarItems() {
+        ArrayList<String> ids = new ArrayList<>(this.Items.keySet());
+        Collections.sort(ids);
+        diccionario = new Diccionario();
+        for (String id : ids) this.Items.get(id).setOrdinal(diccionario.intern(id));
+        columnas = null;
+        normalizacion = null;
+        catalogo = null;
+    }
+
     /**
      * @brief Metodo que asocia a la instancia de Cjt_items el conjunto de items dado en el parametro
      *
@@ -248,6 +343,7 @@ public class Cjt_items {
      */
     public void setItems(HashMap<String,Item> items) {
         this.Items = items;
+        indexarItems();
     }
 
 
@@ -269,11 +365,8 @@ public class Cjt_items {
      */
     private boolean isDate(String column) {
         try {
-            DateTimeFormatter parser = DateTimeFormatter.ofPattern("[yyyy/MM/dd][dd/MM/yyyy][yyyy-MM-dd][dd-MM-yyyy]");
-            LocalDate date = LocalDate.parse(column, parser);
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-            String formattedDate = date.format(formatter);
-            LocalDate parsedDate = LocalDate.parse(formattedDate, formatter);
+            LocalDate date = LocalDate.parse(column, LECTOR_FECHAS);
+            LocalDate.parse(date.format(FORMATO_FECHAS), FORMATO_FECHAS);
             return true;
         } catch (Exception e) {
             return false;
@@ -290,21 +383,15 @@ public class Cjt_items {
     private boolean isInteger(String column) {
         if (column.contains("l")) return false;
         try {
-            int count = column.length() - column.replaceAll("\\.", "").length();
-            int countc = column.length() - column.replaceAll("\\,", "").length();
-
-            if ((countc == 1 || count == 1) && (countc & count) == 0) {
-                //test
-                if (!column.matches("^\\d+$")) return false;
-                else{
-                    column = column.replaceAll("\\.", "");
-                    column = column.replaceAll("\\,", "");
-                }
-            }
-            if (countc > 1 || count > 1) {
-                column = column.replaceAll("\\.", "");
-                column = column.replaceAll("\\,", "");
+            int count = 0, countc = 0;
+            for (int p = 0; p < column.length(); ++p) {
+                if (column.charAt(p) == '.') ++count;
+                else if (column.charAt(p) == ',') ++countc;
             }
+
+            /** con un unico separador el valor ya no es una secuencia de digitos */
+            if ((countc == 1 || count == 1) && (countc & count) == 0) return false;
+            if (countc > 1 || count > 1) column = column.replace(".", "").replace(",", "");
             Long.parseLong(column);
             return true;
         } catch (Exception e) {
@@ -348,11 +435,11 @@ public class Cjt_items {
 
     private static ArrayList<String> parseToArray2( String column ){
         if (column == null) return null;
-        String[] readCol = Arrays.stream(column.split("[^\\w'\\.\\-\\_\\s\\(\\)\\{\\}\\[\\]]|\\s{2,}|\\-{2,}|\\.{2,}|\\_{2,}|(?<=[^\\w\\.])\\s|\\s(?=[^\\w\\.])")).filter(str -> !str.isEmpty()).toArray(String[]::new);
+        String[] readCol = Arrays.stream(SEPARADOR_CATEGORIAS.split(column)).filter(str -> !str.isEmpty()).toArray(String[]::new);
         ArrayList<String> attr = new ArrayList<>(Arrays.asList(readCol));
 
         int lastInd = attr.size()-1;
-        if (lastInd > -1) attr.set(lastInd,attr.get(lastInd).replaceAll("\\s+$", ""));
+        if (lastInd > -1) attr.set(lastInd, ESPACIOS_FINALES.matcher(attr.get(lastInd)).replaceAll(""));
         return attr;
     }
 
@@ -388,93 +475,220 @@ public class Cjt_items {
     }
 
     /**
-     * @brief Metodo que actualiza la mediana de la columnas que se corresponden con tipos enteros
-     *
-     * @param mapL Inicialmente vacío - Guarda la mitad mas pequeña de los valores de la columna
-     * @param mapH Inicialmente vacío - Guarda la mitad mas grande de los valores de la columna
-     * @param index la columna para la que se ha modificado un valor
-     * @param val el valor modificado en la columna
+     * @brief Formato con que se leen las fechas del dataset
      */
-    private void updateLongMedianMaps(HashMap<Integer, NavigableSet<Long> > mapL, HashMap<Integer, NavigableSet<Long> > mapH, Long val, int index){
-        NavigableSet<Long> setL = mapL.get(index);
-        NavigableSet<Long> setH = mapH.get(index);
-        if (setL.size() == 0 && setH.size() == 0) setL.add(val);
-        else if (val <= setL.descendingIterator().next()){
-            if (setL.size() > setH.size() + 1){
-                Long max = setL.pollLast();
-                setH.add(max);
-            }
-            setL.add(val);
-        }
-        else{
-            if (setH.size() > setL.size()){
-                Long min = setH.pollFirst();
-                setL.add(min);
+    private static final DateTimeFormatter LECTOR_FECHAS = DateTimeFormatter.ofPattern("[yyyy/MM/dd][dd/MM/yyyy][yyyy-MM-dd][dd-MM-yyyy]");
+
+    /**
+     * @brief Formato al que se normalizan las fechas leidas
+     */
+    private static final DateTimeFormatter FORMATO_FECHAS = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /**
+     * @brief Separadores entre las categorias de un atributo categorico, compilados una sola vez
+     */
+    private static final Pattern SEPARADOR_CATEGORIAS = Pattern.compile("[^\\w'\\.\\-\\_\\s\\(\\)\\{\\}\\[\\]]|\\s{2,}|\\-{2,}|\\.{2,}|\\_{2,}|(?<=[^\\w\\.])\\s|\\s(?=[^\\w\\.])");
+    private static final Pattern ESPACIOS_FINALES = Pattern.compile("\\s+$");
+
+    /**
+     * @brief Separadores entre las palabras de un atributo freetext
+     */
+    private static final Pattern SEPARADOR_PALABRAS = Pattern.compile("[^\\w\\d']");
+
+    /**
+     * @brief Metodo que devuelve el k-esimo menor de los n primeros valores de a (por seleccion, en O(n) de media). Reordena
+     * esos valores
+     */
+    private static long seleccionar(long[] a, int n, int k) {
+        int lo = 0, hi = n - 1;
+        while (lo < hi) {
+            long pivote = a[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (a[i] < pivote) ++i;
+                while (a[j] > pivote) --j;
+                if (i <= j) {
+                    long t = a[i];
+                    a[i++] = a[j];
+                    a[j--] = t;
+                }
             }
-            setH.add(val);
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else break;
         }
-        mapL.put(index, setL);
-        mapH.put(index, setH);
+        return a[k];
     }
 
     /**
-     * @brief Metodo que actualiza la mediana de la columnas que se corresponden con tipos doubles
-     *
-     * @param mapL Inicialmente vacío - Guarda la mitad mas pequeña de los valores de la columna
-     * @param mapH Inicialmente vacío - Guarda la mitad mas grande de los valores de la columna
-     * @param index la columna para la que se ha modificado un valor
-     * @param val el valor modificado en la columna
+     * @brief Metodo que devuelve el k-esimo menor de los n primeros valores de a (por seleccion, en O(n) de media). Reordena
+     * esos valores
      */
-    private void updateDoubleMedianMaps(HashMap<Integer, NavigableSet<Double> > mapL, HashMap<Integer, NavigableSet<Double> > mapH, Double val, int index){
-        NavigableSet<Double> setL = mapL.get(index);
-        NavigableSet<Double> setH = mapH.get(index);
-        if (setL.size() == 0 && setH.size() == 0) setL.add(val);
-        else if (val <= setL.descendingIterator().next()){
-            if (setL.size() > setH.size() + 1){
-                Double max = setL.pollLast();
-                setH.add(max);
+    private static double seleccionar(double[] a, int n, int k) {
+        int lo = 0, hi = n - 1;
+        while (lo < hi) {
+            double pivote = a[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (Double.compare(a[i], pivote) < 0) ++i;
+                while (Double.compare(a[j], pivote) > 0) --j;
+                if (i <= j) {
+                    double t = a[i];
+                    a[i++] = a[j];
+                    a[j--] = t;
+                }
             }
-            setL.add(val);
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else break;
         }
-        else{
-            if (setH.size() > setL.size()){
-                Double min = setH.pollFirst();
-                setL.add(min);
-            }
-            setH.add(val);
+        return a[k];
+    }
+
+    /**
+     * @brief Metodo que lee en una sola pasada las filas del dataset de items abierto en el controlador de persistencia y
+     * escribe en los parametros la mediana de cada columna numerica, de modo que el resto del preprocesado trabaja sobre
+     * las filas en memoria y no vuelve a leer el fichero
+     * @param ctrlPers Controlador de persistencia con el fichero de items inicializado y las cabeceras ya leidas
+     * @param nAttributes Numero de atributos de cada item
+     * @param dataType Tipo de dato de cada atributo
+     * @param IntColMedian Estructura sobre la que escribiremos la mediana de las columnas de enteros, indexada por columna
+     * @param DoubleColMedian Estructura sobre la que escribiremos la mediana de las columnas de reales, indexada por columna
+     * @param DateColMedian Estructura sobre la que escribiremos la mediana de los años de las columnas de fechas, indexada por columna
+     * @return Las filas del dataset, en el orden del fichero
+     */
+    private ArrayList<ArrayList<String>> leerFilas(ControladorPersistencia ctrlPers, int nAttributes, String[] dataType, HashMap<Integer, Long> IntColMedian, HashMap<Integer, Double> DoubleColMedian, HashMap<Integer, Integer> DateColMedian) {
+        ArrayList<ArrayList<String>> filas = new ArrayList<>();
+        try {
+            while (ctrlPers.hasMoreItems()) filas.add(new ArrayList<>(ctrlPers.getItemAttributes()));
+        } catch (Exception e) {
         }
-        mapL.put(index, setL);
-        mapH.put(index, setH);
+        calcularMedianas(filas, nAttributes, dataType, IntColMedian, DoubleColMedian, DateColMedian, false);
+        return filas;
     }
 
     /**
-     * @brief Metodo que actualiza la mediana de la columnas que se corresponden con tipos fecha
-     *
-     * @param mapL Inicialmente vacío - Guarda la mitad mas pequeña de los valores de la columna
-     * @param mapH Inicialmente vacío - Guarda la mitad mas grande de los valores de la columna
-     * @param index la columna para la que se ha modificado un valor
-     * @param val el valor modificado en la columna
+     * @brief Metodo que escribe en los parametros la mediana de cada columna numerica de las filas de un dataset de items.
+     * Los valores de cada columna se guardan en un array primitivo y la mediana (la menor de las dos centrales si hay un
+     * numero par de valores) se obtiene por seleccion. Las columnas son independientes, de modo que pueden calcularse en
+     * paralelo sin que cambie el resultado
+     * @param filas Filas del dataset
+     * @param nAttributes Numero de atributos de cada item
+     * @param dataType Tipo de dato de cada atributo
+     * @param IntColMedian Estructura sobre la que escribiremos la mediana de las columnas de enteros, indexada por columna
+     * @param DoubleColMedian Estructura sobre la que escribiremos la mediana de las columnas de reales, indexada por columna
+     * @param DateColMedian Estructura sobre la que escribiremos la mediana de los años de las columnas de fechas, indexada por columna
+     * @param paralelo Indica si las columnas se procesan en paralelo
      */
-    private void updateIntMedianMaps(HashMap<Integer, NavigableSet<Integer> > mapL, HashMap<Integer, NavigableSet<Integer> > mapH, Integer val, int index){
-        NavigableSet<Integer> setL = mapL.get(index);
-        NavigableSet<Integer> setH = mapH.get(index);
-        if (setL.size() == 0 && setH.size() == 0) setL.add(val);
-        else if (val <= setL.descendingIterator().next()){
-            if (setL.size() > setH.size() + 1){
-                Integer max = setL.pollLast();
-                setH.add(max);
+    private void calcularMedianas(List<ArrayList<String>> filas, int nAttributes, String[] dataType, HashMap<Integer, Long> IntColMedian, HashMap<Integer, Double> DoubleColMedian, HashMap<Integer, Integer> DateColMedian, boolean paralelo) {
+        int nColumnas = Math.min(nAttributes, dataType.length);
+        long[] medianasEnteras = new long[nColumnas];
+        double[] medianasReales = new double[nColumnas];
+        boolean[] hayValores = new boolean[nColumnas];
+        IntStream columnas = IntStream.range(0, nColumnas);
+        (paralelo ? columnas.parallel() : columnas).forEach(i -> {
+            boolean entero = dataType[i].equalsIgnoreCase("integer"), real = dataType[i].equalsIgnoreCase("float"), fecha = dataType[i].equalsIgnoreCase("date");
+            if (!entero && !real && !fecha) return;
+            long[] enteros = new long[real ? 0 : filas.size()];
+            double[] reales = new double[real ? filas.size() : 0];
+            int n = 0;
+            for (ArrayList<String> st : filas) {
+                String attributeObject = i < st.size() ? st.get(i) : null;
+                if (attributeObject == null) continue;
+                try {
+                    if (entero) {
+                        if (isInteger(attributeObject)) {
+                            long valor = Long.parseLong(attributeObject);
+                            enteros[n++] = valor;
+                        }
+                    } else if (real) {
+                        if (isDouble(attributeObject)) {
+                            double valor = Double.parseDouble(attributeObject);
+                            reales[n++] = valor;
+                        }
+                    } else {
+                        int anyo = LocalDate.parse(attributeObject, LECTOR_FECHAS).getYear();
+                        enteros[n++] = anyo;
+                    }
+                } catch (Exception e) {
+                }
             }
-            setL.add(val);
+            if (n == 0) return;
+            hayValores[i] = true;
+            if (real) medianasReales[i] = seleccionar(reales, n, (n - 1) / 2);
+            else medianasEnteras[i] = seleccionar(enteros, n, (n - 1) / 2);
+        });
+        for (int i = 0; i < nColumnas; ++i) {
+            if (!hayValores[i]) continue;
+            if (dataType[i].equalsIgnoreCase("integer")) IntColMedian.put(i, medianasEnteras[i]);
+            else if (dataType[i].equalsIgnoreCase("float")) DoubleColMedian.put(i, medianasReales[i]);
+            else DateColMedian.put(i, (int) medianasEnteras[i]);
         }
-        else{
-            if (setH.size() > setL.size()){
-                Integer min = setH.pollFirst();
-                setL.add(min);
+    }
+
+    /**
+     * @class FilaPreparada
+     * @brief Parte del preprocesado de una fila que no depende de las demas filas: las categorias de cada atributo
+     *    categorico y las frecuencias de las palabras de cada atributo freetext, indexadas por columna
+     */
+    private static final class FilaPreparada {
+        final HashMap<Integer, ArrayList<String>> categorias = new HashMap<>();
+        final HashMap<Integer, HashMap<String, Integer>> frecuencias = new HashMap<>();
+    }
+
+    /**
+     * @brief Metodo que devuelve las palabras que se descartan de los atributos freetext segun la lengua del dataset
+     * @param CtrlPers Instancia de ControladorPersistencia
+     * @return La lista de palabras, vacia si la lengua no se conoce o no se pueden leer
+     */
+    private ArrayList<String> palabrasVacias(ControladorPersistencia CtrlPers) {
+        try {
+            if ("english".equals(language)) return CtrlPers.getEnglishStepWords();
+            else if ("catalan".equals(language)) return CtrlPers.getCatalanStepWords();
+            else if ("spanish".equals(language)) return CtrlPers.getSpanishStepWords();
+            else if ("french".equals(language)) return CtrlPers.getFrenchStepWords();
+            else if ("portuguese".equals(language)) return CtrlPers.getPortugueseStepWords();
+            else if ("italian".equals(language)) return CtrlPers.getItalianStepWords();
+            else if ("german".equals(language)) return CtrlPers.getGermanStepWords();
+        } catch (Exception e){}
+        return new ArrayList<>();
+    }
+
+    /**
+     * @brief Metodo que separa las categorias de los atributos categoricos y cuenta las palabras de los atributos freetext
+     * de cada fila. Es la parte mas costosa del preprocesado de una fila y no depende de las demas, de modo que puede hacerse
+     * en paralelo; lo que si depende del resto de filas (maximos y minimos, indices de las categorias) se combina despues
+     * recorriendo las filas en el orden del fichero, y el resultado es el mismo que en secuencial
+     * @param filas Filas del dataset
+     * @param nAttributes Numero de atributos de cada item
+     * @param dataType Tipo de dato de cada atributo
+     * @param palabrasVacias Palabras que se descartan de los atributos freetext
+     * @param paralelo Indica si las filas se procesan en paralelo
+     * @return La parte preparada de cada fila, en el mismo orden
+     */
+    private List<FilaPreparada> prepararFilas(List<ArrayList<String>> filas, int nAttributes, String[] dataType, List<String> palabrasVacias, boolean paralelo) {
+        int nColumnas = Math.min(nAttributes, dataType.length);
+        ArrayList<Pattern> vacias = new ArrayList<>();
+        for (String s : palabrasVacias) vacias.add(Pattern.compile(".*\\b($" + s + ")\\b."));
+        IntStream indices = IntStream.range(0, filas.size());
+        return (paralelo ? indices.parallel() : indices).mapToObj(f -> {
+            ArrayList<String> st = filas.get(f);
+            FilaPreparada fila = new FilaPreparada();
+            for (int i = 0; i < Math.min(nColumnas, st.size()); i++) {
+                String attributeObject = st.get(i);
+                if (i == itemId_index || attributeObject == null) continue;
+                if (dataType[i].equalsIgnoreCase("categorical")) fila.categorias.put(i, parseToArray2(attributeObject));
+                else if (dataType[i].equalsIgnoreCase("freetext")) {
+                    String mapped_words = attributeObject;
+                    for (Pattern p : vacias) mapped_words = p.matcher(mapped_words).replaceAll("");
+                    HashMap<String, Integer> FreqMap = new HashMap<>();
+                    for (String s : SEPARADOR_PALABRAS.split(mapped_words))
+                        if (!s.isEmpty()) FreqMap.merge(s, 1, Integer::sum);
+                    fila.frecuencias.put(i, FreqMap);
+                }
             }
-            setH.add(val);
-        }
-        mapL.put(index, setL);
-        mapH.put(index, setH);
+            return fila;
+        }).collect(Collectors.toList());
     }
 
     /**
@@ -487,75 +701,11 @@ public class Cjt_items {
      */
     public int getColMedians(HashMap<Integer, Long> IntColMedian, HashMap<Integer, Double> DoubleColMedian, HashMap<Integer, Integer> DateColMedian, String pathToDataset, String[] dataType) throws IOException {
         ControladorPersistencia ctrlPers = ControladorPersistencia.getInstance();
-        ArrayList<String> st = new ArrayList<>();
         try {
             ctrlPers.initializeCtrlItems(pathToDataset);
             ctrlPers.getAttributeHeaders();
         } catch (Exception e) {}
-        int nAttributes = ctrlPers.getNumOfAttributes();
-
-        int c = 0;
-        HashMap<Integer, NavigableSet<Long> > IntColL = new HashMap<>();
-        HashMap<Integer, NavigableSet<Long> > IntColH = new HashMap<>();
-        HashMap<Integer, NavigableSet<Double> > DoubleColL = new HashMap<>();
-        HashMap<Integer, NavigableSet<Double> > DoubleColH = new HashMap<>();
-        HashMap<Integer, NavigableSet<Integer> > DateColL = new HashMap<>();
-        HashMap<Integer, NavigableSet<Integer> > DateColH = new HashMap<>();
-        try {
-            while (ctrlPers.hasMoreItems()) {
-
-                ++c;
-                st = ctrlPers.getItemAttributes();
-
-                for (int i = 0; i < nAttributes; i++) {
-
-                    String attributeObject = st.get(i);
-
-                    if (attributeObject != null) {
-                        if (dataType[i].equalsIgnoreCase("integer")) {
-
-                            IntColL.putIfAbsent(i, new TreeSet<Long>());
-                            IntColH.putIfAbsent(i, new TreeSet<Long>());
-                            long attr = -1;
-                            if (isInteger(attributeObject)) {
-                                attr = Long.parseLong(attributeObject);
-                                updateLongMedianMaps(IntColL, IntColH,attr,i);
-                                IntColMedian.put(i, IntColL.get(i).descendingIterator().next());
-                            }
-
-                        } else if (dataType[i].equalsIgnoreCase("float")) {
-
-                            DoubleColL.putIfAbsent(i, new TreeSet<Double>());
-                            DoubleColH.putIfAbsent(i, new TreeSet<Double>());
-                            double attr = -1.0;
-                            if (isDouble(attributeObject)) {
-                                attr = Double.parseDouble(attributeObject);
-                                updateDoubleMedianMaps(DoubleColL, DoubleColH,attr,i);
-                                DoubleColMedian.put(i, DoubleColL.get(i).descendingIterator().next());
-                            }
-                        } else if (dataType[i].equalsIgnoreCase("date")) {
-
-                            if (isDate(attributeObject)) {
-                                DateTimeFormatter parser = DateTimeFormatter.ofPattern("[yyyy/MM/dd][dd/MM/yyyy][yyyy-MM-dd][dd-MM-yyyy]");
-                                DateColL.putIfAbsent(i, new TreeSet<Integer>());
-                                DateColH.putIfAbsent(i, new TreeSet<Integer>());
-                                try {
-                                    LocalDate date = LocalDate.parse(attributeObject, parser);
-                                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-                                    String formattedDate = date.format(formatter);
-                                    LocalDate parsedDate = LocalDate.parse(formattedDate, formatter);
-                                    updateIntMedianMaps(DateColL, DateColH,parsedDate.getYear(),i);
-
-                                } catch (Exception e) {
-                                }
-                                DateColMedian.put(i, DateColL.get(i).descendingIterator().next());
-                            }
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-        }
+        int c = leerFilas(ctrlPers, ctrlPers.getNumOfAttributes(), dataType, IntColMedian, DoubleColMedian, DateColMedian).size();
         ctrlPers.reset();
         return c;
     }
@@ -578,6 +728,20 @@ public class Cjt_items {
      * @param pathToAttrData_types indica el camino hasta el archivo en que se halla el tipo de dato para cada atributo del dataset
      */
     public Cjt_items(String pathToDataset, String pathToAttrData_types) {
+        this(pathToDataset, pathToAttrData_types, false);
+    }
+
+    /**
+     * @brief Constructora parametrizada que asocia a una instancia de Cjt_items el conjunto de items dado por el fichero con path=pathToDataset preprocesado,
+     * con la opcion de leerlo en paralelo. En paralelo el fichero se lee con LectorItemsParalelo, y las medianas, las categorias
+     * y las frecuencias de palabras de cada fila se calculan en varios hilos; los maximos y minimos y los indices de las categorias
+     * se asignan despues recorriendo las filas en el orden del fichero, de modo que el conjunto resultante no depende del numero de hilos
+     *
+     * @param pathToDataset indica el camino hasta el archivo en que se halla el dataset a leer
+     * @param pathToAttrData_types indica el camino hasta el archivo en que se halla el tipo de dato para cada atributo del dataset
+     * @param paralelo indica si el fichero se lee y se preprocesa en paralelo
+     */
+    public Cjt_items(String pathToDataset, String pathToAttrData_types, boolean paralelo) {
 
         ControladorPersistencia CtrlPers = ControladorPersistencia.getInstance();
         try {
@@ -621,23 +785,34 @@ public class Cjt_items {
         this.headers = new ArrayList<>();
 
         this.Items = new HashMap<>();
-        boolean belongsTo = true;
         try {
             String[] readData = new String[]{};
             try {
                 readData = CtrlPers.getDataTypes(pathToAttrData_types);
             } catch (Exception e){}
-            int nItems = getColMedians(IntColMedian, DoubleColMedian, DateColMedian, pathToDataset, readData);
             int int_index, double_index, date_index, boolean_index, str_index, other_index, categorical_index;
             int_index = double_index = date_index = boolean_index = str_index = other_index = categorical_index =0;
 
             ArrayList<String> st = new ArrayList<>();
-            try {
-                CtrlPers.initializeCtrlItems(pathToDataset);
-                st = new ArrayList<>(CtrlPers.getAttributeHeaders());
-            } catch (Exception e){}
-
-            int nAttributes = CtrlPers.getNumOfAttributes();
+            int nAttributes;
+            ArrayList<ArrayList<String>> filas;
+            if (paralelo) {
+                LectorItemsParalelo lector = new LectorItemsParalelo(pathToDataset);
+                st = lector.getCabeceras();
+                nAttributes = st.size();
+                filas = lector.getFilas();
+                calcularMedianas(filas, nAttributes, readData, IntColMedian, DoubleColMedian, DateColMedian, true);
+            } else {
+                try {
+                    CtrlPers.initializeCtrlItems(pathToDataset);
+                    st = new ArrayList<>(CtrlPers.getAttributeHeaders());
+                } catch (Exception e){}
+
+                nAttributes = CtrlPers.getNumOfAttributes();
+
+                /** se lee el fichero una sola vez: las filas quedan en memoria junto con la mediana de cada columna numerica */
+                filas = leerFilas(CtrlPers, nAttributes, readData, IntColMedian, DoubleColMedian, DateColMedian);
+            }
 
             if (st.size() > 0) {
                 this.headers = st;
@@ -679,7 +854,8 @@ public class Cjt_items {
 
                 }
             }
-            while (CtrlPers.hasMoreItems()) {
+            List<FilaPreparada> preparadas = prepararFilas(filas, nAttributes, readData, palabrasVacias(CtrlPers), paralelo);
+            for (int f = 0; f < filas.size(); ++f) {
 
                 ++c;
 
@@ -690,8 +866,8 @@ public class Cjt_items {
                 ArrayList<String> BooleanAttr = new ArrayList<>();
                 LinkedHashMap<Integer, HashMap<String,Integer> > wordFrequencies = new LinkedHashMap<>();
 
-                try { st = CtrlPers.getItemAttributes(); }
-                catch (Exception e){}
+                st = filas.get(f);
+                FilaPreparada preparada = preparadas.get(f);
 
                 String itemId = "";
 
@@ -768,11 +944,11 @@ public class Cjt_items {
                             LocalDate parsedDate = null;
                             if (isDate(attributeObject)) {
                                 int median = DateColMedian.get(i);
-                                DateTimeFormatter parser = DateTimeFormatter.ofPattern("[yyyy/MM/dd][dd/MM/yyyy][yyyy-MM-dd][dd-MM-yyyy]");
+                                DateTimeFormatter parser = LECTOR_FECHAS;
 
                                 try {
                                     LocalDate date = LocalDate.parse(attributeObject, parser);
-                                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+                                    DateTimeFormatter formatter = FORMATO_FECHAS;
                                     String formattedDate = date.format(formatter);
                                     parsedDate = LocalDate.parse(formattedDate, formatter);
 
@@ -802,7 +978,7 @@ public class Cjt_items {
                             HashSet<Integer> indexesCatVar = new HashSet<Integer>();
 
                             ArrayList<String> CategoricalVars = new ArrayList<String>();
-                            CategoricalVars = parseToArray2(attributeObject);
+                            CategoricalVars = preparada.categorias.get(i);
 
                             ArrayList<String> ColVar = dsCategoricalVars.get(i);
                             if (dsCategoricalVars.containsKey(i)) ColVar.addAll(CategoricalVars);
@@ -821,48 +997,7 @@ public class Cjt_items {
                             }
                             CategoricalAttr.put(i, new ArrayList<String>(CategoricalVars));
                         } else if (readData[i].equalsIgnoreCase("freetext")){
-                            ArrayList<String> sw = new ArrayList<>();
-                            try {
-                                if (language.equals("english")){
-                                    sw = CtrlPers.getEnglishStepWords();
-                                    belongsTo = true;
-                                }
-                                else if (language.equals("catalan")){
-                                    sw = CtrlPers.getCatalanStepWords();
-                                    belongsTo = true;
-                                }
-                                else if (language.equals("spanish")){
-                                    sw = CtrlPers.getSpanishStepWords();
-                                    belongsTo = true;
-                                }
-                                else if (language.equals("french")){
-                                    sw = CtrlPers.getFrenchStepWords();
-                                    belongsTo = true;
-                                }
-                                else if (language.equals("portuguese")){
-                                    sw = CtrlPers.getPortugueseStepWords();
-                                    belongsTo = true;
-                                }
-                                else if (language.equals("italian")){
-                                    sw = CtrlPers.getItalianStepWords();
-                                    belongsTo = true;
-                                }
-                                else if (language.equals("german")){
-                                    sw = CtrlPers.getGermanStepWords();
-                                    belongsTo = true;
-                                }
-                            } catch (Exception e){}
-                            String mapped_words = attributeObject;
-                            for (String s : sw){
-                                mapped_words = mapped_words.replaceAll(".*\\b($"+s+")\\b.", "");
-                            }
-                            wordFrequencies.putIfAbsent(i, new HashMap<>());
-                            HashMap<String,Integer> FreqMap = wordFrequencies.get(i);
-                            String[] words = Arrays.stream(mapped_words.split("[^\\w\\d']")).filter(str -> !str.isEmpty()).toArray(String[]::new);
-                            for (String s : words){
-                                FreqMap.merge(s, 1, Integer::sum);
-                            }
-                            wordFrequencies.put(i,FreqMap);
+                            wordFrequencies.put(i, preparada.frecuencias.get(i));
                             StringAttr.add(attributeObject);
                         }
                     }
@@ -945,6 +1080,7 @@ public class Cjt_items {
 
             this.Items.put(item_entries.getKey(), currItem);
         }
+        indexarItems();
     }
 
 
@@ -1002,7 +1138,6 @@ public class Cjt_items {
             try {
                 readData = CtrlPers.getDataTypes(pathToAttrData_types);
             } catch (Exception e){}
-            int nItems = getColMedians(IntColMedian, DoubleColMedian, DateColMedian, pathToDataset, readData);
             int int_index, double_index, date_index, boolean_index, str_index, other_index, categorical_index;
             int_index = double_index = date_index = boolean_index = str_index = other_index = categorical_index =0;
 
@@ -1014,6 +1149,9 @@ public class Cjt_items {
 
             int nAttributes = CtrlPers.getNumOfAttributes();
 
+            /** se lee el fichero una sola vez: las filas quedan en memoria junto con la mediana de cada columna numerica */
+            ArrayList<ArrayList<String>> filas = leerFilas(CtrlPers, nAttributes, readData, IntColMedian, DoubleColMedian, DateColMedian);
+
             if (st.size() > 0) {
                 this.headers = st;
 
@@ -1052,7 +1190,7 @@ public class Cjt_items {
 
                 }
             }
-            while (CtrlPers.hasMoreItems()) {
+            for (ArrayList<String> fila : filas) {
 
                 ++c;
 
@@ -1065,8 +1203,7 @@ public class Cjt_items {
                 /** la expresion regex que rige el split() utiliza la coma como separador, ignora las comas que estan dentro de una string,
                  *  y permite campos nulos en el resultado
                  */
-                try { st = CtrlPers.getItemAttributes(); }
-                catch (Exception e){}
+                st = fila;
 
                 String itemId = "";
 
@@ -1200,11 +1337,11 @@ public class Cjt_items {
                             LocalDate parsedDate = null;
                             if (isDate(attributeObject)) {
                                 int median = DateColMedian.get(i);
-                                DateTimeFormatter parser = DateTimeFormatter.ofPattern("[yyyy/MM/dd][dd/MM/yyyy][yyyy-MM-dd][dd-MM-yyyy]");
+                                DateTimeFormatter parser = LECTOR_FECHAS;
 
                                 try {
                                     LocalDate date = LocalDate.parse(attributeObject, parser);
-                                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+                                    DateTimeFormatter formatter = FORMATO_FECHAS;
                                     String formattedDate = date.format(formatter);
                                     parsedDate = LocalDate.parse(formattedDate, formatter);
 
@@ -1235,9 +1372,9 @@ public class Cjt_items {
                                 if (!isDate(newVal) && (DateColMedian.get(i) != null)) parsedDate = LocalDate.of(DateColMedian.get(i), MinDates.get(i).getMonth(), MinDates.get(i).getDayOfMonth());
                                 else if (!isDate(newVal)) parsedDate = null;
                                 else{
-                                    DateTimeFormatter parser = DateTimeFormatter.ofPattern("[yyyy/MM/dd][dd/MM/yyyy][yyyy-MM-dd][dd-MM-yyyy]");
+                                    DateTimeFormatter parser = LECTOR_FECHAS;
                                     LocalDate date = LocalDate.parse(newVal, parser);
-                                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+                                    DateTimeFormatter formatter = FORMATO_FECHAS;
                                     String formattedDate = date.format(formatter);
                                     parsedDate = LocalDate.parse(formattedDate, formatter);
                                     try {
@@ -1405,6 +1542,7 @@ public class Cjt_items {
 
             this.Items.put(item_entries.getKey(), currItem);
         }
+        indexarItems();
     }
 
     /**
@@ -1464,7 +1602,6 @@ public class Cjt_items {
             try {
                 readData = CtrlPers.getDataTypes(pathToAttrData_types);
             } catch (Exception e){}
-            int nItems = getColMedians(IntColMedian, DoubleColMedian, DateColMedian, pathToDataset, readData);
             int int_index, double_index, date_index, boolean_index, str_index, other_index, categorical_index;
             int_index = double_index = date_index = boolean_index = str_index = other_index = categorical_index =0;
 
@@ -1476,6 +1613,9 @@ public class Cjt_items {
 
             int nAttributes = CtrlPers.getNumOfAttributes();
 
+            /** se lee el fichero una sola vez: las filas quedan en memoria junto con la mediana de cada columna numerica */
+            ArrayList<ArrayList<String>> filas = leerFilas(CtrlPers, nAttributes, readData, IntColMedian, DoubleColMedian, DateColMedian);
+
             if (st.size() > 0) {
                 this.headers = st;
 
@@ -1515,7 +1655,7 @@ public class Cjt_items {
 
                 }
             }
-            while (CtrlPers.hasMoreItems()) {
+            for (ArrayList<String> fila : filas) {
 
                 ++c;
 
@@ -1529,8 +1669,7 @@ public class Cjt_items {
                 /** la expresion regex que rige el split() utiliza la coma como separador, ignora las comas que estan dentro de una string,
                  *  y permite campos nulos en el resultado
                  */
-                try { st = CtrlPers.getItemAttributes(); }
-                catch (Exception e){}
+                st = fila;
 
                 String itemId = "";
 
@@ -1664,11 +1803,11 @@ public class Cjt_items {
                             LocalDate parsedDate = null;
                             if (isDate(attributeObject)) {
                                 int median = DateColMedian.get(i);
-                                DateTimeFormatter parser = DateTimeFormatter.ofPattern("[yyyy/MM/dd][dd/MM/yyyy][yyyy-MM-dd][dd-MM-yyyy]");
+                                DateTimeFormatter parser = LECTOR_FECHAS;
 
                                 try {
                                     LocalDate date = LocalDate.parse(attributeObject, parser);
-                                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+                                    DateTimeFormatter formatter = FORMATO_FECHAS;
                                     String formattedDate = date.format(formatter);
                                     parsedDate = LocalDate.parse(formattedDate, formatter);
 
@@ -1699,9 +1838,9 @@ public class Cjt_items {
                                 if (!isDate(newVal) && (DateColMedian.get(i) != null)) parsedDate = LocalDate.of(DateColMedian.get(i), MinDates.get(i).getMonth(), MinDates.get(i).getDayOfMonth());
                                 else if (!isDate(newVal)) parsedDate = null;
                                 else{
-                                    DateTimeFormatter parser = DateTimeFormatter.ofPattern("[yyyy/MM/dd][dd/MM/yyyy][yyyy-MM-dd][dd-MM-yyyy]");
+                                    DateTimeFormatter parser = LECTOR_FECHAS;
                                     LocalDate date = LocalDate.parse(newVal, parser);
-                                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+                                    DateTimeFormatter formatter = FORMATO_FECHAS;
                                     String formattedDate = date.format(formatter);
                                     parsedDate = LocalDate.parse(formattedDate, formatter);
                                     try {
@@ -1912,6 +2051,7 @@ public class Cjt_items {
 
             this.Items.put(item_entries.getKey(), currItem);
         }
+        indexarItems();
     }
 
     public HashMap<Integer, Integer> getIntAttrIndexes() {
@@ -1956,26 +2096,32 @@ public class Cjt_items {
 
     public void setMaxValIntegers(LinkedHashMap<Integer, Long> maxValIntegers) {
         MaxValIntegers = new LinkedHashMap<>(maxValIntegers);
+        normalizacion = null;
     }
 
     public void setMinValIntegers(LinkedHashMap<Integer, Long> minValIntegers) {
         MinValIntegers = new LinkedHashMap<>(minValIntegers);
+        normalizacion = null;
     }
 
     public void setMaxValDoubles(LinkedHashMap<Integer, Double> maxValDoubles) {
         MaxValDoubles = new LinkedHashMap<>(maxValDoubles);
+        normalizacion = null;
     }
 
     public void setMinValDoubles(LinkedHashMap<Integer, Double> minValDoubles) {
         MinValDoubles = new LinkedHashMap<>(minValDoubles);
+        normalizacion = null;
     }
 
     public void setMaxDates(LinkedHashMap<Integer, LocalDate> maxDates) {
         MaxDates = new LinkedHashMap<>(maxDates);
+        normalizacion = null;
     }
 
     public void setMinDates(LinkedHashMap<Integer, LocalDate> minDates) {
         MinDates = new LinkedHashMap<>(minDates);
+        normalizacion = null;
     }
 
     public void setIntAttrIndexes(HashMap<Integer, Integer> intAttrIndexes) {
@@ -7,24 +7,65 @@ public class Cluster {
 
     private HashSet<Usuari> usuaris = new HashSet<>();
 
+    /**
+     * @brief Estado del k-means del que este cluster es una vista (null si el cluster guarda sus propios usuarios)
+     */
+    private EstadoKMeans estado;
+
+    /**
+     * @brief Indice del cluster dentro del estado del k-means
+     */
+    private int indice;
+
+    public Cluster() {
+    }
+
+    /**
+     * @brief Constructora de un cluster que es una vista sobre el estado de una ejecucion del k-means. El conjunto de
+     * usuarios se construye la primera vez que se pide
+     * @param centroid Centroide del cluster
+     * @param estado Estado del k-means
+     * @param indice Indice del cluster en el estado
+     */
+    public Cluster(Centroid centroid, EstadoKMeans estado, int indice) {
+        this.centroid = centroid;
+        this.estado = estado;
+        this.indice = indice;
+        this.usuaris = null;
+    }
+
     public Centroid getCentroid() {
         return centroid;
     }
 
     public HashSet<Usuari> getUsuaris() {
+        if (usuaris == null) {
+            int[] miembros = estado.getMiembros(indice);
+            usuaris = new HashSet<>(Math.max(16, miembros.length * 4 / 3 + 1));
+            for (int u : miembros) usuaris.add(estado.getUsuari(u));
+            estado = null;
+        }
         return usuaris;
     }
 
+    /**
+     * @brief Numero de usuarios del cluster, sin construir su conjunto si es una vista
+     */
+    public int size() {
+        return usuaris == null ? estado.getTamano(indice) : usuaris.size();
+    }
+
     public void setCentroid(Centroid centroid) {
         this.centroid = centroid;
     }
 
     public void setUsuaris(HashSet<Usuari> usuaris) {
         this.usuaris = usuaris;
+        this.estado = null;
     }
 
     public void addUsuari(Usuari u) {
-        usuaris.add(u);
+        getUsuaris().add(u);
     }
 
 }
@@ -31,118 +31,271 @@ public class Collaborative extends Algorisme{
 
     public static long total_time = 0l;
 
+    /**
+     * @brief Indica si recommendations usa la variante acelerada del k-means, que descarta con cotas de distancia los
+     * calculos de distancia innecesarios y obtiene las mismas asignaciones
+     */
+    private boolean acelerado = false;
+
+    /**
+     * @brief Setter de la variante del k-means
+     * @param acelerado true para usar la variante acelerada con cotas de distancia
+     */
+    public void setAcelerado(boolean acelerado) {
+        this.acelerado = acelerado;
+    }
+
+    /**
+     * @brief Semilla de las ejecuciones del k-means de recommendations, null para elegir los centroides iniciales al azar
+     * sin semilla
+     */
+    private Long semilla = null;
+
+    /**
+     * @brief Numero de iteraciones del k-means en la ultima ejecucion de recommendations
+     */
+    private int iteraciones = 0;
+
+    /**
+     * @brief Setter de la semilla del k-means: con semilla, los centroides iniciales se eligen con k-means++ y la ejecucion
+     * es reproducible
+     * @param semilla Semilla, o null para volver a la inicializacion aleatoria sin semilla
+     */
+    public void setSemilla(Long semilla) {
+        this.semilla = semilla;
+    }
+
+    /**
+     * @brief Getter del numero de iteraciones del k-means en la ultima ejecucion de recommendations
+     * @return Numero de iteraciones, 0 si todavia no se ha ejecutado
+     */
+    public int getIteraciones() {
+        return iteraciones;
+    }
+
+    /**
+     * @brief Crea el estado de una ejecucion de recommendations, con la semilla fijada si la hay
+     */
+    private EstadoKMeans nuevoEstado(List<Usuari> Usuaris) {
+        return semilla == null ? new EstadoKMeans(Usuaris) : new EstadoKMeans(Usuaris, semilla);
+    }
+
     /**
      * @brief Metodo que ejecuta el algoritmo k-means. Devuelve k clusters con sus centroides y los usuarios correspondientes
      * @param Usuaris Lista de usuarios del dataset
      * @param k Numero de clusters
-     * @param distance Instancia de la clase DistanceUsers
+     * @param distance Metrica con que se comparan usuarios y centroides (DistanceUsers para la euclidiana)
      * @param n Numero maximo de iteraciones
      * @return K clusters
      */
-    public ArrayList<Cluster> recommendations (List<Usuari> Usuaris, int k, DistanceUsers distance, int n) {
+    public ArrayList<Cluster> recommendations (List<Usuari> Usuaris, int k, MetricaUsuarios distance, int n) {
         long startTimeTotal = System.nanoTime();
-        long startTimeApplyCentroids = System.nanoTime();
-        List<Centroid> centroids = applyCentroids(Usuaris,k);
-        long stopTimeApplyCentroids = System.nanoTime();
-        long elapsedTimeApplyCentroids = stopTimeApplyCentroids - startTimeApplyCentroids;
-        System.out.println("TIME APPLYCENTROIDS "  + elapsedTimeApplyCentroids/1000000000);
-        ArrayList<Cluster> clusters = new ArrayList<>();
-        int aka = 0;
-        int nc = 0;
-        long elapsedTimeRC = 0l;
-        long elapsedTimeNC = 0l;
-        long elapsedTimeAC = 0l;
-        long elapsedTimeEC = 0l;
-        long elapsedTimeIF = 0l;
+        EstadoKMeans estado = nuevoEstado(Usuaris);
+        ArrayList<Cluster> clusters = kmeans(k, distance, n, estado, acelerado);
+        estado.volcar();
+        iteraciones = estado.getIteraciones();
+        long stopTimeTotal = System.nanoTime();
+        total_time = stopTimeTotal - startTimeTotal;
+        return clusters;
+    }
+
+    /**
+     * @brief Metodo que ejecuta el algoritmo k-means guardando la asignacion y la distancia de cada usuario en un estado
+     * propio de la ejecucion en lugar de en los Usuari, de modo que varias ejecuciones pueden hacerse a la vez. Mover un
+     * usuario de cluster es O(1): solo cambia su posicion en el array de asignaciones
+     * @param k Numero de clusters
+     * @param distance Metrica con que se comparan usuarios y centroides (DistanceUsers para la euclidiana)
+     * @param n Numero maximo de iteraciones
+     * @param estado Estado de la ejecucion, con los usuarios a agrupar
+     * @return Los clusters, como vistas sobre el estado
+     */
+    public static ArrayList<Cluster> kmeans(int k, MetricaUsuarios distance, int n, EstadoKMeans estado) {
+        return kmeans(k, distance, n, estado, false);
+    }
+
+    /**
+     * @brief Metodo que ejecuta el algoritmo k-means, opcionalmente en su variante acelerada. La variante acelerada
+     * mantiene una cota superior de la distancia de cada usuario a su centroide y una cota inferior de la distancia a cada
+     * centroide (CotasKMeans), que tras cada recolocacion se corrigen con el desplazamiento de los centroides; solo se
+     * calculan las distancias que las cotas no permiten descartar, y las asignaciones son las mismas que sin acelerar. Si
+     * la metrica no admite cotas (MetricaUsuarios.admiteCotas) se ejecuta la variante normal
+     * @param k Numero de clusters
+     * @param distance Metrica con que se comparan usuarios y centroides (DistanceUsers para la euclidiana)
+     * @param n Numero maximo de iteraciones
+     * @param estado Estado de la ejecucion, con los usuarios a agrupar
+     * @param acelerado true para usar la variante acelerada
+     * @return Los clusters, como vistas sobre el estado
+     */
+    public static ArrayList<Cluster> kmeans(int k, MetricaUsuarios distance, int n, EstadoKMeans estado, boolean acelerado) {
+        int nUsuaris = estado.size();
+        List<Usuari> Usuaris = new ArrayList<>(nUsuaris);
+        for (int idx = 0; idx < nUsuaris; ++idx) Usuaris.add(estado.getUsuari(idx));
+        List<Centroid> centroids = centroidesIniciales(Usuaris, k, distance, estado);
+        int nItems = numeroItems(Usuaris);
+        for (Centroid c : centroids) c.inicializarDenso(nItems);
+        CotasKMeans cotas = acelerado && distance.admiteCotas() ? new CotasKMeans(estado, k, nItems) : null;
         for (int i = 0; i < n; ++i) {
-            aka = i;
+            estado.setIteraciones(i);
             boolean isLastIteration = i == n - 1;
             int terminar = 0;
-            for (Usuari Usuari : Usuaris) {
+            for (int idx = 0; idx < nUsuaris; ++idx) {
+                Usuari Usuari = Usuaris.get(idx);
                 if (i == 0) {
-                    long startTimeNC = System.nanoTime();
-                    ++nc;
-                    Centroid centroid = nearestCentroid(Usuari, centroids, distance, k);
-                    for (Item key : Usuari.getRatedItems().keySet()) {
-                        if (centroid.getValoraciones().containsKey(key)) centroid.getValoraciones().put(key, centroid.getValoraciones().get(key)+Usuari.getRatedItems().get(key));
-                        else centroid.getValoraciones().put(key, Usuari.getRatedItems().get(key));
-                        if (!centroid.getTimes().containsKey(key)) centroid.getTimes().put(key,1);
-                        else centroid.getTimes().put(key,centroid.getTimes().get(key)+1);
-                    }
-                    Usuari.setCentroid(centroid);
-                    long stopTimeNC = System.nanoTime();
-                    elapsedTimeNC += stopTimeNC - startTimeNC;
-                    long startTimeAC = System.nanoTime();
-                    assignToCluster(clusters, Usuari, centroid);
-                    long stopTimeAC = System.nanoTime();
-                    elapsedTimeAC += stopTimeAC - startTimeAC;
+                    Centroid centroid = nearestCentroid(Usuari, centroids, distance, k, estado, idx, cotas);
+                    centroid.anadirUsuari(Usuari.getValoraciones());
+                    estado.asignar(idx, centroid);
+                }
+                else if (permanece(Usuari, distance, estado, idx, cotas)) {
+                    ++terminar;
                 }
                 else {
-                    long startTimeIF = System.nanoTime();
-                    if (distance.calculateEuclideanDistance(Usuari.getRatedItems(), Usuari.getCentroid().getCentroid()) <= Usuari.getNearest_dist()) {
-                        ++terminar;
-                        long stopTimeIF = System.nanoTime();
-                        elapsedTimeIF += stopTimeIF - startTimeIF;
-                    }
-
-                    else {
-                        long stopTimeIF = System.nanoTime();
-                        elapsedTimeIF += stopTimeIF - startTimeIF;
-                        long startTimeNC = System.nanoTime();
-                        ++nc;
-                        for (Item key : Usuari.getRatedItems().keySet()) {
-                            Usuari.getCentroid().getValoraciones().put(key, Usuari.getCentroid().getValoraciones().get(key)- Usuari.getRatedItems().get(key));
-                            Usuari.getCentroid().getTimes().put(key,Usuari.getCentroid().getTimes().get(key)-1);
-                            if (Usuari.getCentroid().getTimes().get(key) == 0) Usuari.getCentroid().getValoraciones().remove(key);
-                        }
-                        Centroid centroid = nearestCentroid(Usuari, centroids, distance, k);
-                        long stopTimeNC = System.nanoTime();
-                        elapsedTimeNC += stopTimeNC - startTimeNC;
-                        long startTimeEC = System.nanoTime();
-                        eliminateFromCluster(Usuari, clusters);
-                        for (Item key : Usuari.getRatedItems().keySet()) {
-                            if (centroid.getValoraciones().containsKey(key))
-                                centroid.getValoraciones().put(key, centroid.getValoraciones().get(key) + Usuari.getRatedItems().get(key));
-                            else centroid.getValoraciones().put(key, Usuari.getRatedItems().get(key));
-                            if (!centroid.getTimes().containsKey(key)) centroid.getTimes().put(key, 1);
-                            else centroid.getTimes().put(key, centroid.getTimes().get(key) + 1);
-                        }
-                        Usuari.setCentroid(centroid);
-                        long stopTimeEC = System.nanoTime();
-                        elapsedTimeEC += stopTimeEC - startTimeEC;
-                        long startTimeAC = System.nanoTime();
-                        assignToCluster(clusters, Usuari, centroid);
-                        long stopTimeAC = System.nanoTime();
-                        elapsedTimeAC += stopTimeAC - startTimeAC;
-                    }
+                    estado.getCentroide(idx).quitarUsuari(Usuari.getValoraciones());
+                    Centroid centroid = nearestCentroid(Usuari, centroids, distance, k, estado, idx, cotas);
+                    centroid.anadirUsuari(Usuari.getValoraciones());
+                    estado.asignar(idx, centroid);
                 }
             }
-            boolean shouldTerminate = isLastIteration || terminar == Usuaris.size();
+            boolean shouldTerminate = isLastIteration || terminar == nUsuaris;
             if (shouldTerminate) {
                 break;
             }
-            long startTimeRC = System.nanoTime();
-            centroids = relocateCentroids(clusters);
-            long stopTimeRC = System.nanoTime();
-            elapsedTimeRC += stopTimeRC - startTimeRC;
+            centroids = new ArrayList<>(estado.getCentroides().size());
+            if (cotas == null) {
+                for (Centroid c : estado.getCentroides()) centroids.add(average(c));
+            }
+            else {
+                double[] deriva = new double[k];
+                for (Centroid c : estado.getCentroides()) {
+                    deriva[c.getCentroid_number() - 1] = c.promediarConDeriva();
+                    centroids.add(c);
+                }
+                int[] propio = new int[nUsuaris];
+                for (int idx = 0; idx < nUsuaris; ++idx) propio[idx] = estado.getCentroide(idx).getCentroid_number() - 1;
+                cotas.desplazar(estado.getCentroides(), deriva, propio);
+            }
         }
-        System.out.println("AKA " + aka);
-        System.out.println("TIME NC "  + elapsedTimeNC);
-        System.out.println("TIME AC "  + elapsedTimeAC);
-        System.out.println("TIME RC "  + elapsedTimeRC);
-        System.out.println("TIME EC "  + elapsedTimeEC);
-        System.out.println("TIME IF "  + elapsedTimeIF);
-        long stopTimeTotal = System.nanoTime();
-        total_time = ( stopTimeTotal - startTimeTotal) - total_time ;
+        sincronizarCentroides(Usuaris, centroids, nItems);
+        return estado.getClusters();
+    }
+
+    /**
+     * @brief Metodo que ejecuta el k-means por mini-lotes sobre los usuarios dados y deja el resultado en los Usuari
+     * @param Usuaris Lista de usuarios del dataset
+     * @param k Numero de clusters
+     * @param distance Metrica con que se comparan usuarios y centroides (DistanceUsers para la euclidiana)
+     * @param tamLote Numero de usuarios de cada mini-lote
+     * @param maxIter Numero maximo de mini-lotes
+     * @param tolerancia Desplazamiento maximo de los centroides en un mini-lote por debajo del cual se da por convergido
+     * @return K clusters
+     */
+    public ArrayList<Cluster> recommendationsMiniLote(List<Usuari> Usuaris, int k, MetricaUsuarios distance, int tamLote, int maxIter, double tolerancia) {
+        EstadoKMeans estado = nuevoEstado(Usuaris);
+        ArrayList<Cluster> clusters = kmeansMiniLote(k, distance, estado, tamLote, maxIter, tolerancia);
+        estado.volcar();
         return clusters;
     }
 
+    /**
+     * @brief Metodo que ejecuta el k-means por mini-lotes: en cada iteracion se toma una muestra aleatoria de tamLote
+     * usuarios, se busca el centroide mas cercano de cada uno y se acerca ese centroide a sus valoraciones con una tasa de
+     * aprendizaje 1/n, donde n es el numero de valoraciones del item que ha recibido el centroide (cada media es asi la
+     * media de las muestras que le han llegado). El coste de entrenar depende de tamLote y maxIter, no del numero de
+     * usuarios; al final se hace una unica pasada para asignar cada usuario a su centroide mas cercano
+     * @param k Numero de clusters
+     * @param distance Metrica con que se comparan usuarios y centroides (DistanceUsers para la euclidiana)
+     * @param estado Estado de la ejecucion, con los usuarios a agrupar
+     * @param tamLote Numero de usuarios de cada mini-lote
+     * @param maxIter Numero maximo de mini-lotes
+     * @param tolerancia Desplazamiento maximo de los centroides en un mini-lote por debajo del cual se da por convergido
+     * @return Los clusters, como vistas sobre el estado
+     */
+    public static ArrayList<Cluster> kmeansMiniLote(int k, MetricaUsuarios distance, EstadoKMeans estado, int tamLote, int maxIter, double tolerancia) {
+        int nUsuaris = estado.size();
+        if (nUsuaris == 0) return new ArrayList<>();
+        List<Usuari> Usuaris = new ArrayList<>(nUsuaris);
+        for (int idx = 0; idx < nUsuaris; ++idx) Usuaris.add(estado.getUsuari(idx));
+        List<Centroid> centroids = centroidesIniciales(Usuaris, k, distance, estado);
+        int nItems = numeroItems(Usuaris);
+        for (Centroid c : centroids) c.inicializarDenso(nItems);
+        Random aleatorio = aleatorio(estado);
+
+        EstadoKMeans lote = new EstadoKMeans(Collections.singletonList(Usuaris.get(0)), estado.getAleatorio());
+        int[] muestra = new int[tamLote];
+        Centroid[] destino = new Centroid[tamLote];
+        double[] desplazamiento = new double[k];
+        boolean[] recibido = new boolean[k];
+        int sinRecibir = centroids.size();
+        for (int i = 0; i < maxIter; ++i) {
+            estado.setIteraciones(i);
+            for (int b = 0; b < tamLote; ++b) {
+                muestra[b] = aleatorio.nextInt(nUsuaris);
+                destino[b] = nearestCentroid(Usuaris.get(muestra[b]), centroids, distance, k, lote, 0);
+            }
+            Arrays.fill(desplazamiento, 0.0);
+            for (int b = 0; b < tamLote; ++b) {
+                int c = destino[b].getCentroid_number() - 1;
+                desplazamiento[c] += destino[b].actualizarMiniLote(Usuaris.get(muestra[b]).getValoraciones());
+                if (!recibido[c]) {
+                    recibido[c] = true;
+                    --sinRecibir;
+                }
+            }
+            // Las medias que un centroide recibe por primera vez no cuentan en el desplazamiento: no se da por
+            // convergido hasta que todos los centroides han absorbido al menos un mini-lote
+            if (sinRecibir > 0) continue;
+            double maximo = 0.0;
+            for (double d : desplazamiento) maximo = Math.max(maximo, Math.sqrt(d));
+            if (maximo < tolerancia) break;
+        }
+
+        for (int idx = 0; idx < nUsuaris; ++idx)
+            estado.asignar(idx, nearestCentroid(Usuaris.get(idx), centroids, distance, k, estado, idx));
+        sincronizarCentroides(Usuaris, centroids, nItems);
+        return estado.getClusters();
+    }
+
+    /**
+     * @brief Metodo que devuelve el numero de items que deben tener los centroides densos: uno mas que el mayor ordinal
+     * valorado por los usuarios
+     */
+    private static int numeroItems(List<Usuari> Usuaris) {
+        int nItems = 0;
+        for (Usuari u : Usuaris) {
+            MapaIntDouble r = u.getValoraciones();
+            for (int p = 0; p < r.capacidad(); ++p)
+                if (r.ocupada(p)) nItems = Math.max(nItems, r.clave(p) + 1);
+        }
+        return nItems;
+    }
+
+    /**
+     * @brief Metodo que construye el diccionario de items de cada centroide a partir de su media densa, para quien siga
+     * consultando getCentroid()
+     */
+    private static void sincronizarCentroides(List<Usuari> Usuaris, List<Centroid> centroids, int nItems) {
+        Item[] items = new Item[nItems];
+        for (Usuari u : Usuaris)
+            for (Item it : u.getRatedItems().keySet())
+                if (it.getOrdinal() >= 0 && it.getOrdinal() < nItems) items[it.getOrdinal()] = it;
+        for (Centroid c : centroids) c.sincronizar(items);
+    }
+
 
 
 
     public static void eliminateFromCluster(Usuari u, List<Cluster> clusters) {
+        eliminateFromCluster(u, u.getCentroid(), clusters);
+    }
+
+    /**
+     * @brief Metodo que elimina un usuario del cluster de un centroide dado
+     * @param u El usuario
+     * @param centroid El centroide al que estaba asignado el usuario
+     * @param clusters Clusters
+     */
+    public static void eliminateFromCluster(Usuari u, Centroid centroid, List<Cluster> clusters) {
         for (Cluster c: clusters) {
-            if (c.getCentroid() == u.getCentroid()) {
+            if (c.getCentroid() == centroid) {
                 HashSet<Usuari> usuaris = new HashSet<>();
                 usuaris = c.getUsuaris();
                 usuaris.remove(u);
@@ -151,6 +304,114 @@ public class Collaborative extends Algorisme{
         }
     }
 
+    /**
+     * @brief Generador aleatorio de una ejecucion: el del estado si tiene semilla y, si no, el compartido
+     */
+    private static Random aleatorio(EstadoKMeans estado) {
+        return estado.getAleatorio() != null ? estado.getAleatorio() : random;
+    }
+
+    /**
+     * @brief Centroides iniciales de una ejecucion: k-means++ con el generador del estado si tiene semilla y, si no, k
+     * usuarios al azar como hasta ahora
+     */
+    private static List<Centroid> centroidesIniciales(List<Usuari> Usuaris, int k, MetricaUsuarios distance, EstadoKMeans estado) {
+        if (estado.getAleatorio() == null) return applyCentroids(Usuaris, k);
+        return applyCentroidsPlusPlus(Usuaris, k, distance, estado.getAleatorio());
+    }
+
+    /**
+     * @brief Metodo que genera k centroides con k-means++ y una semilla fija
+     * @param Usuaris Lista de usuarios del dataset
+     * @param k Numero de clusters
+     * @param distance Metrica con que se comparan usuarios y centroides (DistanceUsers para la euclidiana)
+     * @param semilla Semilla del generador aleatorio
+     * @return Lista de los centroides generados
+     */
+    public static List<Centroid> applyCentroidsPlusPlus(List<Usuari> Usuaris, int k, MetricaUsuarios distance, long semilla) {
+        return applyCentroidsPlusPlus(Usuaris, k, distance, new Random(semilla));
+    }
+
+    /**
+     * @brief Metodo que genera k centroides con k-means++: el primero es un usuario al azar y cada uno de los siguientes
+     * se elige con probabilidad proporcional al cuadrado de la distancia del usuario al centroide elegido mas cercano. Un
+     * usuario sin items en comun con ningun centroide elegido pesa como el mas lejano de los demas. Las distancias de cada
+     * ronda se actualizan en paralelo, pero el sorteo es secuencial, de modo que con el mismo generador el resultado es
+     * siempre el mismo. Si hay menos de k usuarios se devuelve un centroide por usuario
+     * @param Usuaris Lista de usuarios del dataset
+     * @param k Numero de clusters
+     * @param distance Metrica con que se comparan usuarios y centroides (DistanceUsers para la euclidiana)
+     * @param aleatorio Generador aleatorio del que salen los sorteos
+     * @return Lista de los centroides generados
+     */
+    public static List<Centroid> applyCentroidsPlusPlus(List<Usuari> Usuaris, int k, MetricaUsuarios distance, Random aleatorio) {
+        int n = Usuaris.size();
+        k = Math.min(k, n);
+        List<Centroid> centroids = new ArrayList<>(k);
+        if (k == 0) return centroids;
+        // las vistas ordenadas de los usuarios se construyen bajo demanda: se fuerzan antes de recorrerlos en paralelo
+        for (Usuari u : Usuaris) u.getValoracionesOrdenadas();
+        double[] d2 = new double[n];
+        boolean[] elegido = new boolean[n];
+        Arrays.fill(d2, Double.POSITIVE_INFINITY);
+        int ultimo = aleatorio.nextInt(n);
+        for (int j = 0; j < k; ++j) {
+            if (j > 0) {
+                double lejano = 0.0;
+                for (int u = 0; u < n; ++u)
+                    if (!elegido[u] && d2[u] != Double.POSITIVE_INFINITY) lejano = Math.max(lejano, d2[u]);
+                double pesoSinComun = lejano > 0.0 ? lejano : 1.0;
+                double total = 0.0;
+                for (int u = 0; u < n; ++u)
+                    if (!elegido[u]) total += d2[u] == Double.POSITIVE_INFINITY ? pesoSinComun : d2[u];
+                ultimo = -1;
+                if (total > 0.0) {
+                    double r = aleatorio.nextDouble() * total;
+                    for (int u = 0; u < n && ultimo == -1; ++u) {
+                        if (elegido[u]) continue;
+                        r -= d2[u] == Double.POSITIVE_INFINITY ? pesoSinComun : d2[u];
+                        if (r < 0.0) ultimo = u;
+                    }
+                }
+                // todos los restantes coinciden con algun centroide (o redondeo al final del sorteo): uno al azar
+                if (ultimo == -1) {
+                    int q = aleatorio.nextInt(n - j);
+                    for (int u = 0; u < n; ++u)
+                        if (!elegido[u] && q-- == 0) { ultimo = u; break; }
+                }
+            }
+            elegido[ultimo] = true;
+            Usuari centro = Usuaris.get(ultimo);
+            centroids.add(centroideDe(centro, j + 1));
+            if (j + 1 < k) {
+                VectorOrdenado vc = centro.getValoracionesOrdenadas();
+                java.util.stream.IntStream.range(0, n).parallel().forEach(u -> {
+                    DistanceUsers.Resultado r = new DistanceUsers.Resultado();
+                    distance.distanciaYComun(Usuaris.get(u).getValoracionesOrdenadas(), vc, r);
+                    double d = r.getDistancia();
+                    if (!r.sinComun() && d * d < d2[u]) d2[u] = d * d;
+                });
+            }
+        }
+        return centroids;
+    }
+
+    /**
+     * @brief Metodo que crea un centroide con las valoraciones de un usuario
+     * @param u Usuario del que se copian las valoraciones
+     * @param number Numero del centroide (empezando por 1)
+     * @return El centroide creado
+     */
+    private static Centroid centroideDe(Usuari u, int number) {
+        Centroid c = new Centroid();
+        c.setCentroid_number(number);
+        u.getRatedItems().forEach((key, value) -> {
+            c.getCentroid().put(key, value);
+        });
+        c.setCentroid_user_id(u.getUserId());
+        return c;
+    }
+
     /**
      * @brief Metodo que genera y devuelve k centroides
      * @param Usuaris Lista de usuarios del dataset
@@ -171,13 +432,7 @@ public class Collaborative extends Algorisme{
                 }
             }
             if (aux == centroids.size()) {
-                Centroid c = new Centroid();
-                c.setCentroid_number(j + 1);
-                u.getRatedItems().forEach((key, value) -> {
-                    c.getCentroid().put(key, value);
-                });
-                c.setCentroid_user_id(u.getUserId());
-                centroids.add(c);
+                centroids.add(centroideDe(u, j + 1));
             }
             else --j;
         }
@@ -272,6 +527,10 @@ public class Collaborative extends Algorisme{
      */
 
     public static Centroid average(Centroid centroid) {
+        if (centroid.esDenso()) {
+            centroid.promediar();
+            return centroid;
+        }
         HashMap<Item, Double> average = new HashMap<>();
         for (Item key : centroid.getValoraciones().keySet()) {
             average.put(key, centroid.getValoraciones().get(key)/centroid.getTimes().get(key));
@@ -298,21 +557,99 @@ public class Collaborative extends Algorisme{
         return i;
     }
 
+    /**
+     * @brief Metodo que devuelve los items en comun entre un usuario y un centroide representados por mapas primitivos
+     * @param f1 Mapa que guarda los ordinales de los items del usuario y sus respectivas valoraciones
+     * @param f2 Mapa que guarda los ordinales de los items del centroide y sus respectivas valoraciones
+     * @return Numero de items en comun
+     */
+
+    public static int calculaItemsComun(MapaIntDouble f1, MapaIntDouble f2) {
+        int i = 0;
+        for (int p = 0; p < f1.capacidad(); ++p)
+            if (f1.ocupada(p) && f2.contains(f1.clave(p))) ++i;
+        return i;
+    }
+
+    /**
+     * @brief Metodo que devuelve los items en comun entre un usuario y un centroide denso
+     * @param f1 Mapa que guarda los ordinales de los items del usuario y sus respectivas valoraciones
+     * @param f2 Valoraciones del centroide indexadas por ordinal (NaN si no tiene valoracion para el item)
+     * @return Numero de items en comun
+     */
+
+    public static int calculaItemsComun(MapaIntDouble f1, double[] f2) {
+        int i = 0;
+        for (int p = 0; p < f1.capacidad(); ++p) {
+            if (!f1.ocupada(p)) continue;
+            int o = f1.clave(p);
+            if (o < f2.length && f2[o] == f2[o]) ++i;
+        }
+        return i;
+    }
+
+    /**
+     * @brief Metodo que decide si un usuario se queda en su cluster: no se ha alejado de su centroide mas de la distancia
+     * a la que se le asigno. Con cotas, la distancia solo se calcula si la cota superior no basta para decidirlo
+     */
+
+    private static boolean permanece(Usuari Usuari, MetricaUsuarios distance, EstadoKMeans estado, int idx, CotasKMeans cotas) {
+        if (cotas != null && cotas.acotaPropia(idx, estado.getDistancia(idx))) return true;
+        Centroid propio = estado.getCentroide(idx);
+        DistanceUsers.Resultado r = new DistanceUsers.Resultado();
+        distance.distanciaYComun(Usuari.getValoraciones(), propio.getMedia(), r);
+        double d = r.getDistancia();
+        if (cotas != null) cotas.registrarPropia(idx, propio.getCentroid_number() - 1, d);
+        return d <= estado.getDistancia(idx);
+    }
+
     /**
      * @brief Metodo que devuelve el centroide mas cercano a un usuario
      * @param Usuari El usuario
      * @param centroids La lista de todos los centroides
-     * @param distance Instancia de la clase DistanceUsers
+     * @param distance Metrica con que se comparan usuarios y centroides (DistanceUsers para la euclidiana)
+     * @return El centroide mas cercano al usuario
+     */
+
+    public static Centroid nearestCentroid(Usuari Usuari, List<Centroid> centroids, MetricaUsuarios distance, int k) {
+        EstadoKMeans estado = new EstadoKMeans(Collections.singletonList(Usuari));
+        Centroid nearest = nearestCentroid(Usuari, centroids, distance, k, estado, 0);
+        Usuari.setNearest_dist(estado.getDistancia(0));
+        return nearest;
+    }
+
+    /**
+     * @brief Metodo que devuelve el centroide mas cercano a un usuario y guarda su distancia en el estado de la ejecucion
+     * @param Usuari El usuario
+     * @param centroids La lista de todos los centroides
+     * @param distance Metrica con que se comparan usuarios y centroides (DistanceUsers para la euclidiana)
+     * @param estado Estado de la ejecucion del k-means
+     * @param idx Posicion del usuario en el estado
      * @return El centroide mas cercano al usuario
      */
 
-    public static Centroid nearestCentroid(Usuari Usuari, List<Centroid> centroids, DistanceUsers distance, int k) {
+    public static Centroid nearestCentroid(Usuari Usuari, List<Centroid> centroids, MetricaUsuarios distance, int k, EstadoKMeans estado, int idx) {
+        return nearestCentroid(Usuari, centroids, distance, k, estado, idx, null);
+    }
+
+    /**
+     * @brief Metodo que devuelve el centroide mas cercano a un usuario, saltandose los centroides cuya cota inferior de
+     * distancia ya supera la mejor distancia encontrada (no podrian ser elegidos)
+     * @param cotas Cotas de la variante acelerada del k-means, o null para calcular todas las distancias
+     */
+
+    private static Centroid nearestCentroid(Usuari Usuari, List<Centroid> centroids, MetricaUsuarios distance, int k, EstadoKMeans estado, int idx, CotasKMeans cotas) {
         double minimumDistance = Double.MAX_VALUE;
         int maxComun = -1;
-        Centroid nearest = new Centroid();
+        Centroid nearest = null;
+        DistanceUsers.Resultado r = new DistanceUsers.Resultado();
         for (Centroid centroid : centroids) {
-            double currentDistance =  distance.calculateEuclideanDistance(Usuari.getRatedItems(), centroid.getCentroid());
-            int currentComun = calculaItemsComun(Usuari.getRatedItems(), centroid.getCentroid());
+            if (cotas != null && cotas.getInferior(idx, centroid.getCentroid_number() - 1) > minimumDistance) continue;
+            if (centroid.esDenso()) distance.distanciaYComun(Usuari.getValoraciones(), centroid.getMedia(), r);
+            else distance.distanciaYComun(Usuari.getValoracionesOrdenadas(), centroid.getVectorOrdenado(), r);
+            double currentDistance = r.getDistancia();
+            int currentComun = r.getComun();
+            if (cotas != null) cotas.setInferior(idx, centroid.getCentroid_number() - 1, currentDistance);
             if (currentDistance < minimumDistance && currentDistance != -1 || currentDistance == minimumDistance && currentDistance != -1 && currentComun > maxComun) {
                 minimumDistance = currentDistance;
                 maxComun = currentComun;
@@ -321,10 +658,12 @@ public class Collaborative extends Algorisme{
             }
 
         }
-        if (nearest.getCentroid().size() == 0) {
-            nearest = centroids.get(random.nextInt(k));
+        if (nearest == null) {
+            nearest = centroids.get(aleatorio(estado).nextInt(centroids.size()));
+            if (cotas != null) cotas.registrarPropia(idx, nearest.getCentroid_number() - 1, -1);
         }
-        Usuari.setNearest_dist(minimumDistance);
+        else if (cotas != null) cotas.registrarPropia(idx, nearest.getCentroid_number() - 1, minimumDistance);
+        estado.setDistancia(idx, minimumDistance);
         return nearest;
     }
 
@@ -361,7 +700,7 @@ public class Collaborative extends Algorisme{
             HashSet<Usuari>  users = c.getUsuaris();
             Iterator<Usuari> it = users.iterator();
             while (it.hasNext()) {
-                double d = distance.calculateEuclideanDistance(it.next().getRatedItems(), c.getCentroid().getCentroid());
+                double d = distance.calculateEuclideanDistance(it.next().getValoraciones(), c.getCentroid().getVector());
                 if (d > maxDistance) maxDistance = d;
             }
         }
@@ -389,23 +728,10 @@ public class Collaborative extends Algorisme{
                 mindis = mdistance1;
                 k_alternativa = k1;
             }
-            for (int i = 0; i < maxDistances1.size(); ++i) {
-                if (i != maxDistances1.size() - 1) {
-                    if (maxDistances1.get(i) >= maxDistances1.get(i+1)) {
-                        if (maxDistances1.get(i) - maxDistances1.get(i+1) < 0.5) {
-                            k_definitiva = i + 3;
-                            acabat = true;
-                            break;
-                        }
-                    }
-                    else {
-                        if (maxDistances1.get(i+1) - maxDistances1.get(i) > 0.25) {
-                            k_definitiva = i + 3;
-                            acabat = true;
-                            break;
-                        }
-                    }
-                }
+            int corte = primerCorte(maxDistances1);
+            if (corte != -1) {
+                k_definitiva = corte + 3;
+                acabat = true;
             }
             if (acabat) break;
         }
@@ -418,6 +744,66 @@ public class Collaborative extends Algorisme{
             return aux;
         }
     }
+    /**
+     * @brief Metodo que aplica el criterio de parada de calcula_k a las distancias maximas usuario-centroide obtenidas
+     * para k = 3, 4, ...: se corta en el primer k cuya distancia baja menos de 0.5 o sube mas de 0.25 al pasar a k+1
+     * @param maxDistances Distancia maxima usuario-centroide para cada k, empezando por k = 3
+     * @return La posicion en maxDistances del k elegido, o -1 si ningun par cumple el criterio
+     */
+    private static int primerCorte(List<Double> maxDistances) {
+        for (int i = 0; i < maxDistances.size() - 1; ++i) {
+            if (maxDistances.get(i) >= maxDistances.get(i+1)) {
+                if (maxDistances.get(i) - maxDistances.get(i+1) < 0.5) return i;
+            }
+            else if (maxDistances.get(i+1) - maxDistances.get(i) > 0.25) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @brief Version concurrente de calcula_k: entrena a la vez el k-means para k = 3..12, cada ejecucion con su propio
+     * EstadoKMeans, y despues aplica a los resultados, en orden, el mismo criterio de parada. Si ningun k cumple el
+     * criterio se devuelve la ejecucion ya entrenada con menor distancia maxima, en lugar de volver a entrenarla
+     * @param users Lista de usuarios del dataset
+     * @return Los clusters del k elegido; el centroide y la distancia de esa ejecucion se copian a los usuarios
+     */
+    public static ArrayList<Cluster> calcula_k_paralelo(List<Usuari> users) {
+        return calcula_k_paralelo(users, null);
+    }
+
+    /**
+     * @brief Version de calcula_k_paralelo con semilla: la ejecucion de cada k se inicializa con k-means++ y la semilla
+     * semilla + k, de modo que el resultado no depende de como se repartan las ejecuciones entre hilos
+     * @param users Lista de usuarios del dataset
+     * @param semilla Semilla base, o null para la inicializacion aleatoria sin semilla
+     * @return Los clusters del k elegido; el centroide y la distancia de esa ejecucion se copian a los usuarios
+     */
+    public static ArrayList<Cluster> calcula_k_paralelo(List<Usuari> users, Long semilla) {
+        List<Usuari> lista = new ArrayList<>(users);
+        // las vistas primitivas de los usuarios se construyen bajo demanda: se fuerzan antes de compartirlos entre hilos
+        for (Usuari u : lista) {
+            u.getRatedItems();
+            u.getValoraciones();
+        }
+        int nk = 12 - 3 + 1;
+        EstadoKMeans[] estados = new EstadoKMeans[nk];
+        List<ArrayList<Cluster>> resultados = java.util.stream.IntStream.range(0, nk).parallel().mapToObj(i -> {
+            estados[i] = semilla == null ? new EstadoKMeans(lista) : new EstadoKMeans(lista, semilla + i + 3);
+            return kmeans(i + 3, new DistanceUsers(), 100, estados[i]);
+        }).collect(Collectors.toList());
+
+        List<Double> maxDistances = new ArrayList<>();
+        for (ArrayList<Cluster> r : resultados) maxDistances.add(maxDistanceUserCentroid(r, new DistanceUsers()));
+        int elegido = primerCorte(maxDistances);
+        if (elegido == -1) {
+            elegido = 0;
+            for (int i = 1; i < nk; ++i)
+                if (maxDistances.get(i) < maxDistances.get(elegido)) elegido = i;
+        }
+        estados[elegido].volcar();
+        return resultados.get(elegido);
+    }
+
     public static ArrayList<Usuari> minDstanceUsers(List<Usuari> Usuaris, DistanceUsers distance) {
         Double minDistance = Double.MAX_VALUE;
         ArrayList<Usuari> min = new ArrayList<>();
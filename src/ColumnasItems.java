@@ -0,0 +1,171 @@
+/**
+ @file ColumnasItems.java
+ @brief Codigo de la clase ColumnasItems
+
+ */
+package dominio.clases;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * @class ColumnasItems
+ * @brief Almacen columnar de los atributos de un conjunto de items. Los atributos enteros y reales se guardan en matrices
+ *    long[] y double[] indexadas por el ordinal del item y la posicion del atributo dentro de su tipo, las fechas como el
+ *    año en un int[] y los booleanos como el codigo de su valor en un int[]. Asi los calculos de distancia recorren memoria primitiva contigua en
+ *    lugar de listas de objetos.
+ * @author Houda El Fezzak Bekkouri
+ */
+public final class ColumnasItems {
+
+    /**
+     * @brief Valor que marca un atributo entero nulo
+     */
+    public static final long LONG_NULO = Long.MIN_VALUE;
+
+    /**
+     * @brief Valor que marca un atributo fecha nulo
+     */
+    public static final int ANYO_NULO = Integer.MIN_VALUE;
+
+    /**
+     * @brief Codigo que marca un atributo booleano nulo
+     */
+    public static final int BOOL_NULO = 0;
+
+    /**
+     * @brief Items del conjunto indexados por su ordinal
+     */
+    private final Item[] items;
+
+    /**
+     * @brief Numero de atributos de cada tipo
+     */
+    private final int nInt, nDouble, nDate, nBool;
+
+    /**
+     * @brief Atributos enteros, en la posicion ordinal*nInt + atributo
+     */
+    private final long[] enteros;
+
+    /**
+     * @brief Atributos reales, en la posicion ordinal*nDouble + atributo (NaN si el atributo es nulo)
+     */
+    private final double[] reales;
+
+    /**
+     * @brief Año de los atributos fecha, en la posicion ordinal*nDate + atributo
+     */
+    private final int[] anyos;
+
+    /**
+     * @brief Codigo del valor de los atributos booleanos, en la posicion ordinal*nBool + atributo. Cada valor distinto
+     * de una columna (tal como aparece en el fichero) tiene su codigo, a partir de 1; BOOL_NULO si el atributo es nulo
+     */
+    private final int[] booleanos;
+
+    /**
+     * @brief Constructora que vuelca los atributos de los items al almacen columnar
+     * @param items Items del conjunto, tal que el item de la posicion i tiene ordinal i
+     */
+    public ColumnasItems(Item[] items) {
+        this.items = items;
+        int mInt = 0, mDouble = 0, mDate = 0, mBool = 0;
+        for (Item it : items) {
+            mInt = Math.max(mInt, it.getIntAttributes().size());
+            mDouble = Math.max(mDouble, it.getDoubleAttributes().size());
+            mDate = Math.max(mDate, it.getDateAttributes().size());
+            mBool = Math.max(mBool, it.getBooleanAttributes().size());
+        }
+        nInt = mInt;
+        nDouble = mDouble;
+        nDate = mDate;
+        nBool = mBool;
+        enteros = new long[items.length * nInt];
+        reales = new double[items.length * nDouble];
+        anyos = new int[items.length * nDate];
+        booleanos = new int[items.length * nBool];
+        ArrayList<HashMap<String, Integer>> codigos = new ArrayList<>(nBool);
+        for (int j = 0; j < nBool; ++j) codigos.add(new HashMap<>());
+        Arrays.fill(enteros, LONG_NULO);
+        Arrays.fill(reales, Double.NaN);
+        Arrays.fill(anyos, ANYO_NULO);
+
+        for (int o = 0; o < items.length; ++o) {
+            ArrayList<Long> ints = items[o].getIntAttributes();
+            for (int j = 0; j < ints.size(); ++j)
+                if (ints.get(j) != null) enteros[o * nInt + j] = ints.get(j);
+            ArrayList<Double> doubles = items[o].getDoubleAttributes();
+            for (int j = 0; j < doubles.size(); ++j)
+                if (doubles.get(j) != null) reales[o * nDouble + j] = doubles.get(j);
+            ArrayList<LocalDate> dates = items[o].getDateAttributes();
+            for (int j = 0; j < dates.size(); ++j)
+                if (dates.get(j) != null) anyos[o * nDate + j] = dates.get(j).getYear();
+            ArrayList<String> bools = items[o].getBooleanAttributes();
+            for (int j = 0; j < bools.size(); ++j) {
+                String b = bools.get(j);
+                if (b != null) {
+                    HashMap<String, Integer> columna = codigos.get(j);
+                    Integer codigo = columna.get(b);
+                    if (codigo == null) {
+                        codigo = columna.size() + 1;
+                        columna.put(b, codigo);
+                    }
+                    booleanos[o * nBool + j] = codigo;
+                }
+            }
+        }
+    }
+
+    /**
+     * @brief Devuelve el numero de items del almacen
+     * @return Numero de items
+     */
+    public int size() { return items.length; }
+
+    /**
+     * @brief Devuelve el item con el ordinal dado
+     * @param ordinal Ordinal del item
+     * @return El item
+     */
+    public Item getItem(int ordinal) { return items[ordinal]; }
+
+    /**
+     * @brief Indica si el item pertenece a este almacen, es decir, si su ordinal apunta a el mismo
+     * @param i Item a comprobar
+     * @return true si el item esta indexado en el almacen
+     */
+    public boolean contiene(Item i) {
+        int o = i.getOrdinal();
+        return o >= 0 && o < items.length && items[o] == i;
+    }
+
+    public int getNumEnteros() { return nInt; }
+
+    public int getNumReales() { return nDouble; }
+
+    public int getNumFechas() { return nDate; }
+
+    public int getNumBooleanos() { return nBool; }
+
+    /**
+     * @brief Matriz de atributos enteros (ordinal*getNumEnteros() + atributo), LONG_NULO si el atributo es nulo
+     */
+    long[] getEnteros() { return enteros; }
+
+    /**
+     * @brief Matriz de atributos reales (ordinal*getNumReales() + atributo), NaN si el atributo es nulo
+     */
+    double[] getReales() { return reales; }
+
+    /**
+     * @brief Matriz de años de los atributos fecha (ordinal*getNumFechas() + atributo), ANYO_NULO si el atributo es nulo
+     */
+    int[] getAnyos() { return anyos; }
+
+    /**
+     * @brief Matriz de codigos de los atributos booleanos (ordinal*getNumBooleanos() + atributo), BOOL_NULO si el
+     * atributo es nulo. Dos items tienen el mismo valor en un atributo si y solo si tienen el mismo codigo
+     */
+    int[] getBooleanos() { return booleanos; }
+}
@@ -7,6 +7,9 @@ package dominio.clases;
 
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * @class ContentBased
@@ -16,6 +19,31 @@ import java.util.*;
 
 public class ContentBased extends Algorisme {
 
+    /**
+     * @brief Modo de calculo de las recomendaciones
+     */
+    public enum Modo {
+        /** Un K-NN por cada item valorado, fusionando los resultados (metodo original) */
+        POR_ITEM,
+        /** Una sola pasada por el catalogo: cada candidato se puntua con la mejor prediccion sobre todos los items
+         *  valorados y se conservan los k mejores en un monticulo acotado */
+        UNA_PASADA,
+        /** Como UNA_PASADA, pero el catalogo se reparte en tramos que se puntuan en paralelo en un ForkJoinPool; cada
+         *  tramo conserva sus k mejores y al final se fusionan, con el mismo resultado que UNA_PASADA */
+        PARALELO
+    }
+
+    /**
+     * @brief Numero minimo de items del catalogo que puntua cada tarea del modo PARALELO sin volver a dividirse
+     */
+    private static final int TRAMO_MINIMO = 256;
+
+    /**
+     * @brief Pool de cada numero de hilos pedido con setParalelismo, que se crea la primera vez y se reutiliza en todas
+     * las recomendaciones (sus hilos son daemon, asi que no impiden que termine la JVM)
+     */
+    private static final ConcurrentHashMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
     /**
      * @brief Parametro k que se usa para el algoritmo K-NN
      */
@@ -28,6 +56,27 @@ public class ContentBased extends Algorisme {
      * @brief Parametro que representa la valoracion maxima que se puede dar a un item
      */
     private double maxRating;
+    /**
+     * @brief Estadisticas de las valoraciones de cada item, de las que se lee su valoracion promedio
+     */
+    private EstadisticasItems estadisticas;
+    /**
+     * @brief Modo de calculo de las recomendaciones
+     */
+    private Modo modo = Modo.POR_ITEM;
+    /**
+     * @brief Pool en que se ejecuta el modo PARALELO (null para usar el ForkJoinPool comun)
+     */
+    private ForkJoinPool pool;
+    /**
+     * @brief Indice de vecinos precalculado con el que se responden los K-NN (null para recorrer todo el catalogo)
+     */
+    private IndiceVecinosItems indice;
+    /**
+     * @brief Catalogo proyectado en memoria del que se leen los atributos al calcular distancias (null para leerlos del
+     * almacen columnar del conjunto de items). Por defecto, el catalogo asociado al conjunto de items
+     */
+    private CatalogoMapeado catalogo;
 
     /**
      * @brief Constructora de ContentBased
@@ -39,6 +88,35 @@ public class ContentBased extends Algorisme {
     public ContentBased(Usuari user, Cjt_items dataset, HashMap<Item, ArrayList<Double>> ratings, double maxRating) {
         super(user,dataset, ratings);
         ratedItems = user.getRatedItems();
+        this.catalogo = dataset.getCatalogo();
+        this.maxRating = maxRating;
+        this.estadisticas = new EstadisticasItems(ratings, dataset.getDiccionario().size());
+    }
+
+    /**
+     * @brief Constructora de ContentBased que lee las valoraciones promedio de los items de la matriz de valoraciones
+     * @param user Usuari que pide la recomendacion
+     * @param dataset Instancia de Cjt_items que almacena el dataset de entrada procesado
+     * @param matriz Matriz de valoraciones del dataset
+     * @param maxRating Valoración máxima registrada
+     */
+    public ContentBased(Usuari user, Cjt_items dataset, MatrizValoraciones matriz, double maxRating) {
+        this(user, dataset, new EstadisticasItems(matriz), maxRating);
+    }
+
+    /**
+     * @brief Constructora de ContentBased que lee las valoraciones promedio de los items de una tabla de estadisticas
+     * precalculada, sin recorrer las valoraciones en cada recomendacion
+     * @param user Usuari que pide la recomendacion
+     * @param dataset Instancia de Cjt_items que almacena el dataset de entrada procesado
+     * @param estadisticas Estadisticas de las valoraciones de cada item del dataset
+     * @param maxRating Valoración máxima registrada
+     */
+    public ContentBased(Usuari user, Cjt_items dataset, EstadisticasItems estadisticas, double maxRating) {
+        super(user, dataset, new HashMap<>());
+        ratedItems = user.getRatedItems();
+        this.catalogo = dataset.getCatalogo();
+        this.estadisticas = estadisticas;
         this.maxRating = maxRating;
     }
 
@@ -50,12 +128,58 @@ public class ContentBased extends Algorisme {
         this.k = k;
     }
 
+    /**
+     * @brief Setter del modo de calculo de las recomendaciones
+     * @param modo Modo que se usara en recommended_items()
+     */
+    public void setModo(Modo modo) {
+        this.modo = modo;
+    }
+
+    /**
+     * @brief Setter del indice de vecinos con el que responder los K-NN del modo POR_ITEM sin recorrer todo el catalogo
+     * @param indice Indice de vecinos del mismo conjunto de items, o null para recorrer siempre el catalogo
+     */
+    public void setIndiceVecinos(IndiceVecinosItems indice) {
+        this.indice = indice;
+    }
+
+    /**
+     * @brief Setter del catalogo proyectado en memoria del que se leen los atributos al calcular distancias. Debe
+     * haberse escrito a partir del mismo conjunto de items, de modo que sus ordinales coincidan. Con un catalogo no se
+     * construye el almacen columnar ni se leen los atributos de los items
+     * @param catalogo Catalogo del conjunto de items, o null para usar el almacen columnar
+     */
+    public void setCatalogo(CatalogoMapeado catalogo) {
+        if (catalogo != null && catalogo.size() != super.dataset.getDiccionario().size())
+            throw new IllegalArgumentException("El catalogo no corresponde al conjunto de items");
+        this.catalogo = catalogo;
+    }
+
+    /**
+     * @brief Setter del numero de hilos del modo PARALELO
+     * @param paralelismo Numero de hilos; 0 usa el ForkJoinPool comun de la JVM
+     */
+    public void setParalelismo(int paralelismo) {
+        if (paralelismo < 0) throw new IllegalArgumentException("El paralelismo no puede ser negativo");
+        this.pool = paralelismo == 0 ? null : POOLS.computeIfAbsent(paralelismo, ForkJoinPool::new);
+    }
+
+    /**
+     * @brief Setter del pool en que se ejecuta el modo PARALELO, para compartir uno propio entre recomendaciones
+     * @param pool Pool a usar (no se cierra al terminar); null usa el ForkJoinPool comun de la JVM
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
     /**
      * @brief Metodo que devuelve los items recomendados al usuario que pide la recomendacion junto con
      * la prediccion de la valoracion qe haría dicho usuario para cada uno de los items
      * @return Diccionario de los items con sus respectivas predicciones de valoracion
      */
     public HashMap<Item, Double> recommended_items() {
+        if (modo != Modo.POR_ITEM) return recommended_items_una_pasada();
         HashMap<Item, Double> predictions = new HashMap<>();
         Item minimum = null;
         for (Item item : ratedItems.keySet()) {
@@ -86,6 +210,144 @@ public class ContentBased extends Algorisme {
         return predictions;
     }
 
+    /**
+     * @brief Metodo que calcula las recomendaciones en una sola pasada por el catalogo. Para cada item no valorado se toma
+     * la mejor prediccion sobre todos los items valorados por el usuario (la misma formula que get_KNN) y se conservan
+     * los k items con mayor prediccion en un monticulo de minimos acotado. En el modo PARALELO la pasada se reparte
+     * entre varios hilos
+     * @return Diccionario de los k items con mayor prediccion junto con su prediccion
+     */
+    private HashMap<Item, Double> recommended_items_una_pasada() {
+        Puntuacion puntuacion = new Puntuacion(super.dataset.getDiccionario());
+
+        MonticuloTopK top;
+        if (modo == Modo.PARALELO && puntuacion.valorados.length > 0) {
+            top = (pool == null ? ForkJoinPool.commonPool() : pool).invoke(new TramoCatalogo(puntuacion, 0, puntuacion.n));
+        }
+        else {
+            top = new MonticuloTopK(k);
+            puntuacion.puntuar(0, puntuacion.n, top);
+        }
+
+        HashMap<Item, Double> predictions = new HashMap<>();
+        for (int p = 0; p < top.size(); ++p) predictions.put(puntuacion.item(top.id(p)), top.puntuacion(p));
+        return predictions;
+    }
+
+    /**
+     * @class Puntuacion
+     * @brief Datos de los items valorados por el usuario que se comparten, solo para lectura, entre los tramos del
+     * catalogo que se puntuan. Con un catalogo proyectado, las distancias se leen solo de el (los items valorados que no
+     * estan en el catalogo no se tienen en cuenta); sin el, del almacen columnar del conjunto de items
+     */
+    private final class Puntuacion {
+        /** Almacen columnar y contexto de normalizacion del conjunto de items, null si se usa el catalogo */
+        private final ColumnasItems columnas;
+        private final NormalizacionItems norm;
+        private final Diccionario diccionario;
+        /** Numero de items que se puntuan */
+        private final int n;
+        private final Item[] valorados;
+        /** Ordinal de cada item valorado en el catalogo o el almacen columnar, o -1 si no pertenece a el */
+        private final int[] ordinales;
+        /** Termino de la prediccion que depende de la valoracion del usuario a cada item valorado */
+        private final double[] bonus;
+        private final boolean[] excluido;
+
+        private Puntuacion(Diccionario diccionario) {
+            this.columnas = catalogo != null ? null : ContentBased.super.dataset.getColumnas();
+            this.norm = catalogo != null ? null : ContentBased.super.dataset.getNormalizacion();
+            this.diccionario = diccionario;
+            this.n = catalogo != null ? catalogo.size() : columnas.size();
+            int m = ratedItems.size();
+            valorados = new Item[m];
+            ordinales = new int[m];
+            bonus = new double[m];
+            excluido = new boolean[n];
+            int j = 0;
+            for (Map.Entry<Item, Double> e : ratedItems.entrySet()) {
+                valorados[j] = e.getKey();
+                bonus[j] = - (maxRating - e.getValue()) / (2*maxRating);
+                int o;
+                if (catalogo != null) o = ordinales[j] = catalogo.ordinal(e.getKey());
+                else {
+                    ordinales[j] = columnas.contiene(e.getKey()) ? e.getKey().getOrdinal() : -1;
+                    o = diccionario.ordinal(e.getKey().getId());
+                }
+                if (o >= 0 && o < n) excluido[o] = true;
+                ++j;
+            }
+        }
+
+        /**
+         * @brief Puntua los items del catalogo con ordinal en [ini, fin) y los ofrece al monticulo
+         */
+        private void puntuar(int ini, int fin, MonticuloTopK top) {
+            int m = valorados.length;
+            if (m == 0) return;
+            for (int c = ini; c < fin; ++c) {
+                if (excluido[c]) continue;
+                double prediction = Double.NEGATIVE_INFINITY;
+                for (int j = 0; j < m; ++j) {
+                    double d;
+                    if (catalogo != null) {
+                        if (ordinales[j] < 0) continue;
+                        d = catalogo.distance(ordinales[j], c);
+                    }
+                    else if (ordinales[j] < 0) d = norm.distance(valorados[j], columnas.getItem(c));
+                    else d = norm.distance(ordinales[j], c);
+                    double p = (1 - d) * maxRating + bonus[j];
+                    if (p > prediction) prediction = p;
+                }
+                double meanRating = estadisticas.media(c);
+                if (meanRating == meanRating) prediction -= (maxRating - meanRating) / (2*maxRating);
+                if (prediction < 0) prediction = 0.0;
+                top.ofrecer(c, prediction);
+            }
+        }
+
+        /**
+         * @brief Item del conjunto con ordinal o
+         */
+        private Item item(int o) {
+            if (columnas != null) return columnas.getItem(o);
+            Item i = ContentBased.super.dataset.getItems().get(diccionario.id(o));
+            return i != null ? i : catalogo.getItem(o);
+        }
+    }
+
+    /**
+     * @class TramoCatalogo
+     * @brief Tarea que puntua un tramo del catalogo, dividiendolo en dos mientras supere TRAMO_MINIMO items, y devuelve
+     * los k mejores items del tramo
+     */
+    private final class TramoCatalogo extends RecursiveTask<MonticuloTopK> {
+        private static final long serialVersionUID = 1L;
+        private final Puntuacion puntuacion;
+        private final int ini, fin;
+
+        private TramoCatalogo(Puntuacion puntuacion, int ini, int fin) {
+            this.puntuacion = puntuacion;
+            this.ini = ini;
+            this.fin = fin;
+        }
+
+        @Override
+        protected MonticuloTopK compute() {
+            if (fin - ini <= TRAMO_MINIMO) {
+                MonticuloTopK top = new MonticuloTopK(k);
+                puntuacion.puntuar(ini, fin, top);
+                return top;
+            }
+            int mitad = (ini + fin) >>> 1;
+            TramoCatalogo derecha = new TramoCatalogo(puntuacion, mitad, fin);
+            derecha.fork();
+            MonticuloTopK top = new TramoCatalogo(puntuacion, ini, mitad).compute();
+            top.fusionar(derecha.join());
+            return top;
+        }
+    }
+
     /**
      * @brief Metodo que implementa el algortimo K-NN para un item a que recibe como parametro. Devuelve un diccionario
      * con los k items con mejor prediccion de valoracion. Para la prediccion se usa la similitud entre ítems
@@ -97,36 +359,14 @@ public class ContentBased extends Algorisme {
      */
 
     private HashMap<Item, Double> get_KNN(Item a, double rating) {
-        SortedMap<Double, List<Item>> maxPred = new TreeMap<>();
-        HashMap<String,Item> data = super.dataset.getItems();
-        for (Item dItem : data.values()) {
-            if (!ratedItems.containsKey(dItem)) {
-                DistanceItems d = new DistanceItems(a, dItem, dataset.getMaxValIntegers().values(), dataset.getMinValIntegers().values(),
-                        dataset.getMaxValDoubles().values(), dataset.getMinValDoubles().values(), dataset.getMaxDates().values(),
-                        dataset.getMinDates().values());
-                double prediction = (1 - d.get_distance()) * maxRating - (maxRating - rating) / (2*maxRating);
-                if (super.ratings.containsKey((dItem))) {
-                    double meanRating = 0;
-                    ArrayList<Double> stars = super.ratings.get(dItem);
-                    for (double rate : stars)
-                        meanRating += rate;
-                    meanRating /= stars.size();
-                    prediction -= (maxRating - meanRating) / (2*maxRating);
-
-                }
-                if (prediction < 0) prediction = 0.0;
-                if(maxPred.containsKey(prediction)) {
-                    maxPred.get(prediction).add(dItem);
-                }
-                else {
-                    List<Item> value = new ArrayList<>(List.of(dItem));
-                    if (maxPred.size() < k)
-                        maxPred.put(prediction, value);
-                    else if (maxPred.firstKey() < prediction) {
-                        maxPred.remove(maxPred.firstKey());
-                        maxPred.put(prediction, value);
-                    }
-                }
+        SortedMap<Double, List<Item>> maxPred = null;
+        if (indice != null && indice.contiene(a)) maxPred = get_KNN_indice(a, rating);
+        if (maxPred == null) {
+            maxPred = new TreeMap<>();
+            HashMap<String,Item> data = super.dataset.getItems();
+            for (Item dItem : data.values()) {
+                if (!ratedItems.containsKey(dItem))
+                    anadirPrediccion(maxPred, dItem, prediccion(distancia(a, dItem), rating, dItem));
             }
         }
         HashMap<Item, Double> knn = new HashMap<>();
@@ -139,4 +379,73 @@ public class ContentBased extends Algorisme {
         }
         return knn;
     }
+
+    /**
+     * @brief Metodo que calcula el K-NN de un item a partir de sus vecinos en el indice. Como los items que no estan en
+     * la lista de vecinos de a estan al menos a la distancia del ultimo vecino, su prediccion no puede superar la que
+     * tendria ese vecino sin restarle su valoracion promedio; si las k mejores predicciones entre los vecinos superan
+     * esa cota, el resultado es el mismo que recorriendo todo el catalogo
+     * @param a Item para el cual se calculan los K-NN
+     * @param rating Valoracion del usuario que pide la recomendacion al ítem a
+     * @return Las mejores predicciones agrupadas por valor, o null si los vecinos del indice no bastan para garantizar el
+     * resultado y hay que recorrer el catalogo
+     */
+    private SortedMap<Double, List<Item>> get_KNN_indice(Item a, double rating) {
+        SortedMap<Double, List<Item>> maxPred = new TreeMap<>();
+        int o = a.getOrdinal();
+        int m = indice.getNumVecinos();
+        for (int j = 0; j < m; ++j) {
+            Item dItem = indice.getItem(indice.vecino(o, j));
+            if (!ratedItems.containsKey(dItem))
+                anadirPrediccion(maxPred, dItem, prediccion(indice.distancia(o, j), rating, dItem));
+        }
+        if (indice.completo()) return maxPred;
+        if (m == 0 || maxPred.size() < k) return null;
+        double cota = (1 - indice.distancia(o, m - 1)) * maxRating - (maxRating - rating) / (2*maxRating);
+        return maxPred.firstKey() > Math.max(cota, 0.0) ? maxPred : null;
+    }
+
+    /**
+     * @brief Distancia entre dos items, leida del catalogo proyectado si lo hay y contiene a los dos
+     */
+    private double distancia(Item a, Item b) {
+        if (catalogo != null) {
+            int oa = catalogo.ordinal(a), ob = catalogo.ordinal(b);
+            if (oa >= 0 && ob >= 0) return catalogo.distance(oa, ob);
+        }
+        return super.dataset.getNormalizacion().distance(a, b);
+    }
+
+    /**
+     * @brief Prediccion de la valoracion de un item candidato a partir de su distancia a un item valorado por el usuario
+     * @param distancia Distancia entre el item valorado y el candidato
+     * @param rating Valoracion del usuario al item valorado
+     * @param dItem Item candidato
+     * @return La prediccion, nunca negativa
+     */
+    private double prediccion(double distancia, double rating, Item dItem) {
+        double prediction = (1 - distancia) * maxRating - (maxRating - rating) / (2*maxRating);
+        double meanRating = estadisticas.media(dItem.getOrdinal());
+        if (meanRating == meanRating) prediction -= (maxRating - meanRating) / (2*maxRating);
+        if (prediction < 0) prediction = 0.0;
+        return prediction;
+    }
+
+    /**
+     * @brief Añade una prediccion a las k mejores predicciones distintas, agrupando los items con la misma prediccion
+     */
+    private void anadirPrediccion(SortedMap<Double, List<Item>> maxPred, Item dItem, double prediction) {
+        if(maxPred.containsKey(prediction)) {
+            maxPred.get(prediction).add(dItem);
+        }
+        else {
+            List<Item> value = new ArrayList<>(List.of(dItem));
+            if (maxPred.size() < k)
+                maxPred.put(prediction, value);
+            else if (maxPred.firstKey() < prediction) {
+                maxPred.remove(maxPred.firstKey());
+                maxPred.put(prediction, value);
+            }
+        }
+    }
 }
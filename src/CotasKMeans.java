@@ -0,0 +1,145 @@
+/**
+ @file CotasKMeans.java
+ @brief Codigo de la clase CotasKMeans
+
+ */
+package dominio.clases;
+
+import java.util.*;
+
+/**
+ * @class CotasKMeans
+ * @brief Cotas de distancia de la variante acelerada del k-means (al estilo de Elkan): para cada usuario, una cota superior
+ *    de la distancia a su centroide y una cota inferior de la distancia a cada centroide. Tras recolocar los centroides las
+ *    cotas se corrigen con lo que se ha desplazado cada uno, y solo se calculan las distancias que las cotas no permiten
+ *    descartar. La distancia entre un usuario y un centroide solo cuenta los items que tienen en comun, de modo que el
+ *    desplazamiento de un centroide acota la variacion de esa distancia solo si no cambian los items en comun; por eso,
+ *    si un centroide gana o pierde la media de un item, se descartan sus cotas para los usuarios que han valorado ese
+ *    item (que se encuentran con un indice invertido item -> usuarios).
+ * @author Muhammad Haris
+ */
+public final class CotasKMeans {
+
+    /**
+     * @brief Holgura relativa y absoluta con que se corrigen las cotas, para que los errores de redondeo al calcular las
+     * distancias no las invaliden
+     */
+    private static final double HOLGURA = 1e-10;
+
+    /**
+     * @brief Numero de centroides
+     */
+    private final int k;
+
+    /**
+     * @brief Cota superior de la distancia de cada usuario a su centroide
+     */
+    private final double[] superior;
+
+    /**
+     * @brief Indica, para cada usuario, que no tiene ningun item en comun con su centroide (distancia -1)
+     */
+    private final boolean[] sinComun;
+
+    /**
+     * @brief Cota inferior de la distancia de cada usuario a cada centroide, en la posicion usuario*k + centroide. Vale
+     * +infinito si el usuario no tiene items en comun con el centroide, y 0 si no se sabe nada
+     */
+    private final double[] inferior;
+
+    /**
+     * @brief Indice invertido: los usuarios que han valorado el item o estan en usuariosItem[inicioItem[o]..inicioItem[o+1])
+     */
+    private final int[] inicioItem, usuariosItem;
+
+    /**
+     * @brief Constructora de unas cotas sin informacion
+     * @param estado Estado del k-means, con los usuarios que se agrupan
+     * @param k Numero de centroides (los centroides se identifican por getCentroid_number() - 1)
+     * @param nItems Numero de items (los ordinales de las valoraciones son menores)
+     */
+    public CotasKMeans(EstadoKMeans estado, int k, int nItems) {
+        int nUsuarios = estado.size();
+        this.k = k;
+        superior = new double[nUsuarios];
+        sinComun = new boolean[nUsuarios];
+        inferior = new double[nUsuarios * k];
+        Arrays.fill(superior, Double.POSITIVE_INFINITY);
+
+        inicioItem = new int[nItems + 1];
+        for (int u = 0; u < nUsuarios; ++u) {
+            MapaIntDouble r = estado.getUsuari(u).getValoraciones();
+            for (int p = 0; p < r.capacidad(); ++p)
+                if (r.ocupada(p)) ++inicioItem[r.clave(p) + 1];
+        }
+        for (int o = 0; o < nItems; ++o) inicioItem[o + 1] += inicioItem[o];
+        usuariosItem = new int[inicioItem[nItems]];
+        int[] pos = Arrays.copyOf(inicioItem, nItems);
+        for (int u = 0; u < nUsuarios; ++u) {
+            MapaIntDouble r = estado.getUsuari(u).getValoraciones();
+            for (int p = 0; p < r.capacidad(); ++p)
+                if (r.ocupada(p)) usuariosItem[pos[r.clave(p)]++] = u;
+        }
+    }
+
+    /**
+     * @brief Indica si las cotas garantizan que la distancia del usuario u a su centroide no supera d
+     */
+    public boolean acotaPropia(int u, double d) {
+        return sinComun[u] || superior[u] <= d;
+    }
+
+    /**
+     * @brief Registra la distancia exacta del usuario u a su centroide c (-1 si no tienen items en comun)
+     */
+    public void registrarPropia(int u, int c, double d) {
+        sinComun[u] = d == -1;
+        superior[u] = sinComun[u] ? Double.POSITIVE_INFINITY : d;
+        setInferior(u, c, d);
+    }
+
+    /**
+     * @brief Cota inferior de la distancia del usuario u al centroide c
+     */
+    public double getInferior(int u, int c) {
+        return inferior[u * k + c];
+    }
+
+    /**
+     * @brief Registra la distancia exacta del usuario u al centroide c (-1 si no tienen items en comun)
+     */
+    public void setInferior(int u, int c, double d) {
+        inferior[u * k + c] = d == -1 ? Double.POSITIVE_INFINITY : d;
+    }
+
+    /**
+     * @brief Corrige las cotas tras recolocar los centroides
+     * @param centroides Centroides recolocados, tras llamar a promediarConDeriva
+     * @param deriva Desplazamiento de cada centroide devuelto por promediarConDeriva (0 si no se ha recolocado)
+     * @param propio Centroide asignado a cada usuario
+     */
+    public void desplazar(List<Centroid> centroides, double[] deriva, int[] propio) {
+        for (int u = 0; u < superior.length; ++u) {
+            if (!sinComun[u]) superior[u] = (superior[u] + deriva[propio[u]]) * (1 + HOLGURA) + HOLGURA;
+            for (int c = 0; c < k; ++c) {
+                int p = u * k + c;
+                if (inferior[p] != Double.POSITIVE_INFINITY)
+                    inferior[p] = Math.max(0.0, (inferior[p] - deriva[c]) * (1 - HOLGURA) - HOLGURA);
+            }
+        }
+        for (Centroid centroide : centroides) {
+            int c = centroide.getCentroid_number() - 1;
+            for (int i = 0; i < centroide.getNumCambios(); ++i) {
+                int o = centroide.getCambio(i);
+                for (int q = inicioItem[o]; q < inicioItem[o + 1]; ++q) {
+                    int u = usuariosItem[q];
+                    inferior[u * k + c] = 0.0;
+                    if (propio[u] == c) {
+                        sinComun[u] = false;
+                        superior[u] = Double.POSITIVE_INFINITY;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -4,7 +4,6 @@
 
  */
 package dominio.clases;
-import persistencia.ControladorPersistencia;
 import java.net.URISyntaxException;
 import java.util.*;
 import java.io.*;
@@ -28,12 +27,56 @@ public class Datos {
      */
     private List<Usuari> users = new ArrayList<>();
 
+    /**
+     * @brief Diccionario que asigna a cada usuario su ordinal denso
+     */
+    private DiccionarioUsuarios diccionario = new DiccionarioUsuarios();
+
+    /**
+     * @brief Usuarios de users indexados por su identificador, construido la primera vez que se añade una valoracion
+     * (null si aun no se ha construido o users ha cambiado)
+     */
+    private HashMap<Integer, Usuari> usuariosPorId;
+
+    /**
+     * @brief Matriz dispersa de valoraciones, null mientras no se construya con construirMatriz()
+     */
+    private MatrizValoraciones matriz;
+
+    /**
+     * @brief Conjunto de items al que se refieren las valoraciones
+     */
+    private Cjt_items dataset;
+
+    /**
+     * @brief Numero, suma, media y varianza de las valoraciones de cada item, indexadas por su ordinal
+     */
+    private EstadisticasItems estadisticas = new EstadisticasItems(0);
+
+    /**
+     * @brief Filas por segundo a las que se ha leido el fichero de valoraciones (0 si no se ha leido ninguno)
+     */
+    private double filasPorSegundo;
+
+    /**
+     * @brief Modelo de SlopeOne que se mantiene al dia con cada valoracion nueva, null si no hay ninguno
+     */
+    private ModeloSlopeOne modeloSlopeOne;
 
     /**
      * @return el conjunto de valoraciones asociadas a cada uno de los items del dataset
      * @brief Metodo que devuelve el conjunto de valoraciones asociadas a cada uno de los items del dataset
      */
     public HashMap<Item, ArrayList<Double>> getRatings() {
+        if (ratings == null) {
+            ratings = new HashMap<>();
+            for (int i = 0; i < matriz.getNumColumnas(); ++i) {
+                if (matriz.inicioColumna(i) == matriz.finColumna(i)) continue;
+                ArrayList<Double> item_i_ratings = new ArrayList<>(matriz.finColumna(i) - matriz.inicioColumna(i));
+                for (int q = matriz.inicioColumna(i); q < matriz.finColumna(i); ++q) item_i_ratings.add((double) matriz.valorColumna(q));
+                ratings.put(matriz.getItem(i), item_i_ratings);
+            }
+        }
         return ratings;
     }
 
@@ -72,67 +115,206 @@ public class Datos {
      * @brief Metodo que devuelve el conjunto usuarios y sus respectivas valoraciones para cada item del dataset
      */
     public HashMap<Integer, HashMap<Item, Double>> getUserRatings() {
+        if (UserRatings == null) {
+            UserRatings = new HashMap<>(2 * users.size());
+            for (int fila = 0; fila < matriz.getNumFilas(); ++fila) {
+                if (matriz.inicioFila(fila) == matriz.finFila(fila)) continue;
+                HashMap<Item, Double> r = new HashMap<>(2 * (matriz.finFila(fila) - matriz.inicioFila(fila)));
+                for (int p = matriz.inicioFila(fila); p < matriz.finFila(fila); ++p)
+                    r.put(matriz.getItem(matriz.item(p)), (double) matriz.valor(p));
+                UserRatings.put(diccionario.id(fila), r);
+            }
+        }
         return UserRatings;
     }
 
+    /**
+     * @return el diccionario de ordinales de los usuarios de los datos
+     * @brief Metodo que devuelve el diccionario que asigna a cada usuario su ordinal denso
+     */
+    public DiccionarioUsuarios getDiccionario() {
+        return diccionario;
+    }
+
+    /**
+     * @return las estadisticas de las valoraciones de cada item
+     * @brief Metodo que devuelve las estadisticas (numero, suma, media y varianza) de las valoraciones de cada item,
+     * calculadas durante la lectura y mantenidas con cada valoracion nueva
+     */
+    public EstadisticasItems getEstadisticas() {
+        return estadisticas;
+    }
+
+    /**
+     * @return las filas por segundo a las que se ha leido el fichero de valoraciones
+     * @brief Metodo que devuelve el rendimiento de la lectura del fichero de valoraciones, para seguir su evolucion
+     */
+    public double getFilasPorSegundo() {
+        return filasPorSegundo;
+    }
+
+    /**
+     * @return el modelo de SlopeOne asociado, o null si no hay ninguno
+     * @brief Metodo que devuelve el modelo de SlopeOne que se actualiza con las valoraciones nuevas
+     */
+    public ModeloSlopeOne getModeloSlopeOne() {
+        return modeloSlopeOne;
+    }
+
+    /**
+     * @param modelo Modelo entrenado con los usuarios de este Datos, o null para dejar de actualizar ninguno
+     * @brief Metodo que asocia un modelo de SlopeOne, que a partir de ahora recibe cada valoracion de anadirValoracion
+     */
+    public void setModeloSlopeOne(ModeloSlopeOne modelo) {
+        this.modeloSlopeOne = modelo;
+    }
+
+    /**
+     * @param userId identificador del usuario que valora
+     * @param i      item valorado
+     * @param rating valoracion
+     * @return true si se ha registrado la valoracion, false si el item no esta indexado en el conjunto de items
+     * @brief Metodo que registra una nueva valoracion, actualizando las valoraciones del usuario, las de cada item y sus
+     * estadisticas (y el modelo de SlopeOne asociado, si lo hay). Si el usuario ya habia valorado el item, la nueva
+     * valoracion sustituye a la anterior. La matriz dispersa deja de ser valida y se descarta. Como al leer el fichero,
+     * las valoraciones de items que no pertenecen al conjunto se ignoran
+     */
+    public boolean anadirValoracion(int userId, Item i, double rating) {
+        int o = i.getOrdinal();
+        if (o < 0) return false;
+        if (dataset != null) {
+            Diccionario items = dataset.getDiccionario();
+            if (o >= items.size() || !items.id(o).equals(i.getId())) return false;
+        }
+        getRatings();
+        diccionario.intern(userId);
+        HashMap<Item, Double> itemRatings = getUserRatings().computeIfAbsent(userId, k -> new HashMap<>());
+        Double anterior = itemRatings.put(i, rating);
+        ArrayList<Double> item_i_ratings = ratings.computeIfAbsent(i, k -> new ArrayList<>());
+        if (anterior != null) {
+            item_i_ratings.remove(anterior);
+            estadisticas.eliminar(o, anterior);
+        }
+        item_i_ratings.add(rating);
+        estadisticas.anadir(o, rating);
+        if (rating > maxRating) maxRating = rating;
+        if (modeloSlopeOne != null) modeloSlopeOne.addRating(userId, i, rating);
+
+        if (usuariosPorId == null) {
+            usuariosPorId = new HashMap<>(2 * users.size());
+            for (Usuari v : users) usuariosPorId.put(v.getUserId(), v);
+        }
+        Usuari u = usuariosPorId.get(userId);
+        if (u == null) {
+            u = new Usuari(userId, itemRatings);
+            u.setOrdinal(diccionario.ordinal(userId));
+            users.add(u);
+            usuariosPorId.put(userId, u);
+        }
+        else u.setRatedItems(itemRatings);
+        matriz = null;
+        return true;
+    }
+
+    /**
+     * @return la matriz dispersa de valoraciones, o null si no se ha construido
+     * @brief Metodo que devuelve la matriz dispersa de valoraciones construida por construirMatriz()
+     */
+    public MatrizValoraciones getMatriz() {
+        return matriz;
+    }
+
+    /**
+     * @return la matriz dispersa de valoraciones
+     * @brief Metodo que construye la matriz dispersa (CSR y su traspuesta CSC) de las valoraciones. A partir de ese momento
+     * los usuarios de getUsers() pasan a ser vistas de sus filas y se libera la copia por item de las valoraciones, que
+     * getRatings() reconstruye desde la matriz si se vuelve a pedir
+     */
+    public MatrizValoraciones construirMatriz() {
+        if (matriz == null) {
+            matriz = MatrizValoraciones.desde(getUserRatings(), diccionario, dataset.getColumnas());
+            List<Usuari> vistas = new ArrayList<>(users.size());
+            for (Usuari u : users) {
+                Usuari v = new Usuari(u.getUserId(), matriz, diccionario.ordinal(u.getUserId()));
+                vistas.add(v);
+            }
+            users = vistas;
+            usuariosPorId = null;
+            ratings = null;
+        }
+        return matriz;
+    }
+
     /**
      * @param pathToFile indica el camino hasta el archivo en que se halla el dataset de valoraciones a leer
      * @param dataset    indica el Cjt_items del que se dan las valoraciones en el archivo a procesar
      * @brief Constructora parametrizada que asocia a una instancia de Valoracio el conjunto de valoraciones de cada usuario del data set para un conjunto de items determinado
      */
     public Datos(String pathToFile, Cjt_items dataset) {
+        this(pathToFile, dataset, new DiccionarioUsuarios());
+    }
 
-        ControladorPersistencia CtrlPers = ControladorPersistencia.getInstance();
-        try {
-            CtrlPers.resetDatos();
-        } catch (IOException e){
-        }
-        this.UserRatings = new HashMap<>();
-        ArrayList<Integer> indices = new ArrayList<>();
-        maxRating = 0.0;
+    /**
+     * @param pathToFile  indica el camino hasta el archivo en que se halla el dataset de valoraciones a leer
+     * @param dataset     indica el Cjt_items del que se dan las valoraciones en el archivo a procesar
+     * @param diccionario indica el diccionario de ordinales de usuario, que puede compartirse entre varias instancias de Datos
+     * @brief Constructora parametrizada que, ademas, registra cada usuario leido en el diccionario de ordinales dado
+     */
+    public Datos(String pathToFile, Cjt_items dataset, DiccionarioUsuarios diccionario) {
 
+        this.diccionario = diccionario;
+        this.dataset = dataset;
+        this.estadisticas = new EstadisticasItems(dataset.getDiccionario().size());
+        LectorValoraciones lector = null;
         try {
-            CtrlPers.initializeCtrlDatos(pathToFile);
-        } catch (Exception e) {
+            lector = new LectorValoraciones(pathToFile, dataset, diccionario);
+        } catch (IOException e) {
             System.out.println(e);
             System.exit(-1);
         }
-        try {
-            int id_user = 0;
-            String id_item = "";
-            double rating = 0;
-
-            ArrayList<Double> item_i_ratings;
-            while (CtrlPers.hasMoreRatings()) {
-                CtrlPers.readRating();
-                id_user = CtrlPers.getUserId();
-                id_item = CtrlPers.getItemId();
-                rating = CtrlPers.getRating();
-                /** agregamos el item valorado por el usuario con identificador id_user a la lista de valoraciones del usuario  */
-                HashMap<Item, Double> itemRatings = this.UserRatings.getOrDefault(id_user, new HashMap<>());
-                Item i = dataset.getItem(id_item);
-                itemRatings.put(i, rating);
-                if (!ratings.containsKey(i)) {
-                    item_i_ratings = new ArrayList<>();
-                    item_i_ratings.add(rating);
-                    ratings.put(i, item_i_ratings);
-                } else {
-                    item_i_ratings = ratings.get(i);
-                    item_i_ratings.add(rating);
-                    ratings.put(i, item_i_ratings);
-                }
-                this.UserRatings.put(id_user, itemRatings);
-            }
-            maxRating = CtrlPers.getMaxRating();
-        } catch (Exception e) {
-            System.out.println(e);
-        }
-        for(int i:UserRatings.keySet())users.add(new Usuari(i, UserRatings.get(i)));
-        try {
-            CtrlPers.resetDatos();
-        } catch (IOException e) {
-            e.printStackTrace();
+        int n = lector.size();
+        int[] us = lector.getUsuarios(), is = lector.getItems();
+        double[] vs = lector.getValores();
+        float[] fs = new float[n];
+        for (int k = 0; k < n; ++k) {
+            fs[k] = (float) vs[k];
+            estadisticas.anadir(is[k], vs[k]);
         }
+        maxRating = lector.getMaxRating();
+        filasPorSegundo = lector.getFilasPorSegundo();
+
+        ColumnasItems columnas = dataset.getColumnas();
+        Item[] items = new Item[columnas.size()];
+        for (int o = 0; o < items.length; ++o) items[o] = columnas.getItem(o);
+        matriz = new MatrizValoraciones(diccionario.size(), items, us, is, fs, n);
+        /** los usuarios son vistas de las filas de la matriz, en el orden de sus ordinales en el diccionario de usuarios:
+         *  el de su primera aparicion entre todos los ficheros de valoraciones que comparten el diccionario, que no tiene
+         *  por que coincidir con el orden de este fichero */
+        for (int fila = 0; fila < matriz.getNumFilas(); ++fila)
+            if (matriz.inicioFila(fila) < matriz.finFila(fila)) users.add(new Usuari(diccionario.id(fila), matriz, fila));
+        this.UserRatings = null;
+        this.ratings = null;
+    }
+
+    /**
+     * @param dataset      indica el Cjt_items al que se refieren las valoraciones
+     * @param diccionario  indica el diccionario de ordinales de usuario con que se construyo la matriz
+     * @param matriz       matriz dispersa de valoraciones
+     * @param estadisticas estadisticas de las valoraciones de cada item
+     * @param maxRating    valoracion maxima
+     * @brief Constructora a partir de una matriz de valoraciones ya construida (la usa InstantaneaDataset). Los usuarios
+     * son vistas de las filas de la matriz, como en la constructora que lee el fichero
+     */
+    Datos(Cjt_items dataset, DiccionarioUsuarios diccionario, MatrizValoraciones matriz, EstadisticasItems estadisticas, double maxRating) {
+        this.dataset = dataset;
+        this.diccionario = diccionario;
+        this.matriz = matriz;
+        this.estadisticas = estadisticas;
+        this.maxRating = maxRating;
+        for (int fila = 0; fila < matriz.getNumFilas(); ++fila)
+            if (matriz.inicioFila(fila) < matriz.finFila(fila)) users.add(new Usuari(diccionario.id(fila), matriz, fila));
+        this.UserRatings = null;
+        this.ratings = null;
     }
 
     private File readFile(String pathToCsv) throws URISyntaxException {
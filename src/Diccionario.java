@@ -0,0 +1,64 @@
+/**
+ @file Diccionario.java
+ @brief Codigo de la clase Diccionario
+
+ */
+package dominio.clases;
+
+import java.util.*;
+
+/**
+ * @class Diccionario
+ * @brief Diccionario de internado que asigna a cada identificador de item un ordinal denso (0, 1, 2, ...) en el orden en
+ *    que se registran. Se construye al cargar el conjunto de items y permite indexar arrays y mapas primitivos por item.
+ * @author Houda El Fezzak Bekkouri
+ */
+public final class Diccionario {
+
+    /**
+     * @brief Ordinal asignado a cada identificador
+     */
+    private final HashMap<String, Integer> ordinales = new HashMap<>();
+
+    /**
+     * @brief Identificadores indexados por su ordinal
+     */
+    private final ArrayList<String> ids = new ArrayList<>();
+
+    /**
+     * @brief Registra el identificador id si aun no estaba y devuelve su ordinal
+     * @param id Identificador a registrar
+     * @return El ordinal asociado a id
+     */
+    public int intern(String id) {
+        Integer o = ordinales.get(id);
+        if (o != null) return o;
+        ordinales.put(id, ids.size());
+        ids.add(id);
+        return ids.size() - 1;
+    }
+
+    /**
+     * @brief Devuelve el ordinal del identificador id, o -1 si no esta registrado
+     * @param id Identificador a buscar
+     */
+    public int ordinal(String id) {
+        Integer o = ordinales.get(id);
+        return o == null ? -1 : o;
+    }
+
+    /**
+     * @brief Devuelve el identificador asociado al ordinal o
+     * @param o Ordinal del identificador
+     */
+    public String id(int o) {
+        return ids.get(o);
+    }
+
+    /**
+     * @brief Numero de identificadores registrados
+     */
+    public int size() {
+        return ids.size();
+    }
+}
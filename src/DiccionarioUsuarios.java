@@ -0,0 +1,67 @@
+/**
+ @file DiccionarioUsuarios.java
+ @brief Codigo de la clase DiccionarioUsuarios
+
+ */
+package dominio.clases;
+
+import java.util.*;
+
+/**
+ * @class DiccionarioUsuarios
+ * @brief Diccionario de internado que asigna a cada identificador de usuario un ordinal denso (0, 1, 2, ...) en el orden
+ *    en que se registran. Puede compartirse entre varias instancias de Datos para que un mismo usuario tenga el mismo
+ *    ordinal en todos los ficheros de valoraciones.
+ * @author Houda El Fezzak Bekkouri
+ */
+public final class DiccionarioUsuarios {
+
+    /**
+     * @brief Ordinal asignado a cada identificador de usuario
+     */
+    private final MapaIntInt ordinales = new MapaIntInt();
+
+    /**
+     * @brief Identificadores de usuario indexados por su ordinal
+     */
+    private int[] ids = new int[16];
+
+    private int size;
+
+    /**
+     * @brief Registra el usuario con identificador id si aun no estaba y devuelve su ordinal
+     * @param id Identificador del usuario
+     * @return El ordinal asociado a id
+     */
+    public int intern(int id) {
+        int o = ordinales.get(id, -1);
+        if (o != -1) return o;
+        if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+        ids[size] = id;
+        ordinales.put(id, size);
+        return size++;
+    }
+
+    /**
+     * @brief Devuelve el ordinal del usuario con identificador id, o -1 si no esta registrado
+     * @param id Identificador del usuario
+     */
+    public int ordinal(int id) {
+        return ordinales.get(id, -1);
+    }
+
+    /**
+     * @brief Devuelve el identificador del usuario con ordinal o
+     * @param o Ordinal del usuario
+     */
+    public int id(int o) {
+        return ids[o];
+    }
+
+    /**
+     * @brief Numero de usuarios registrados
+     */
+    public int size() {
+        return size;
+    }
+}
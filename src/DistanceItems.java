@@ -102,6 +102,20 @@ public class DistanceItems {
         return 0.2*distInt + 0.2*distDouble + 0.2*distDate + 0.1*distBool + 0.3*distBS;
     }
 
+    /**
+     * @brief Metodo que devuelve la distancia entre dos items de un catalogo proyectado en memoria. Los atributos se leen
+     * del catalogo, asi que basta con items que solo lleven el identificador (como los de CatalogoMapeado.getItem())
+     * @param catalogo Catalogo que contiene los dos items
+     * @param a Primer item en el computo de la distancia
+     * @param b Segundo item en el computo de la distancia
+     * @return Devuelve el valor de la distancia, un double entre 0 y 1, o -1 si alguno de los items no esta en el catalogo
+     */
+    public static double get_distance(CatalogoMapeado catalogo, Item a, Item b) {
+        int oa = catalogo.ordinal(a), ob = catalogo.ordinal(b);
+        if (oa < 0 || ob < 0) return -1;
+        return catalogo.distance(oa, ob);
+    }
+
     /**
      * @brief Metodo que calcula la similitud entre dos atributos de tipo categorico. Entre cada par de atributos categoricos la similitud se obtiene haciendo el cardinal
      * de la interseccion entre el cardinal de la union. Para la similitud global entre los atributos categoricos de los dos items se calcula la distancia euclidiana
@@ -9,11 +9,12 @@ import java.util.*;
 
 /**
  * @class DistanceUsers
- * @brief Clase que calcula la distancia entre un usuario y un centroide
+ * @brief Clase que calcula la distancia entre un usuario y un centroide. Es la metrica euclidiana de MetricaUsuarios, la
+ *    que se usa por defecto
  * @author Muhammad Haris
  */
 
-public class DistanceUsers {
+public class DistanceUsers implements MetricaUsuarios {
 
     /**
      * @brief Metodo que calcula la distancia euclidiana entre un usuario y un centroide
@@ -34,6 +35,144 @@ public class DistanceUsers {
         else return Math.sqrt(sum);
     }
 
+    /**
+     * @brief Metodo que calcula la distancia euclidiana entre un usuario y un centroide representados por mapas primitivos
+     * indexados por el ordinal de los items
+     * @param f1 Mapa que guarda los ordinales de los items del usuario y sus respectivas valoraciones
+     * @param f2 Mapa que guarda los ordinales de los items del centroide y sus respectivas valoraciones
+     * @return Distancia euclidiana entre el usuario y el centroide, -1 si no tienen ningun item en comun
+     */
+    public double calculateEuclideanDistance (MapaIntDouble f1, MapaIntDouble f2) {
+        double sum = 0;
+        int comun = 0;
+        for (int p = 0; p < f1.capacidad(); ++p) {
+            if (!f1.ocupada(p)) continue;
+            double v2 = f2.get(f1.clave(p), Double.NaN);
+            if (v2 == v2) {
+                double d = f1.valor(p) - v2;
+                sum += d * d;
+                ++comun;
+            }
+        }
+        if (comun == 0) return -1.0;
+        else return Math.sqrt(sum);
+    }
+
+    /**
+     * @brief Metodo que calcula la distancia euclidiana entre un usuario y un centroide denso, cuyas valoraciones estan
+     * en un array indexado por el ordinal de los items (NaN si el centroide no tiene valoracion para el item)
+     * @param f1 Mapa que guarda los ordinales de los items del usuario y sus respectivas valoraciones
+     * @param f2 Valoraciones del centroide indexadas por ordinal
+     * @return Distancia euclidiana entre el usuario y el centroide, -1 si no tienen ningun item en comun
+     */
+    public double calculateEuclideanDistance (MapaIntDouble f1, double[] f2) {
+        double sum = 0;
+        int comun = 0;
+        for (int p = 0; p < f1.capacidad(); ++p) {
+            if (!f1.ocupada(p)) continue;
+            int o = f1.clave(p);
+            double v2 = o < f2.length ? f2[o] : Double.NaN;
+            if (v2 == v2) {
+                double d = f1.valor(p) - v2;
+                sum += d * d;
+                ++comun;
+            }
+        }
+        if (comun == 0) return -1.0;
+        else return Math.sqrt(sum);
+    }
+
+    /**
+     * @class Resultado
+     * @brief Resultado de los metodos de distancia fusionados: distancia euclidiana y numero de items en comun, calculados
+     *    en una sola pasada. Se reutiliza entre llamadas para no crear un objeto por comparacion, por lo que cada hilo debe
+     *    usar el suyo
+     */
+    public static final class Resultado {
+        private double distancia;
+        private int comun;
+
+        /**
+         * @brief Distancia euclidiana sobre los items en comun, -1 si no hay ninguno
+         */
+        public double getDistancia() { return distancia; }
+
+        /**
+         * @brief Numero de items en comun
+         */
+        public int getComun() { return comun; }
+
+        /**
+         * @brief Indica si no hay ningun item en comun (la distancia no esta definida)
+         */
+        public boolean sinComun() { return comun == 0; }
+
+        /**
+         * @brief Fija el resultado de una comparacion
+         * @param distancia Distancia calculada (-1 si no hay items en comun)
+         * @param comun Numero de items en comun
+         */
+        void fijar(double distancia, int comun) {
+            this.comun = comun;
+            this.distancia = comun == 0 ? -1.0 : distancia;
+        }
+    }
+
+    /**
+     * @brief Metodo que calcula en una sola pasada la distancia euclidiana y el numero de items en comun entre un usuario
+     * y un centroide denso, en lugar de llamar a calculateEuclideanDistance y a Collaborative.calculaItemsComun
+     * @param f1 Mapa que guarda los ordinales de los items del usuario y sus respectivas valoraciones
+     * @param f2 Valoraciones del centroide indexadas por ordinal (NaN si el centroide no tiene valoracion para el item)
+     * @param r Resultado en el que se dejan la distancia y los items en comun
+     */
+    @Override
+    public void distanciaYComun(MapaIntDouble f1, double[] f2, Resultado r) {
+        double sum = 0;
+        int comun = 0;
+        for (int p = 0; p < f1.capacidad(); ++p) {
+            if (!f1.ocupada(p)) continue;
+            int o = f1.clave(p);
+            double v2 = o < f2.length ? f2[o] : Double.NaN;
+            if (v2 == v2) {
+                double d = f1.valor(p) - v2;
+                sum += d * d;
+                ++comun;
+            }
+        }
+        r.fijar(Math.sqrt(sum), comun);
+    }
+
+    /**
+     * @brief Metodo que calcula en una sola pasada la distancia euclidiana y el numero de items en comun entre dos vectores
+     * ordenados por ordinal de item, recorriendolos a la vez sin calcular ningun hash
+     * @param f1 Valoraciones del usuario ordenadas por ordinal
+     * @param f2 Valoraciones del centroide (u otro usuario) ordenadas por ordinal
+     * @param r Resultado en el que se dejan la distancia y los items en comun
+     */
+    @Override
+    public void distanciaYComun(VectorOrdenado f1, VectorOrdenado f2, Resultado r) {
+        double sum = 0;
+        int comun = 0;
+        int i = 0, j = 0, n1 = f1.size(), n2 = f2.size();
+        while (i < n1 && j < n2) {
+            int a = f1.ordinal(i), b = f2.ordinal(j);
+            if (a < b) ++i;
+            else if (a > b) ++j;
+            else {
+                double d = f1.valor(i++) - f2.valor(j++);
+                sum += d * d;
+                ++comun;
+            }
+        }
+        r.fijar(Math.sqrt(sum), comun);
+    }
+
+    /**
+     * @brief La distancia euclidiana cumple la desigualdad triangular, por lo que admite la variante acelerada del k-means
+     */
+    @Override
+    public boolean admiteCotas() { return true; }
+
     /*
     public double calculateCosineSimilarity(Map<Item,Double> f1, Map<Item, Double> f2) {
         double dot = 0.0;
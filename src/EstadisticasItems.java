@@ -0,0 +1,157 @@
+/**
+ @file EstadisticasItems.java
+ @brief Codigo de la clase EstadisticasItems
+
+ */
+package dominio.clases;
+
+import java.util.*;
+
+/**
+ * @class EstadisticasItems
+ * @brief Tabla de estadisticas de las valoraciones de cada item (numero, suma, media y varianza), indexada por el ordinal
+ *    del item. Se calcula una sola vez al cargar las valoraciones y se actualiza con cada valoracion nueva, de forma que
+ *    consultar la valoracion promedio de un item es leer un array primitivo.
+ * @author Houda El Fezzak Bekkouri
+ */
+public final class EstadisticasItems {
+
+    private int[] cuenta;
+    private double[] suma;
+    private double[] media;
+    /**
+     * @brief Suma de los cuadrados de las desviaciones respecto a la media (algoritmo de Welford)
+     */
+    private double[] m2;
+
+    /**
+     * @brief Constructora de una tabla vacia
+     * @param nItems Numero de items esperado (la tabla crece si llegan ordinales mayores)
+     */
+    public EstadisticasItems(int nItems) {
+        reservar(Math.max(nItems, 1));
+    }
+
+    /**
+     * @brief Constructora a partir de las valoraciones de cada item
+     * @param ratings Diccionario con los items y todas sus valoraciones
+     * @param nItems Numero de items del conjunto
+     */
+    public EstadisticasItems(Map<Item, ArrayList<Double>> ratings, int nItems) {
+        this(nItems);
+        for (Map.Entry<Item, ArrayList<Double>> e : ratings.entrySet()) {
+            int o = e.getKey().getOrdinal();
+            if (o < 0) continue;
+            for (double r : e.getValue()) anadir(o, r);
+        }
+    }
+
+    /**
+     * @brief Constructora a partir de las columnas de una matriz de valoraciones
+     * @param matriz Matriz de valoraciones
+     */
+    public EstadisticasItems(MatrizValoraciones matriz) {
+        this(matriz.getNumColumnas());
+        for (int i = 0; i < matriz.getNumColumnas(); ++i)
+            for (int q = matriz.inicioColumna(i); q < matriz.finColumna(i); ++q) anadir(i, matriz.valorColumna(q));
+    }
+
+    /**
+     * @brief Constructora a partir de las columnas de la tabla ya calculadas, sin copiarlas (la usa InstantaneaDataset)
+     */
+    EstadisticasItems(int[] cuenta, double[] suma, double[] media, double[] m2) {
+        this.cuenta = cuenta;
+        this.suma = suma;
+        this.media = media;
+        this.m2 = m2;
+    }
+
+    private void reservar(int n) {
+        if (cuenta == null) {
+            cuenta = new int[n];
+            suma = new double[n];
+            media = new double[n];
+            m2 = new double[n];
+        }
+        else {
+            cuenta = Arrays.copyOf(cuenta, n);
+            suma = Arrays.copyOf(suma, n);
+            media = Arrays.copyOf(media, n);
+            m2 = Arrays.copyOf(m2, n);
+        }
+    }
+
+    /**
+     * @brief Registra una nueva valoracion del item
+     * @param item Ordinal del item valorado
+     * @param rating Valoracion
+     */
+    public void anadir(int item, double rating) {
+        if (item >= cuenta.length) reservar(Math.max(item + 1, cuenta.length * 2));
+        double anterior = cuenta[item] == 0 ? 0.0 : media[item];
+        ++cuenta[item];
+        suma[item] += rating;
+        media[item] = suma[item] / cuenta[item];
+        m2[item] += (rating - anterior) * (rating - media[item]);
+    }
+
+    /**
+     * @brief Elimina una valoracion registrada previamente para el item
+     * @param item Ordinal del item
+     * @param rating Valoracion a eliminar
+     */
+    public void eliminar(int item, double rating) {
+        if (item >= cuenta.length || cuenta[item] == 0) return;
+        double anterior = media[item];
+        --cuenta[item];
+        suma[item] -= rating;
+        if (cuenta[item] == 0) {
+            suma[item] = media[item] = m2[item] = 0.0;
+            return;
+        }
+        media[item] = suma[item] / cuenta[item];
+        m2[item] = Math.max(0.0, m2[item] - (rating - anterior) * (rating - media[item]));
+    }
+
+    /**
+     * @brief Numero de valoraciones del item
+     */
+    public int cuenta(int item) {
+        return item >= 0 && item < cuenta.length ? cuenta[item] : 0;
+    }
+
+    /**
+     * @brief Suma de las valoraciones del item
+     */
+    public double suma(int item) {
+        return cuenta(item) > 0 ? suma[item] : 0.0;
+    }
+
+    /**
+     * @brief Valoracion promedio del item, NaN si no tiene valoraciones
+     */
+    public double media(int item) {
+        return cuenta(item) > 0 ? media[item] : Double.NaN;
+    }
+
+    /**
+     * @brief Varianza (poblacional) de las valoraciones del item, NaN si no tiene valoraciones
+     */
+    public double varianza(int item) {
+        return cuenta(item) > 0 ? m2[item] / cuenta[item] : Double.NaN;
+    }
+
+    /**
+     * @brief Suma de los cuadrados de las desviaciones de las valoraciones del item respecto a su media
+     */
+    double m2(int item) {
+        return cuenta(item) > 0 ? m2[item] : 0.0;
+    }
+
+    /**
+     * @brief Numero de posiciones de la tabla (los ordinales validos son menores que este valor)
+     */
+    public int size() {
+        return cuenta.length;
+    }
+}
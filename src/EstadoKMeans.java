@@ -0,0 +1,198 @@
+/**
+ @file EstadoKMeans.java
+ @brief Codigo de la clase EstadoKMeans
+
+ */
+package dominio.clases;
+
+import java.util.*;
+
+/**
+ * @class EstadoKMeans
+ * @brief Estado de una ejecucion del k-means: el cluster asignado a cada usuario (un int[] indexado por la posicion del
+ *    usuario en la lista que se agrupa), su distancia al centroide y el tamaño de cada cluster. Reasignar un usuario es
+ *    O(1), y los Cluster que devuelve el k-means son vistas sobre este estado. Al guardarse fuera de Usuari, varias
+ *    ejecuciones sobre los mismos usuarios pueden hacerse a la vez sin pisarse.
+ * @author Muhammad Haris
+ */
+public final class EstadoKMeans {
+
+    /**
+     * @brief Usuarios agrupados, en el orden de la lista de entrada
+     */
+    private final Usuari[] usuarios;
+
+    /**
+     * @brief Indice del cluster asignado a cada usuario (-1 si aun no tiene)
+     */
+    private final int[] asignacion;
+
+    /**
+     * @brief Distancia de cada usuario a su centroide en el momento de asignarlo
+     */
+    private final double[] distancias;
+
+    /**
+     * @brief Centroide de cada cluster, en el orden en que recibieron su primer usuario
+     */
+    private final List<Centroid> centroides = new ArrayList<>();
+
+    /**
+     * @brief Indice de cluster de cada centroide (por identidad)
+     */
+    private final IdentityHashMap<Centroid, Integer> indices = new IdentityHashMap<>();
+
+    /**
+     * @brief Numero de usuarios de cada cluster
+     */
+    private int[] tamanos = new int[8];
+
+    /**
+     * @brief Miembros de cada cluster agrupados por cluster (los del cluster c en [inicio[c], inicio[c+1])), calculados
+     * bajo demanda; null si alguna asignacion ha cambiado desde entonces
+     */
+    private int[] inicio, miembros;
+
+    /**
+     * @brief Ultima iteracion ejecutada
+     */
+    private int iteraciones;
+
+    /**
+     * @brief Generador aleatorio propio de la ejecucion, null si no se ha fijado semilla (se usa el compartido)
+     */
+    private final Random aleatorio;
+
+    /**
+     * @brief Constructora de un estado sin asignaciones
+     * @param usuarios Usuarios que se agrupan
+     */
+    public EstadoKMeans(List<Usuari> usuarios) {
+        this(usuarios, null);
+    }
+
+    /**
+     * @brief Constructora de un estado sin asignaciones con semilla fija: la ejecucion elige los centroides iniciales con
+     * k-means++ y todas sus decisiones aleatorias salen de un Random con esa semilla, de modo que es reproducible
+     * @param usuarios Usuarios que se agrupan
+     * @param semilla Semilla del generador aleatorio de la ejecucion
+     */
+    public EstadoKMeans(List<Usuari> usuarios, long semilla) {
+        this(usuarios, new Random(semilla));
+    }
+
+    /**
+     * @brief Constructora de un estado sin asignaciones que usa el generador aleatorio dado
+     * @param usuarios Usuarios que se agrupan
+     * @param aleatorio Generador aleatorio de la ejecucion, null para usar el compartido
+     */
+    EstadoKMeans(List<Usuari> usuarios, Random aleatorio) {
+        this.usuarios = usuarios.toArray(new Usuari[0]);
+        this.aleatorio = aleatorio;
+        asignacion = new int[this.usuarios.length];
+        distancias = new double[this.usuarios.length];
+        Arrays.fill(asignacion, -1);
+    }
+
+    /**
+     * @brief Numero de usuarios agrupados
+     */
+    public int size() { return usuarios.length; }
+
+    /**
+     * @brief Usuario en la posicion u
+     */
+    public Usuari getUsuari(int u) { return usuarios[u]; }
+
+    /**
+     * @brief Asigna el usuario u al cluster del centroide c, creando el cluster si es la primera vez que se usa c
+     */
+    public void asignar(int u, Centroid c) {
+        Integer indice = indices.get(c);
+        if (indice == null) {
+            indice = centroides.size();
+            indices.put(c, indice);
+            centroides.add(c);
+            if (indice == tamanos.length) tamanos = Arrays.copyOf(tamanos, 2 * tamanos.length);
+        }
+        if (asignacion[u] >= 0) --tamanos[asignacion[u]];
+        asignacion[u] = indice;
+        ++tamanos[indice];
+        miembros = null;
+    }
+
+    /**
+     * @brief Indice del cluster del usuario u, -1 si no tiene
+     */
+    public int getCluster(int u) { return asignacion[u]; }
+
+    /**
+     * @brief Centroide del usuario u, null si no tiene
+     */
+    public Centroid getCentroide(int u) { return asignacion[u] < 0 ? null : centroides.get(asignacion[u]); }
+
+    public double getDistancia(int u) { return distancias[u]; }
+
+    public void setDistancia(int u, double d) { distancias[u] = d; }
+
+    public int getIteraciones() { return iteraciones; }
+
+    public void setIteraciones(int iteraciones) { this.iteraciones = iteraciones; }
+
+    /**
+     * @brief Generador aleatorio de la ejecucion, null si el estado no tiene semilla
+     */
+    public Random getAleatorio() { return aleatorio; }
+
+    /**
+     * @brief Numero de clusters que han recibido algun usuario
+     */
+    public int getNumClusters() { return centroides.size(); }
+
+    /**
+     * @brief Centroides de los clusters, por indice de cluster
+     */
+    public List<Centroid> getCentroides() { return centroides; }
+
+    /**
+     * @brief Numero de usuarios del cluster c
+     */
+    public int getTamano(int c) { return tamanos[c]; }
+
+    /**
+     * @brief Posiciones de los usuarios del cluster c, en orden creciente
+     */
+    public int[] getMiembros(int c) {
+        if (miembros == null) {
+            int k = centroides.size();
+            inicio = new int[k + 1];
+            for (int a : asignacion) if (a >= 0) ++inicio[a + 1];
+            for (int i = 0; i < k; ++i) inicio[i + 1] += inicio[i];
+            int[] pos = Arrays.copyOf(inicio, k);
+            miembros = new int[inicio[k]];
+            for (int u = 0; u < asignacion.length; ++u)
+                if (asignacion[u] >= 0) miembros[pos[asignacion[u]]++] = u;
+        }
+        return Arrays.copyOfRange(miembros, inicio[c], inicio[c + 1]);
+    }
+
+    /**
+     * @brief Devuelve los clusters del estado como vistas sobre el
+     * @return Un Cluster por cada cluster que ha recibido algun usuario
+     */
+    public ArrayList<Cluster> getClusters() {
+        ArrayList<Cluster> clusters = new ArrayList<>(centroides.size());
+        for (int c = 0; c < centroides.size(); ++c) clusters.add(new Cluster(centroides.get(c), this, c));
+        return clusters;
+    }
+
+    /**
+     * @brief Copia el estado a los usuarios (centroide y distancia), como lo dejaba el k-means secuencial
+     */
+    public void volcar() {
+        for (int u = 0; u < usuarios.length; ++u) {
+            if (asignacion[u] >= 0) usuarios[u].setCentroid(centroides.get(asignacion[u]));
+            usuarios[u].setNearest_dist(distancias[u]);
+        }
+    }
+}
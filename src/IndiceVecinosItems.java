@@ -0,0 +1,219 @@
+/**
+ @file IndiceVecinosItems.java
+ @brief Codigo de la clase IndiceVecinosItems
+
+ */
+package dominio.clases;
+
+import java.io.*;
+import java.util.stream.IntStream;
+
+/**
+ * @class IndiceVecinosItems
+ * @brief Indice precalculado con los N items mas cercanos (segun la distancia de NormalizacionItems) de cada item de un
+ *    Cjt_items, ordenados de menor a mayor distancia. Se construye una vez por conjunto de items y se guarda en un fichero
+ *    binario junto a items.csv, de modo que en los siguientes arranques basta con leerlo.
+ * @author Jordi Elgueta Serra
+ */
+public final class IndiceVecinosItems {
+
+    /**
+     * @brief Numero de vecinos por item que se guarda si no se pide otro
+     */
+    public static final int VECINOS_POR_DEFECTO = 50;
+
+    /**
+     * @brief Marca y version del formato del fichero del indice
+     */
+    private static final int MAGIA = 0x56454349;
+    private static final int VERSION = 1;
+
+    /**
+     * @brief Numero de items del indice
+     */
+    private final int n;
+
+    /**
+     * @brief Numero de vecinos guardados por item (como mucho n-1)
+     */
+    private final int vecinos;
+
+    /**
+     * @brief Ordinales de los vecinos de cada item, en la posicion ordinal*vecinos + j
+     */
+    private final int[] ids;
+
+    /**
+     * @brief Distancias a los vecinos de cada item, en la posicion ordinal*vecinos + j
+     */
+    private final double[] distancias;
+
+    /**
+     * @brief Almacen columnar del conjunto de items indexado
+     */
+    private final ColumnasItems columnas;
+
+    /**
+     * @brief Constructora que calcula el indice comparando cada item con todos los demas
+     * @param dataset Conjunto de items a indexar
+     * @param vecinos Numero de vecinos a guardar por item
+     */
+    public IndiceVecinosItems(Cjt_items dataset, int vecinos) {
+        this.columnas = dataset.getColumnas();
+        this.n = columnas.size();
+        this.vecinos = Math.max(0, Math.min(vecinos, n - 1));
+        this.ids = new int[n * this.vecinos];
+        this.distancias = new double[n * this.vecinos];
+        NormalizacionItems norm = dataset.getNormalizacion();
+        IntStream.range(0, n).parallel().forEach(a -> {
+            MonticuloTopK top = new MonticuloTopK(this.vecinos);
+            for (int b = 0; b < n; ++b)
+                if (b != a) top.ofrecer(b, -norm.distance(a, b));
+            top.ordenar();
+            for (int j = 0; j < top.size(); ++j) {
+                ids[a * this.vecinos + j] = top.id(j);
+                distancias[a * this.vecinos + j] = -top.puntuacion(j);
+            }
+        });
+    }
+
+    private IndiceVecinosItems(ColumnasItems columnas, int vecinos, int[] ids, double[] distancias) {
+        this.columnas = columnas;
+        this.n = columnas.size();
+        this.vecinos = vecinos;
+        this.ids = ids;
+        this.distancias = distancias;
+    }
+
+    /**
+     * @brief Numero de items del indice
+     */
+    public int size() { return n; }
+
+    /**
+     * @brief Numero de vecinos guardados por item
+     */
+    public int getNumVecinos() { return vecinos; }
+
+    /**
+     * @brief Indica si cada item guarda como vecinos a todos los demas items del conjunto
+     */
+    public boolean completo() { return vecinos == n - 1; }
+
+    /**
+     * @brief Indica si el item pertenece al conjunto indexado
+     */
+    public boolean contiene(Item i) { return columnas.contiene(i); }
+
+    /**
+     * @brief Ordinal del j-esimo vecino mas cercano del item con ordinal o
+     */
+    public int vecino(int o, int j) { return ids[o * vecinos + j]; }
+
+    /**
+     * @brief Distancia al j-esimo vecino mas cercano del item con ordinal o
+     */
+    public double distancia(int o, int j) { return distancias[o * vecinos + j]; }
+
+    /**
+     * @brief Devuelve el item con el ordinal dado
+     */
+    public Item getItem(int o) { return columnas.getItem(o); }
+
+    /**
+     * @brief Devuelve la ruta del fichero del indice correspondiente a un fichero de items
+     * @param pathToItems Ruta del fichero de items (items.csv)
+     * @return Ruta del fichero del indice, junto al de items
+     */
+    public static String rutaIndice(String pathToItems) {
+        return pathToItems + ".vecinos";
+    }
+
+    /**
+     * @brief Huella del conjunto de items y de los rangos con que se normalizan sus atributos, para detectar un indice
+     * guardado que ya no corresponde al conjunto
+     */
+    private static long huella(Cjt_items dataset) {
+        ColumnasItems columnas = dataset.getColumnas();
+        long h = columnas.size();
+        for (int o = 0; o < columnas.size(); ++o) h = h * 31 + columnas.getItem(o).getId().hashCode();
+        h = h * 31 + String.valueOf(dataset.getMinValIntegers()).hashCode();
+        h = h * 31 + String.valueOf(dataset.getMaxValIntegers()).hashCode();
+        h = h * 31 + String.valueOf(dataset.getMinValDoubles()).hashCode();
+        h = h * 31 + String.valueOf(dataset.getMaxValDoubles()).hashCode();
+        h = h * 31 + String.valueOf(dataset.getMinDates()).hashCode();
+        h = h * 31 + String.valueOf(dataset.getMaxDates()).hashCode();
+        return h;
+    }
+
+    /**
+     * @brief Guarda el indice en el fichero binario asociado al fichero de items
+     * @param pathToItems Ruta del fichero de items del que se ha construido el indice
+     * @param dataset Conjunto de items indexado
+     * @throws IOException si no se puede escribir el fichero
+     */
+    public void guardar(String pathToItems, Cjt_items dataset) throws IOException {
+        File fuente = new File(pathToItems);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(rutaIndice(pathToItems))))) {
+            out.writeInt(MAGIA);
+            out.writeInt(VERSION);
+            out.writeLong(fuente.length());
+            out.writeLong(fuente.lastModified());
+            out.writeLong(huella(dataset));
+            out.writeInt(n);
+            out.writeInt(vecinos);
+            for (int id : ids) out.writeInt(id);
+            for (double d : distancias) out.writeDouble(d);
+        }
+    }
+
+    /**
+     * @brief Lee el indice guardado para un fichero de items
+     * @param pathToItems Ruta del fichero de items
+     * @param dataset Conjunto de items leido de ese fichero
+     * @return El indice, o null si no existe o no corresponde al fichero de items o al conjunto actual
+     * @throws IOException si el fichero del indice no se puede leer
+     */
+    public static IndiceVecinosItems cargar(String pathToItems, Cjt_items dataset) throws IOException {
+        File fichero = new File(rutaIndice(pathToItems));
+        if (!fichero.isFile()) return null;
+        File fuente = new File(pathToItems);
+        ColumnasItems columnas = dataset.getColumnas();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fichero)))) {
+            if (in.readInt() != MAGIA || in.readInt() != VERSION) return null;
+            if (in.readLong() != fuente.length() || in.readLong() != fuente.lastModified()) return null;
+            if (in.readLong() != huella(dataset)) return null;
+            if (in.readInt() != columnas.size()) return null;
+            int vecinos = in.readInt();
+            int[] ids = new int[columnas.size() * vecinos];
+            double[] distancias = new double[columnas.size() * vecinos];
+            for (int p = 0; p < ids.length; ++p) ids[p] = in.readInt();
+            for (int p = 0; p < distancias.length; ++p) distancias[p] = in.readDouble();
+            return new IndiceVecinosItems(columnas, vecinos, ids, distancias);
+        }
+    }
+
+    /**
+     * @brief Lee el indice guardado para un fichero de items o, si no existe, esta desactualizado o guarda menos vecinos
+     * de los pedidos, lo construye y lo guarda
+     * @param dataset Conjunto de items leido del fichero
+     * @param pathToItems Ruta del fichero de items
+     * @param vecinos Numero minimo de vecinos por item
+     * @return El indice del conjunto de items
+     */
+    public static IndiceVecinosItems cargarOConstruir(Cjt_items dataset, String pathToItems, int vecinos) {
+        try {
+            IndiceVecinosItems indice = cargar(pathToItems, dataset);
+            if (indice != null && (indice.vecinos >= vecinos || indice.completo())) return indice;
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+        IndiceVecinosItems indice = new IndiceVecinosItems(dataset, vecinos);
+        try {
+            indice.guardar(pathToItems, dataset);
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+        return indice;
+    }
+}
@@ -0,0 +1,634 @@
+/**
+ @file InstantaneaDataset.java
+ @brief Codigo de la clase InstantaneaDataset
+
+ */
+package dominio.clases;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * @class InstantaneaDataset
+ * @brief Instantanea binaria de un dataset ya procesado: el Cjt_items (atributos de cada item ya normalizados y con la
+ *    codificacion one-hot de sus categorias, rangos de los atributos e indices de las cabeceras), el diccionario de
+ *    usuarios y, para cada fichero de valoraciones, su matriz dispersa (CSR y CSC) y las estadisticas de cada item. Se
+ *    escribe junto a items.csv despues de la primera lectura y en los siguientes arranques se proyecta en memoria y se
+ *    copia a los arrays primitivos por bloques, sin volver a analizar ningun csv. La cabecera guarda la version del
+ *    formato y el tamaño y la fecha de modificacion de cada fichero fuente: si alguno ha cambiado, la instantanea se
+ *    descarta y se vuelve a generar. Si se carga junto a un CatalogoMapeado al dia, los atributos de los items no se
+ *    copian al heap: los items solo llevan su identificador y las distancias se leen del catalogo.
+ * @author Jordi Elgueta Serra
+ */
+public final class InstantaneaDataset {
+
+    /**
+     * @brief Marca y version del formato del fichero de la instantanea
+     */
+    private static final int MAGIA = 0x494e5354;
+    private static final int VERSION = 1;
+
+    /**
+     * @brief Valor con que se guarda una fecha nula
+     */
+    private static final long FECHA_NULA = Long.MIN_VALUE;
+
+    /**
+     * @brief Conjunto de items del dataset
+     */
+    private final Cjt_items dataset;
+
+    /**
+     * @brief Diccionario de ordinales de usuario compartido por todas las valoraciones
+     */
+    private final DiccionarioUsuarios usuarios;
+
+    /**
+     * @brief Valoraciones de cada fichero, en el orden en que se han pedido
+     */
+    private final Datos[] datos;
+
+    /**
+     * @brief Indica si el dataset se ha leido de una instantanea guardada
+     */
+    private final boolean desdeInstantanea;
+
+    /**
+     * @brief Constructora de la instantanea de un dataset leido de los ficheros csv
+     * @param dataset Conjunto de items
+     * @param usuarios Diccionario de usuarios compartido por todas las valoraciones
+     * @param datos Valoraciones de cada fichero, todas del conjunto de items dado y con el diccionario dado
+     */
+    public InstantaneaDataset(Cjt_items dataset, DiccionarioUsuarios usuarios, Datos... datos) {
+        this(dataset, usuarios, datos, false);
+    }
+
+    private InstantaneaDataset(Cjt_items dataset, DiccionarioUsuarios usuarios, Datos[] datos, boolean desdeInstantanea) {
+        this.dataset = dataset;
+        this.usuarios = usuarios;
+        this.datos = datos;
+        this.desdeInstantanea = desdeInstantanea;
+    }
+
+    /**
+     * @brief Getter del conjunto de items
+     */
+    public Cjt_items getDataset() { return dataset; }
+
+    /**
+     * @brief Getter del diccionario de usuarios
+     */
+    public DiccionarioUsuarios getUsuarios() { return usuarios; }
+
+    /**
+     * @brief Getter de las valoraciones del k-esimo fichero
+     */
+    public Datos getDatos(int k) { return datos[k]; }
+
+    /**
+     * @brief Indica si el dataset se ha leido de una instantanea guardada en lugar de los ficheros csv
+     */
+    public boolean desdeInstantanea() { return desdeInstantanea; }
+
+    /**
+     * @brief Devuelve la ruta del fichero de la instantanea correspondiente a un fichero de items
+     * @param pathToItems Ruta del fichero de items (items.csv)
+     * @return Ruta del fichero de la instantanea, junto al de items
+     */
+    public static String rutaInstantanea(String pathToItems) {
+        return pathToItems + ".instantanea";
+    }
+
+    /**
+     * @brief Lee la instantanea guardada para un dataset o, si no existe o esta desactualizada, lee los ficheros csv y la
+     * guarda
+     * @param pathToItems Ruta del fichero de items
+     * @param pathToAttrData_types Ruta del fichero con el tipo de dato de cada atributo
+     * @param pathsToRatings Rutas de los ficheros de valoraciones
+     * @return La instantanea del dataset
+     */
+    public static InstantaneaDataset cargarOLeer(String pathToItems, String pathToAttrData_types, String... pathsToRatings) {
+        return cargarOLeer(null, pathToItems, pathToAttrData_types, pathsToRatings);
+    }
+
+    /**
+     * @brief Lee la instantanea guardada para un dataset o, si no existe o esta desactualizada, lee los ficheros csv y la
+     * guarda. El conjunto de items queda asociado al catalogo dado; si se lee de la instantanea, sus items solo llevan el
+     * identificador y los atributos se leen del catalogo
+     * @param catalogo Catalogo proyectado al dia con los mismos ficheros de items y de tipos, o null si no hay
+     * @param pathToItems Ruta del fichero de items
+     * @param pathToAttrData_types Ruta del fichero con el tipo de dato de cada atributo
+     * @param pathsToRatings Rutas de los ficheros de valoraciones
+     * @return La instantanea del dataset
+     */
+    public static InstantaneaDataset cargarOLeer(CatalogoMapeado catalogo, String pathToItems, String pathToAttrData_types, String... pathsToRatings) {
+        String[] fuentes = new String[pathsToRatings.length + 2];
+        fuentes[0] = pathToItems;
+        fuentes[1] = pathToAttrData_types;
+        System.arraycopy(pathsToRatings, 0, fuentes, 2, pathsToRatings.length);
+        String ruta = rutaInstantanea(pathToItems);
+        try {
+            InstantaneaDataset instantanea = cargar(ruta, catalogo, fuentes);
+            if (instantanea != null) return instantanea;
+        } catch (IOException | RuntimeException e) {
+            System.out.println(e);
+        }
+        Cjt_items dataset = new Cjt_items(pathToItems, pathToAttrData_types);
+        DiccionarioUsuarios usuarios = new DiccionarioUsuarios();
+        Datos[] datos = new Datos[pathsToRatings.length];
+        for (int k = 0; k < datos.length; ++k) datos[k] = new Datos(pathsToRatings[k], dataset, usuarios);
+        InstantaneaDataset instantanea = new InstantaneaDataset(dataset, usuarios, datos);
+        try {
+            instantanea.guardar(ruta, fuentes);
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+        if (catalogo != null && catalogo.size() == dataset.getDiccionario().size()) dataset.setCatalogo(catalogo);
+        return instantanea;
+    }
+
+    /**
+     * @brief Guarda la instantanea. Se escribe en un fichero temporal que despues sustituye al anterior, de modo que otro
+     * proceso nunca proyecta una instantanea a medio escribir. Los atributos de los items deben estar en memoria (el
+     * conjunto no puede tener un catalogo asociado)
+     * @param ruta Ruta del fichero de la instantanea
+     * @param fuentes Rutas de los ficheros de los que se ha leido el dataset: items, tipos de dato y valoraciones
+     * @throws IOException si no se puede escribir el fichero
+     */
+    public void guardar(String ruta, String... fuentes) throws IOException {
+        if (dataset.getCatalogo() != null) throw new IllegalArgumentException("Los atributos del conjunto se leen de un catalogo");
+        Path destino = Paths.get(ruta);
+        Path temporal = Paths.get(ruta + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporal.toFile()), 1 << 16))) {
+            out.writeInt(MAGIA);
+            out.writeInt(VERSION);
+            out.writeInt(fuentes.length);
+            for (String fuente : fuentes) {
+                File f = new File(fuente);
+                out.writeLong(f.length());
+                out.writeLong(f.lastModified());
+            }
+            escribirItems(out);
+            out.writeInt(usuarios.size());
+            for (int o = 0; o < usuarios.size(); ++o) out.writeInt(usuarios.id(o));
+            out.writeInt(datos.length);
+            for (Datos d : datos) escribirDatos(out, d);
+        }
+        try {
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @brief Lee una instantanea guardada proyectando el fichero en memoria
+     * @param ruta Ruta del fichero de la instantanea
+     * @param fuentes Rutas de los ficheros de los que se leyo el dataset, en el mismo orden que al guardarla
+     * @return La instantanea, o null si no existe, es de otra version o alguno de los ficheros fuente ha cambiado
+     * @throws IOException si el fichero no se puede leer
+     */
+    public static InstantaneaDataset cargar(String ruta, String... fuentes) throws IOException {
+        return cargar(ruta, null, fuentes);
+    }
+
+    /**
+     * @brief Lee una instantanea guardada proyectando el fichero en memoria. Si se da un catalogo, los atributos de los
+     * items se saltan y el conjunto de items se asocia al catalogo
+     * @param ruta Ruta del fichero de la instantanea
+     * @param catalogo Catalogo proyectado de los mismos items, o null para leer los atributos de la instantanea
+     * @param fuentes Rutas de los ficheros de los que se leyo el dataset, en el mismo orden que al guardarla
+     * @return La instantanea, o null si no existe, es de otra version, alguno de los ficheros fuente ha cambiado o el
+     * catalogo no corresponde a sus items
+     * @throws IOException si el fichero no se puede leer
+     */
+    public static InstantaneaDataset cargar(String ruta, CatalogoMapeado catalogo, String... fuentes) throws IOException {
+        File fichero = new File(ruta);
+        if (!fichero.isFile() || fichero.length() > Integer.MAX_VALUE) return null;
+        MappedByteBuffer b;
+        try (FileChannel canal = FileChannel.open(fichero.toPath(), StandardOpenOption.READ)) {
+            b = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+        if (b.remaining() < 12 || b.getInt() != MAGIA || b.getInt() != VERSION) return null;
+        if (b.getInt() != fuentes.length) return null;
+        for (String fuente : fuentes) {
+            File f = new File(fuente);
+            if (b.getLong() != f.length() || b.getLong() != f.lastModified()) return null;
+        }
+        Cjt_items dataset = leerItems(b, catalogo);
+        if (dataset == null) return null;
+        DiccionarioUsuarios usuarios = new DiccionarioUsuarios();
+        int nUsuarios = b.getInt();
+        for (int o = 0; o < nUsuarios; ++o) usuarios.intern(b.getInt());
+        if (usuarios.size() != nUsuarios) return null;
+        Datos[] datos = new Datos[b.getInt()];
+        for (int k = 0; k < datos.length; ++k) datos[k] = leerDatos(b, dataset, usuarios);
+        return new InstantaneaDataset(dataset, usuarios, datos, true);
+    }
+
+    /**
+     * @brief Escribe el conjunto de items: cabeceras, lengua, rangos de los atributos, indices de las cabeceras y, en orden
+     * de ordinal, los atributos de cada item
+     */
+    private void escribirItems(DataOutputStream out) throws IOException {
+        escribirStrings(out, dataset.getHeaders());
+        escribirString(out, dataset.getLanguage());
+        escribirEnteros(out, dataset.getMaxValIntegers());
+        escribirEnteros(out, dataset.getMinValIntegers());
+        escribirReales(out, dataset.getMaxValDoubles());
+        escribirReales(out, dataset.getMinValDoubles());
+        escribirFechas(out, dataset.getMaxDates());
+        escribirFechas(out, dataset.getMinDates());
+        escribirIndices(out, dataset.getIntAttrIndexes());
+        escribirIndices(out, dataset.getDoubleAttrIndexes());
+        escribirIndices(out, dataset.getDateAttrIndexes());
+        escribirIndices(out, dataset.getBooleanAttrIndexes());
+        escribirIndices(out, dataset.getCategoricalAttrIndexes());
+        escribirIndices(out, dataset.getStringAttrIndexes());
+        escribirIndices(out, dataset.getOtherAttrIndexes());
+        out.writeInt(dataset.getHeaderIndexes().size());
+        for (Map.Entry<String, Integer> e : dataset.getHeaderIndexes().entrySet()) {
+            escribirString(out, e.getKey());
+            out.writeInt(e.getValue());
+        }
+
+        ColumnasItems columnas = dataset.getColumnas();
+        out.writeInt(columnas.size());
+        for (int o = 0; o < columnas.size(); ++o) {
+            Item item = columnas.getItem(o);
+            escribirString(out, item.getId());
+            ArrayList<Long> enteros = item.getIntAttributes();
+            out.writeInt(enteros.size());
+            for (long v : enteros) out.writeLong(v);
+            ArrayList<Double> reales = item.getDoubleAttributes();
+            out.writeInt(reales.size());
+            for (double v : reales) out.writeDouble(v);
+            escribirStrings(out, item.getStringAttributes());
+            ArrayList<BitSet> bits = item.getCategoryPscBits();
+            out.writeInt(bits.size());
+            for (BitSet bs : bits) {
+                long[] palabras = bs.toLongArray();
+                out.writeInt(palabras.length);
+                for (long p : palabras) out.writeLong(p);
+            }
+            HashMap<Integer, ArrayList<String>> categorias = item.getCategoricalAttributes();
+            out.writeInt(categorias == null ? -1 : categorias.size());
+            if (categorias != null)
+                for (Map.Entry<Integer, ArrayList<String>> e : categorias.entrySet()) {
+                    out.writeInt(e.getKey());
+                    escribirStrings(out, e.getValue());
+                }
+            ArrayList<LocalDate> fechas = item.getDateAttributes();
+            out.writeInt(fechas.size());
+            for (LocalDate f : fechas) out.writeLong(f == null ? FECHA_NULA : f.toEpochDay());
+            escribirStrings(out, item.getBooleanAttributes());
+            LinkedHashMap<Integer, HashMap<String, Integer>> frecuencias = item.getWordFrequencies();
+            out.writeInt(frecuencias == null ? -1 : frecuencias.size());
+            if (frecuencias != null)
+                for (Map.Entry<Integer, HashMap<String, Integer>> e : frecuencias.entrySet()) {
+                    out.writeInt(e.getKey());
+                    out.writeInt(e.getValue() == null ? -1 : e.getValue().size());
+                    if (e.getValue() != null)
+                        for (Map.Entry<String, Integer> p : e.getValue().entrySet()) {
+                            escribirString(out, p.getKey());
+                            out.writeInt(p.getValue());
+                        }
+                }
+        }
+    }
+
+    /**
+     * @brief Lee el conjunto de items escrito por escribirItems. Con un catalogo, de cada item solo se lee el
+     * identificador y el conjunto se asocia al catalogo
+     * @return El conjunto de items, o null si los ordinales de los items no coinciden con los guardados o con los del
+     * catalogo
+     */
+    private static Cjt_items leerItems(ByteBuffer b, CatalogoMapeado catalogo) {
+        Cjt_items dataset = new Cjt_items();
+        dataset.setHeaders(leerStrings(b));
+        dataset.setLanguage(leerString(b));
+        dataset.setMaxValIntegers(leerEnteros(b));
+        dataset.setMinValIntegers(leerEnteros(b));
+        dataset.setMaxValDoubles(leerReales(b));
+        dataset.setMinValDoubles(leerReales(b));
+        dataset.setMaxDates(leerFechas(b));
+        dataset.setMinDates(leerFechas(b));
+        dataset.setIntAttrIndexes(leerIndices(b));
+        dataset.setDoubleAttrIndexes(leerIndices(b));
+        dataset.setDateAttrIndexes(leerIndices(b));
+        dataset.setBooleanAttrIndexes(leerIndices(b));
+        dataset.setCategoricalAttrIndexes(leerIndices(b));
+        dataset.setStringAttrIndexes(leerIndices(b));
+        dataset.setOtherAttrIndexes(leerIndices(b));
+        int nCabeceras = b.getInt();
+        HashMap<String, Integer> HeaderIndexes = new HashMap<>(2 * nCabeceras);
+        for (int k = 0; k < nCabeceras; ++k) {
+            String cabecera = leerString(b);
+            HeaderIndexes.put(cabecera, b.getInt());
+        }
+        dataset.setHeaderIndexes(HeaderIndexes);
+
+        int n = b.getInt();
+        String[] ids = new String[n];
+        HashMap<String, Item> Items = new HashMap<>(2 * n);
+        for (int o = 0; o < n; ++o) {
+            ids[o] = leerString(b);
+            if (catalogo != null) {
+                saltarAtributos(b);
+                Items.put(ids[o], new Item(ids[o]));
+                continue;
+            }
+            Item item = new Item();
+            item.setId(ids[o]);
+            ArrayList<Long> enteros = new ArrayList<>(Arrays.asList(new Long[b.getInt()]));
+            for (int k = 0; k < enteros.size(); ++k) enteros.set(k, b.getLong());
+            ArrayList<Double> reales = new ArrayList<>(Arrays.asList(new Double[b.getInt()]));
+            for (int k = 0; k < reales.size(); ++k) reales.set(k, b.getDouble());
+            ArrayList<String> strings = leerStrings(b);
+            int nBits = b.getInt();
+            ArrayList<BitSet> bits = new ArrayList<>(nBits);
+            for (int k = 0; k < nBits; ++k) bits.add(BitSet.valueOf(leerLongs(b, b.getInt())));
+            int nCategorias = b.getInt();
+            LinkedHashMap<Integer, ArrayList<String>> categorias = null;
+            if (nCategorias >= 0) {
+                categorias = new LinkedHashMap<>();
+                for (int k = 0; k < nCategorias; ++k) {
+                    int columna = b.getInt();
+                    categorias.put(columna, leerStrings(b));
+                }
+            }
+            int nFechas = b.getInt();
+            ArrayList<LocalDate> fechas = new ArrayList<>(nFechas);
+            for (int k = 0; k < nFechas; ++k) {
+                long dia = b.getLong();
+                fechas.add(dia == FECHA_NULA ? null : LocalDate.ofEpochDay(dia));
+            }
+            ArrayList<String> booleanos = leerStrings(b);
+            item.setAttributes(enteros, reales, strings, bits, fechas, booleanos, categorias);
+            int nFrecuencias = b.getInt();
+            LinkedHashMap<Integer, HashMap<String, Integer>> frecuencias = null;
+            if (nFrecuencias >= 0) {
+                frecuencias = new LinkedHashMap<>();
+                for (int k = 0; k < nFrecuencias; ++k) {
+                    int columna = b.getInt();
+                    int nPalabras = b.getInt();
+                    HashMap<String, Integer> FreqMap = null;
+                    if (nPalabras >= 0) {
+                        FreqMap = new HashMap<>(2 * nPalabras);
+                        for (int p = 0; p < nPalabras; ++p) {
+                            String palabra = leerString(b);
+                            FreqMap.put(palabra, b.getInt());
+                        }
+                    }
+                    frecuencias.put(columna, FreqMap);
+                }
+            }
+            item.setWordFrequencies(frecuencias);
+            Items.put(ids[o], item);
+        }
+        dataset.setItems(Items);
+        if (dataset.getDiccionario().size() != n) return null;
+        for (int o = 0; o < n; ++o)
+            if (!dataset.getDiccionario().id(o).equals(ids[o])) return null;
+        if (catalogo != null) {
+            if (catalogo.size() != n) return null;
+            for (Item item : Items.values())
+                if (catalogo.ordinal(item) != item.getOrdinal()) return null;
+            dataset.setCatalogo(catalogo);
+        }
+        return dataset;
+    }
+
+    /**
+     * @brief Avanza el buffer sobre los atributos de un item escritos por escribirItems, sin leerlos
+     */
+    private static void saltarAtributos(ByteBuffer b) {
+        saltarLongs(b);
+        saltarLongs(b);
+        saltarStrings(b);
+        int nBits = b.getInt();
+        for (int k = 0; k < nBits; ++k) saltarLongs(b);
+        int nCategorias = b.getInt();
+        for (int k = 0; k < nCategorias; ++k) {
+            b.getInt();
+            saltarStrings(b);
+        }
+        saltarLongs(b);
+        saltarStrings(b);
+        int nFrecuencias = b.getInt();
+        for (int k = 0; k < nFrecuencias; ++k) {
+            b.getInt();
+            int nPalabras = b.getInt();
+            for (int p = 0; p < nPalabras; ++p) {
+                saltarString(b);
+                b.getInt();
+            }
+        }
+    }
+
+    /**
+     * @brief Escribe la valoracion maxima, los arrays de la matriz dispersa y las estadisticas de cada item de unas
+     * valoraciones
+     */
+    private static void escribirDatos(DataOutputStream out, Datos d) throws IOException {
+        MatrizValoraciones matriz = d.construirMatriz();
+        out.writeDouble(d.getMaxRating());
+        int nFilas = matriz.getNumFilas(), nColumnas = matriz.getNumColumnas(), m = matriz.getNumValoraciones();
+        out.writeInt(nFilas);
+        out.writeInt(nColumnas);
+        out.writeInt(m);
+        for (int u = 0; u <= nFilas; ++u) out.writeInt(matriz.inicioFila(u));
+        for (int p = 0; p < m; ++p) out.writeInt(matriz.item(p));
+        for (int p = 0; p < m; ++p) out.writeFloat(matriz.valor(p));
+        for (int i = 0; i <= nColumnas; ++i) out.writeInt(matriz.inicioColumna(i));
+        for (int q = 0; q < m; ++q) out.writeInt(matriz.usuario(q));
+        for (int q = 0; q < m; ++q) out.writeFloat(matriz.valorColumna(q));
+
+        EstadisticasItems estadisticas = d.getEstadisticas();
+        int n = estadisticas.size();
+        out.writeInt(n);
+        for (int i = 0; i < n; ++i) out.writeInt(estadisticas.cuenta(i));
+        for (int i = 0; i < n; ++i) out.writeDouble(estadisticas.suma(i));
+        for (int i = 0; i < n; ++i) out.writeDouble(estadisticas.cuenta(i) > 0 ? estadisticas.media(i) : 0.0);
+        for (int i = 0; i < n; ++i) out.writeDouble(estadisticas.m2(i));
+    }
+
+    /**
+     * @brief Lee unas valoraciones escritas por escribirDatos
+     */
+    private static Datos leerDatos(ByteBuffer b, Cjt_items dataset, DiccionarioUsuarios usuarios) {
+        double maxRating = b.getDouble();
+        int nFilas = b.getInt(), nColumnas = b.getInt(), m = b.getInt();
+        ColumnasItems columnas = dataset.getColumnas();
+        if (nColumnas != columnas.size() || nFilas > usuarios.size()) throw new IllegalStateException("Instantanea inconsistente");
+        Item[] items = new Item[nColumnas];
+        for (int o = 0; o < nColumnas; ++o) items[o] = columnas.getItem(o);
+        int[] rowPtr = leerInts(b, nFilas + 1);
+        int[] itemIdx = leerInts(b, m);
+        float[] values = leerFloats(b, m);
+        int[] colPtr = leerInts(b, nColumnas + 1);
+        int[] userIdx = leerInts(b, m);
+        float[] colValues = leerFloats(b, m);
+        MatrizValoraciones matriz = new MatrizValoraciones(items, rowPtr, itemIdx, values, colPtr, userIdx, colValues);
+
+        int n = b.getInt();
+        EstadisticasItems estadisticas = new EstadisticasItems(leerInts(b, n), leerDoubles(b, n), leerDoubles(b, n), leerDoubles(b, n));
+        return new Datos(dataset, usuarios, matriz, estadisticas, maxRating);
+    }
+
+    private static void escribirString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String leerString(ByteBuffer b) {
+        int n = b.getInt();
+        if (n < 0) return null;
+        byte[] bytes = new byte[n];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void saltarString(ByteBuffer b) {
+        int n = b.getInt();
+        if (n > 0) b.position(b.position() + n);
+    }
+
+    private static void saltarLongs(ByteBuffer b) {
+        int n = b.getInt();
+        b.position(b.position() + 8 * n);
+    }
+
+    private static void saltarStrings(ByteBuffer b) {
+        int n = b.getInt();
+        for (int k = 0; k < n; ++k) saltarString(b);
+    }
+
+    private static void escribirStrings(DataOutputStream out, List<String> l) throws IOException {
+        out.writeInt(l == null ? -1 : l.size());
+        if (l != null) for (String s : l) escribirString(out, s);
+    }
+
+    private static ArrayList<String> leerStrings(ByteBuffer b) {
+        int n = b.getInt();
+        if (n < 0) return null;
+        ArrayList<String> l = new ArrayList<>(n);
+        for (int k = 0; k < n; ++k) l.add(leerString(b));
+        return l;
+    }
+
+    private static void escribirEnteros(DataOutputStream out, Map<Integer, Long> mapa) throws IOException {
+        out.writeInt(mapa.size());
+        for (Map.Entry<Integer, Long> e : mapa.entrySet()) {
+            out.writeInt(e.getKey());
+            out.writeLong(e.getValue());
+        }
+    }
+
+    private static LinkedHashMap<Integer, Long> leerEnteros(ByteBuffer b) {
+        int n = b.getInt();
+        LinkedHashMap<Integer, Long> mapa = new LinkedHashMap<>();
+        for (int k = 0; k < n; ++k) {
+            int clave = b.getInt();
+            mapa.put(clave, b.getLong());
+        }
+        return mapa;
+    }
+
+    private static void escribirReales(DataOutputStream out, Map<Integer, Double> mapa) throws IOException {
+        out.writeInt(mapa.size());
+        for (Map.Entry<Integer, Double> e : mapa.entrySet()) {
+            out.writeInt(e.getKey());
+            out.writeDouble(e.getValue());
+        }
+    }
+
+    private static LinkedHashMap<Integer, Double> leerReales(ByteBuffer b) {
+        int n = b.getInt();
+        LinkedHashMap<Integer, Double> mapa = new LinkedHashMap<>();
+        for (int k = 0; k < n; ++k) {
+            int clave = b.getInt();
+            mapa.put(clave, b.getDouble());
+        }
+        return mapa;
+    }
+
+    private static void escribirFechas(DataOutputStream out, Map<Integer, LocalDate> mapa) throws IOException {
+        out.writeInt(mapa.size());
+        for (Map.Entry<Integer, LocalDate> e : mapa.entrySet()) {
+            out.writeInt(e.getKey());
+            out.writeLong(e.getValue() == null ? FECHA_NULA : e.getValue().toEpochDay());
+        }
+    }
+
+    private static LinkedHashMap<Integer, LocalDate> leerFechas(ByteBuffer b) {
+        int n = b.getInt();
+        LinkedHashMap<Integer, LocalDate> mapa = new LinkedHashMap<>();
+        for (int k = 0; k < n; ++k) {
+            int clave = b.getInt();
+            long dia = b.getLong();
+            mapa.put(clave, dia == FECHA_NULA ? null : LocalDate.ofEpochDay(dia));
+        }
+        return mapa;
+    }
+
+    private static void escribirIndices(DataOutputStream out, Map<Integer, Integer> mapa) throws IOException {
+        out.writeInt(mapa.size());
+        for (Map.Entry<Integer, Integer> e : mapa.entrySet()) {
+            out.writeInt(e.getKey());
+            out.writeInt(e.getValue());
+        }
+    }
+
+    private static HashMap<Integer, Integer> leerIndices(ByteBuffer b) {
+        int n = b.getInt();
+        HashMap<Integer, Integer> mapa = new HashMap<>(2 * n);
+        for (int k = 0; k < n; ++k) {
+            int clave = b.getInt();
+            mapa.put(clave, b.getInt());
+        }
+        return mapa;
+    }
+
+    /**
+     * @brief Copia por bloques n enteros desde la posicion actual del buffer y la avanza
+     */
+    private static int[] leerInts(ByteBuffer b, int n) {
+        int[] a = new int[n];
+        b.asIntBuffer().get(a);
+        b.position(b.position() + 4 * n);
+        return a;
+    }
+
+    private static long[] leerLongs(ByteBuffer b, int n) {
+        long[] a = new long[n];
+        b.asLongBuffer().get(a);
+        b.position(b.position() + 8 * n);
+        return a;
+    }
+
+    private static float[] leerFloats(ByteBuffer b, int n) {
+        float[] a = new float[n];
+        b.asFloatBuffer().get(a);
+        b.position(b.position() + 4 * n);
+        return a;
+    }
+
+    private static double[] leerDoubles(ByteBuffer b, int n) {
+        double[] a = new double[n];
+        b.asDoubleBuffer().get(a);
+        b.position(b.position() + 8 * n);
+        return a;
+    }
+}
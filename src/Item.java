@@ -44,6 +44,9 @@ public class Item {
     /** */
     private LinkedHashMap<Integer, HashMap<String,Integer>> wordFrequencies;
 
+    /** posicion del item en el almacen columnar del conjunto al que pertenece, -1 si no esta indexado */
+    private int ordinal = -1;
+
     /**
      * Constructora vacia para la clase Item. Inicializa una nueva instancia.
      */
@@ -93,6 +96,20 @@ public class Item {
      */
     public String getId() {return this.id_item; }
 
+    /**
+     * Obtiene el ordinal del item dentro del almacen columnar de su conjunto
+     *
+     * @return el ordinal del item, o -1 si no esta indexado
+     */
+    public int getOrdinal() { return this.ordinal; }
+
+    /**
+     * Asigna al item su ordinal dentro del almacen columnar de su conjunto
+     *
+     * @param ordinal indica la posicion que ocupa el item en el almacen
+     */
+    public void setOrdinal(int ordinal) { this.ordinal = ordinal; }
+
     /**
      * Asigna a una instancia de item los n atributos no nulos dados en los parametros
      * @param attrI Lista de parametros de tipo Integer a asignar al item
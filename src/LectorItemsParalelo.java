@@ -0,0 +1,163 @@
+/**
+ @file LectorItemsParalelo.java
+ @brief Codigo de la clase LectorItemsParalelo
+
+ */
+package dominio.clases;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * @class LectorItemsParalelo
+ * @brief Lector de un fichero csv de items que reparte el trabajo entre varios hilos. El fichero se lee entero en memoria y
+ *    se corta en trozos de tamaño parecido, siempre al final de un registro: un salto de linea entre comillas forma parte
+ *    del campo y no separa registros. Cada trozo se separa en campos en paralelo y las filas se devuelven en el orden del
+ *    fichero. Los campos se separan por comas fuera de comillas; las comillas que delimitan un campo se quitan y las
+ *    comillas dobles dentro de el se leen como una sola. Las filas con menos campos que la cabecera se completan con null.
+ * @author Houda El Fezzak Bekkouri
+ */
+public final class LectorItemsParalelo {
+
+    /**
+     * @brief Tamaño minimo de un trozo, para no repartir ficheros pequeños en trozos que no compensan
+     */
+    private static final int TAMANO_MINIMO_TROZO = 1 << 16;
+
+    /**
+     * @brief Cabeceras de los atributos
+     */
+    private final ArrayList<String> cabeceras = new ArrayList<>();
+
+    /**
+     * @brief Campos de cada item, en el orden del fichero
+     */
+    private final ArrayList<ArrayList<String>> filas;
+
+    /**
+     * @brief Constructora que lee el fichero con tantos trozos como procesadores
+     * @param pathToDataset Ruta del fichero csv de items
+     * @throws IOException si no se puede leer el fichero
+     */
+    public LectorItemsParalelo(String pathToDataset) throws IOException {
+        this(pathToDataset, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @brief Constructora que lee el fichero
+     * @param pathToDataset Ruta del fichero csv de items
+     * @param nTrozos Numero maximo de trozos en que se reparte el fichero
+     * @throws IOException si no se puede leer el fichero
+     */
+    public LectorItemsParalelo(String pathToDataset, int nTrozos) throws IOException {
+        byte[] datos = Files.readAllBytes(Paths.get(pathToDataset));
+        int inicio = 0;
+        if (datos.length >= 3 && (datos[0] & 0xff) == 0xef && (datos[1] & 0xff) == 0xbb && (datos[2] & 0xff) == 0xbf) inicio = 3;
+        inicio = leerRegistro(datos, inicio, datos.length, cabeceras);
+
+        int[] cortes = cortes(datos, inicio, Math.max(1, Math.min(nTrozos, (datos.length - inicio) / TAMANO_MINIMO_TROZO)));
+        List<ArrayList<ArrayList<String>>> trozos = new ArrayList<>(Collections.nCopies(cortes.length - 1, null));
+        IntStream.range(0, cortes.length - 1).parallel().forEach(t -> trozos.set(t, leerTrozo(datos, cortes[t], cortes[t + 1])));
+
+        int n = 0;
+        for (ArrayList<ArrayList<String>> trozo : trozos) n += trozo.size();
+        filas = new ArrayList<>(n);
+        for (ArrayList<ArrayList<String>> trozo : trozos) filas.addAll(trozo);
+    }
+
+    /**
+     * @brief Getter de las cabeceras de los atributos
+     */
+    public ArrayList<String> getCabeceras() { return cabeceras; }
+
+    /**
+     * @brief Getter de los campos de cada item, en el orden del fichero
+     */
+    public ArrayList<ArrayList<String>> getFilas() { return filas; }
+
+    /**
+     * @brief Metodo que calcula donde empieza cada trozo: recorre el fichero llevando la cuenta de las comillas y corta en
+     * el primer salto de linea fuera de comillas a partir del tamaño de trozo deseado
+     * @return Las posiciones de inicio de cada trozo, seguidas del final del fichero
+     */
+    private static int[] cortes(byte[] datos, int inicio, int nTrozos) {
+        int[] cortes = new int[nTrozos + 1];
+        int n = 0;
+        cortes[n++] = inicio;
+        int tamano = (datos.length - inicio) / nTrozos + 1;
+        int siguiente = inicio + tamano;
+        boolean comillas = false;
+        for (int p = inicio; p < datos.length && n < nTrozos; ++p) {
+            byte b = datos[p];
+            if (b == '"') comillas = !comillas;
+            else if (b == '\n' && !comillas && p >= siguiente && p + 1 < datos.length) {
+                cortes[n++] = p + 1;
+                siguiente = p + 1 + tamano;
+            }
+        }
+        cortes[n++] = datos.length;
+        return Arrays.copyOf(cortes, n);
+    }
+
+    /**
+     * @brief Metodo que separa en campos los registros de un trozo
+     * @param datos Contenido del fichero
+     * @param inicio Inicio del trozo, al principio de un registro
+     * @param fin Final del trozo, al principio de un registro o al final del fichero
+     * @return Los campos de cada registro no vacio del trozo
+     */
+    private ArrayList<ArrayList<String>> leerTrozo(byte[] datos, int inicio, int fin) {
+        ArrayList<ArrayList<String>> trozo = new ArrayList<>();
+        int p = inicio;
+        while (p < fin) {
+            ArrayList<String> fila = new ArrayList<>(cabeceras.size());
+            p = leerRegistro(datos, p, fin, fila);
+            if (fila.size() == 1 && fila.get(0).isEmpty()) continue;
+            while (fila.size() < cabeceras.size()) fila.add(null);
+            trozo.add(fila);
+        }
+        return trozo;
+    }
+
+    /**
+     * @brief Metodo que separa en campos el registro que empieza en la posicion p
+     * @param datos Contenido del fichero
+     * @param p Inicio del registro
+     * @param fin Posicion a partir de la cual no se lee
+     * @param campos Lista a la que se añaden los campos del registro
+     * @return La posicion donde empieza el registro siguiente
+     */
+    private static int leerRegistro(byte[] datos, int p, int fin, ArrayList<String> campos) {
+        while (true) {
+            int inicio = p;
+            boolean comillas = false, escapadas = false;
+            while (p < fin) {
+                byte b = datos[p];
+                if (b == '"') {
+                    if (comillas && p + 1 < fin && datos[p + 1] == '"') {
+                        escapadas = true;
+                        p += 2;
+                        continue;
+                    }
+                    comillas = !comillas;
+                } else if (!comillas && (b == ',' || b == '\n')) break;
+                ++p;
+            }
+            int a = inicio, z = p;
+            if (z > a && datos[z - 1] == '\r' && (p == fin || datos[p] == '\n')) --z;
+            if (z - a >= 2 && datos[a] == '"' && datos[z - 1] == '"') {
+                ++a;
+                --z;
+            }
+            String campo = new String(datos, a, z - a, StandardCharsets.UTF_8);
+            campos.add(escapadas ? campo.replace("\"\"", "\"") : campo);
+            if (p == fin) return fin;
+            if (datos[p] == '\n') return p + 1;
+            ++p;
+        }
+    }
+}
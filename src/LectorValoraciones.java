@@ -0,0 +1,314 @@
+/**
+ @file LectorValoraciones.java
+ @brief Codigo de la clase LectorValoraciones
+
+ */
+package dominio.clases;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * @class LectorValoraciones
+ * @brief Lector de un fichero csv de valoraciones (usuario, item, valoracion, en el orden que indique la cabecera) que lee
+ *    los bytes por bloques y convierte directamente los enteros y los reales, sin crear un String por linea ni por campo.
+ *    Las valoraciones se dejan en arrays primitivos paralelos (ordinal del usuario, ordinal del item, valor), listos para
+ *    construir la MatrizValoraciones, y se mide cuantas filas por segundo se han leido.
+ * @author Houda El Fezzak Bekkouri
+ */
+public final class LectorValoraciones {
+
+    /**
+     * @brief Tamaño de los bloques en que se lee el fichero
+     */
+    private static final int TAM_BLOQUE = 1 << 16;
+
+    /**
+     * @brief Papel de cada columna del fichero
+     */
+    private static final int ITEM = 0, USUARIO = 1, VALORACION = 2;
+
+    /**
+     * @brief Ordinal del usuario, ordinal del item y valor de cada valoracion leida
+     */
+    private int[] usuarios = new int[1024];
+    private int[] items = new int[1024];
+    private double[] valores = new double[1024];
+    private int n;
+
+    /**
+     * @brief Filas descartadas por tener algun campo vacio o mal formado, o un item que no esta en el conjunto
+     */
+    private int descartadas;
+
+    private double maxRating;
+    private long nanos;
+    private long bytes;
+
+    /**
+     * @brief Papel de cada columna, segun la cabecera
+     */
+    private int[] papeles;
+
+    /**
+     * @brief Linea en curso y posicion de inicio y fin de cada uno de sus campos
+     */
+    private byte[] linea = new byte[256];
+    private int largo;
+    private final int[] inicioCampo = new int[3], finCampo = new int[3];
+
+    /**
+     * @brief Conjunto de items y diccionario de usuarios con que se traducen los identificadores
+     */
+    private final Cjt_items dataset;
+    private final DiccionarioUsuarios diccionario;
+
+    /**
+     * @brief Cache de identificadores de item ya vistos (como bytes) y su ordinal (o -1 si no esta en el conjunto), con
+     * direccionamiento abierto, para no crear un String por fila
+     */
+    private byte[][] clavesItems = new byte[1024][];
+    private int[] ordinalesItems = new int[1024];
+    private int nItems;
+
+    /**
+     * @brief Constructora que lee todo el fichero
+     * @param pathToFile Ruta del fichero de valoraciones
+     * @param dataset Conjunto de items al que se refieren las valoraciones
+     * @param diccionario Diccionario en el que se registra cada usuario leido
+     * @throws IOException si el fichero no se puede leer
+     */
+    public LectorValoraciones(String pathToFile, Cjt_items dataset, DiccionarioUsuarios diccionario) throws IOException {
+        this.dataset = dataset;
+        this.diccionario = diccionario;
+        long inicio = System.nanoTime();
+        try (FileChannel canal = FileChannel.open(Paths.get(pathToFile), StandardOpenOption.READ)) {
+            ByteBuffer bloque = ByteBuffer.allocate(TAM_BLOQUE);
+            byte[] b = bloque.array();
+            int leidos;
+            while ((leidos = canal.read(bloque)) != -1) {
+                bytes += leidos;
+                for (int p = 0; p < leidos; ++p) {
+                    byte c = b[p];
+                    if (c == '\n') terminarLinea();
+                    else if (c != '\r') {
+                        if (largo == linea.length) linea = Arrays.copyOf(linea, 2 * largo);
+                        linea[largo++] = c;
+                    }
+                }
+                bloque.clear();
+            }
+            if (largo > 0) terminarLinea();
+        }
+        nanos = System.nanoTime() - inicio;
+    }
+
+    private void terminarLinea() {
+        if (papeles == null) leerCabecera();
+        else leerFila();
+        largo = 0;
+    }
+
+    /**
+     * @brief Deduce el papel de cada columna de la cabecera: "id" e "item" es el item, "id" y "user" el usuario y el resto
+     * la valoracion
+     */
+    private void leerCabecera() {
+        String[] colNames = new String(linea, 0, largo, StandardCharsets.UTF_8).split(",", -1);
+        papeles = new int[Math.min(colNames.length, 3)];
+        for (int c = 0; c < papeles.length; ++c) {
+            String col = colNames[c].toLowerCase();
+            if (col.contains("id") && col.contains("item")) papeles[c] = ITEM;
+            else if (col.contains("id") && col.contains("user")) papeles[c] = USUARIO;
+            else papeles[c] = VALORACION;
+        }
+    }
+
+    private void leerFila() {
+        int campo = 0;
+        inicioCampo[0] = 0;
+        for (int p = 0; p < largo && campo < 3; ++p)
+            if (linea[p] == ',') {
+                finCampo[campo++] = p;
+                if (campo < 3) inicioCampo[campo] = p + 1;
+            }
+        if (campo < 3) finCampo[campo++] = largo;
+        if (campo < papeles.length) {
+            ++descartadas;
+            return;
+        }
+        int usuario = -1, item = -1;
+        double valor = Double.NaN;
+        for (int c = 0; c < papeles.length; ++c) {
+            int ini = inicioCampo[c], fin = finCampo[c];
+            if (ini == fin) {
+                ++descartadas;
+                return;
+            }
+            if (papeles[c] == USUARIO) usuario = entero(ini, fin);
+            else if (papeles[c] == ITEM) item = ordinalItem(ini, fin);
+            else valor = real(ini, fin);
+        }
+        if (usuario == Integer.MIN_VALUE || item < 0 || valor != valor) {
+            ++descartadas;
+            return;
+        }
+        if (n == usuarios.length) {
+            usuarios = Arrays.copyOf(usuarios, 2 * n);
+            items = Arrays.copyOf(items, 2 * n);
+            valores = Arrays.copyOf(valores, 2 * n);
+        }
+        usuarios[n] = diccionario.intern(usuario);
+        items[n] = item;
+        valores[n] = valor;
+        ++n;
+        if (valor > maxRating) maxRating = valor;
+    }
+
+    /**
+     * @brief Convierte el campo [ini, fin) en un entero, o devuelve Integer.MIN_VALUE si no lo es
+     */
+    private int entero(int ini, int fin) {
+        boolean negativo = linea[ini] == '-';
+        int p = negativo || linea[ini] == '+' ? ini + 1 : ini;
+        if (p == fin || fin - p > 10) return Integer.MIN_VALUE;
+        long v = 0;
+        for (; p < fin; ++p) {
+            int d = linea[p] - '0';
+            if (d < 0 || d > 9) return Integer.MIN_VALUE;
+            v = v * 10 + d;
+        }
+        v = negativo ? -v : v;
+        return v > Integer.MAX_VALUE || v <= Integer.MIN_VALUE ? Integer.MIN_VALUE : (int) v;
+    }
+
+    /**
+     * @brief Convierte el campo [ini, fin) en un real. Los numeros sin exponente y de hasta 18 cifras se convierten
+     * directamente (mantisa entera dividida por una potencia de 10, con el mismo redondeo que Double.parseDouble si la
+     * mantisa es exacta); el resto se delega en Double.parseDouble. Devuelve NaN si el campo no es un numero
+     */
+    private double real(int ini, int fin) {
+        boolean negativo = linea[ini] == '-';
+        int p = negativo || linea[ini] == '+' ? ini + 1 : ini;
+        long mantisa = 0;
+        int cifras = 0, decimales = 0;
+        boolean punto = false;
+        for (; p < fin; ++p) {
+            byte c = linea[p];
+            if (c == '.' && !punto) punto = true;
+            else if (c >= '0' && c <= '9') {
+                mantisa = mantisa * 10 + (c - '0');
+                if (punto) ++decimales;
+                if (++cifras > 18) return realLento(ini, fin);
+            }
+            else return realLento(ini, fin);
+        }
+        if (cifras == 0) return Double.NaN;
+        double v = mantisa < (1L << 53) && decimales <= 22 ? mantisa / POTENCIAS[decimales] : realLento(ini, fin);
+        return negativo ? -v : v;
+    }
+
+    private static final double[] POTENCIAS = new double[23];
+    static {
+        POTENCIAS[0] = 1;
+        for (int i = 1; i < POTENCIAS.length; ++i) POTENCIAS[i] = POTENCIAS[i - 1] * 10;
+    }
+
+    private double realLento(int ini, int fin) {
+        try {
+            return Double.parseDouble(new String(linea, ini, fin - ini, StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * @brief Ordinal del item cuyo identificador es el campo [ini, fin), o -1 si no esta en el conjunto. Solo se crea un
+     * String la primera vez que aparece cada identificador
+     */
+    private int ordinalItem(int ini, int fin) {
+        int h = 0;
+        for (int p = ini; p < fin; ++p) h = 31 * h + linea[p];
+        int mascara = clavesItems.length - 1;
+        int pos = (h ^ (h >>> 16)) & mascara;
+        while (clavesItems[pos] != null) {
+            if (Arrays.equals(clavesItems[pos], 0, clavesItems[pos].length, linea, ini, fin)) return ordinalesItems[pos];
+            pos = (pos + 1) & mascara;
+        }
+        Item i = dataset.getItems().get(new String(linea, ini, fin - ini, StandardCharsets.UTF_8));
+        int o = i == null ? -1 : i.getOrdinal();
+        clavesItems[pos] = Arrays.copyOfRange(linea, ini, fin);
+        ordinalesItems[pos] = o;
+        if (++nItems * 2 > clavesItems.length) crecerItems();
+        return o;
+    }
+
+    private void crecerItems() {
+        byte[][] claves = clavesItems;
+        int[] ordinales = ordinalesItems;
+        clavesItems = new byte[2 * claves.length][];
+        ordinalesItems = new int[2 * claves.length];
+        int mascara = clavesItems.length - 1;
+        for (int q = 0; q < claves.length; ++q) {
+            if (claves[q] == null) continue;
+            int h = 0;
+            for (byte c : claves[q]) h = 31 * h + c;
+            int pos = (h ^ (h >>> 16)) & mascara;
+            while (clavesItems[pos] != null) pos = (pos + 1) & mascara;
+            clavesItems[pos] = claves[q];
+            ordinalesItems[pos] = ordinales[q];
+        }
+    }
+
+    /**
+     * @brief Numero de valoraciones leidas
+     */
+    public int size() { return n; }
+
+    /**
+     * @brief Ordinal del usuario de cada valoracion (las n primeras posiciones son validas)
+     */
+    public int[] getUsuarios() { return usuarios; }
+
+    /**
+     * @brief Ordinal del item de cada valoracion (las n primeras posiciones son validas)
+     */
+    public int[] getItems() { return items; }
+
+    /**
+     * @brief Valor de cada valoracion (las n primeras posiciones son validas)
+     */
+    public double[] getValores() { return valores; }
+
+    /**
+     * @brief Numero de filas descartadas
+     */
+    public int getDescartadas() { return descartadas; }
+
+    /**
+     * @brief Valoracion maxima leida
+     */
+    public double getMaxRating() { return maxRating; }
+
+    /**
+     * @brief Tiempo de lectura, en nanosegundos
+     */
+    public long getNanos() { return nanos; }
+
+    /**
+     * @brief Bytes leidos del fichero
+     */
+    public long getBytes() { return bytes; }
+
+    /**
+     * @brief Filas leidas (validas o descartadas) por segundo
+     */
+    public double getFilasPorSegundo() {
+        return nanos == 0 ? 0.0 : (n + descartadas) * 1e9 / nanos;
+    }
+}
@@ -10,6 +10,7 @@
  */
 package dominio.clases;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -70,12 +71,30 @@ public class Main {
                     pathToCsv += "6750/";
                     break;
             }
-            //Lectura del dataset y de los ratings
-            Cjt_items dataset = new Cjt_items(pathToCsv + "items.csv", pathToAuxCsv);
+            //Catalogo proyectado en memoria, compartido con los demas procesos que sirven el mismo items.csv. Si esta al
+            //dia, los atributos de los items no se cargan en el heap al leer la instantanea
+            CatalogoMapeado catalogo = null;
+            try {
+                catalogo = CatalogoMapeado.abrir(pathToCsv + "items.csv", pathToAuxCsv);
+            } catch (IOException e) {
+                System.out.println(e);
+            }
+            //Lectura del dataset y de los ratings (de la instantanea binaria si esta al dia con los csv)
+            InstantaneaDataset instantanea = InstantaneaDataset.cargarOLeer(catalogo, pathToCsv + "items.csv", pathToAuxCsv,
+                    pathToCsv + "ratings.db.csv", pathToCsv + "ratings.test.known.csv", pathToCsv + "ratings.test.unknown.csv");
+            Cjt_items dataset = instantanea.getDataset();
+            if (dataset.getCatalogo() == null) {
+                catalogo = CatalogoMapeado.abrirOEscribir(dataset, pathToCsv + "items.csv", pathToAuxCsv);
+                if (catalogo != null) dataset.setCatalogo(catalogo);
+            }
             HashMap<String,Item> items = dataset.getItems();
-            Datos ratings = new Datos(pathToCsv + "ratings.db.csv", dataset);
-            Datos ratingsKnown = new Datos(pathToCsv + "ratings.test.known.csv", dataset);
-            Datos ratingsUnknown = new Datos(pathToCsv + "ratings.test.unknown.csv", dataset);
+            Datos ratings = instantanea.getDatos(0);
+            Datos ratingsKnown = instantanea.getDatos(1);
+            Datos ratingsUnknown = instantanea.getDatos(2);
+            if (instantanea.desdeInstantanea())
+                System.out.printf("Valoraciones leidas de la instantanea: %d%n", ratings.getMatriz().getNumValoraciones());
+            else
+                System.out.printf("Valoraciones leidas: %d (%.0f filas/s)%n", ratings.getMatriz().getNumValoraciones(), ratings.getFilasPorSegundo());
             double maxRating = ratings.getMaxRating();
 
             System.out.print("Elije el usuario al que se le hara la recomendacion (-1 -> Si quieres que se hagan recomendaciones a todos los usuarios del fichero known): ");
@@ -99,6 +118,9 @@ public class Main {
                 System.out.print("Número incorrecto, inténtalo de nuevo:");
                 k = sc.nextInt();
             }
+            IndiceVecinosItems indice = null;
+            if (algo == 1)
+                indice = IndiceVecinosItems.cargarOConstruir(dataset, pathToCsv + "items.csv", Math.max(k, IndiceVecinosItems.VECINOS_POR_DEFECTO));
             if (id != -1) {
                 Usuari us = null;
                 for (Usuari u : ratingsKnown.getUsers())
@@ -108,7 +130,7 @@ public class Main {
                     }
                 switch (algo) {
                     case 0:
-                        SlopeOne sp = new SlopeOne(us);
+                        SlopeOne sp = new SlopeOne(us, dataset);
                         System.out.println("Los ítems que recomendamos para el usuario " + us.getUserId() + " son: ");
                         Collaborative alg = new Collaborative();
                         List<Usuari> aux2 = ratings.getUsers();
@@ -133,8 +155,10 @@ public class Main {
                         break;
                     case 1:
                         System.out.println("Los ítems que recomendados para el usuario " + us.getUserId() + " son: ");
-                        ContentBased cb = new ContentBased(us, dataset, ratings.getRatings(), maxRating);
+                        ContentBased cb = new ContentBased(us, dataset, ratings.getEstadisticas(), maxRating);
                         cb.setK(k);
+                        cb.setIndiceVecinos(indice);
+                        cb.setCatalogo(catalogo);
                         HashMap<Item, Double> recomendations = cb.recommended_items();
                         Algorisme.print(Avaluacio.sortByValue(recomendations));
                         HashMap<Integer, HashMap<Item, Double>> vals = new HashMap<>();
@@ -146,30 +170,15 @@ public class Main {
                 String s = sc.next();
                 finished = s.equals("n");
             } else {
+                //El clustering se calcula una sola vez y se reutiliza para todos los usuarios del fichero known
+                MotorRecomendacionLote motor = null;
+                if (algo == 0) motor = new MotorRecomendacionLote(ratings.getUsers(), 5, new DistanceUsers(), 100);
+                else if (algo == 2) motor = new MotorRecomendacionLote(ratings.getUsers());
                 for (Usuari us : ratingsKnown.getUsers()) {
                     switch (algo) {
                         case 0:
-                            SlopeOne sp = new SlopeOne(us);
                             System.out.println("Los ítems que recomendamos para el usuario " + us.getUserId() + " son: ");
-                            Collaborative alg = new Collaborative();
-                            List<Usuari> aux2 = ratings.getUsers();
-                            aux2.add(us);
-                            ArrayList<Cluster> centroids = alg.recommendations(aux2, 5, new DistanceUsers(),
-                                    100);
-                            List<Usuari> nearby = new LinkedList<>();
-                            Set<Item> neededItems = new HashSet<>();
-                            for (Cluster c : centroids) {
-                                HashSet<Usuari> aux = c.getUsuaris();
-                                if (aux.contains(us)) {
-                                    nearby.addAll(aux);
-                                    break;
-                                }
-                            }
-                            for(Usuari u: nearby) neededItems.addAll(u.getRatedItems().keySet());
-                            List<Item> analizedItems = new ArrayList<>();
-                            analizedItems.addAll(neededItems);
-                            sp.slopeOne(nearby, maxRating,k);
-                            HashMap<Item, Double> preds = sp.getPredictions();
+                            HashMap<Item, Double> preds = motor.recomendar(us, dataset, maxRating, k);
                             Algorisme.print(preds);
                             Usuari u = new Usuari(us.getUserId());
                             u.setRatedItems(preds);
@@ -178,8 +187,10 @@ public class Main {
                             break;
                         case 1:
                             System.out.println("Los ítems que recomendados para el usuario " + us.getUserId() + " son: ");
-                            ContentBased cb = new ContentBased(us, dataset, ratings.getRatings(), maxRating);
+                            ContentBased cb = new ContentBased(us, dataset, ratings.getEstadisticas(), maxRating);
                             cb.setK(k);
+                            cb.setIndiceVecinos(indice);
+                            cb.setCatalogo(catalogo);
                             HashMap<Item, Double> recomendations = cb.recommended_items();
                             Algorisme.print(Avaluacio.sortByValue(recomendations));
                             u = new Usuari(us.getUserId());
@@ -189,9 +200,7 @@ public class Main {
                             break;
                         case 2:
                             System.out.println("Los ítems que recomendados para el usuario " + us.getUserId() + " son: ");
-                            List<Usuari> aux = ratings.getUsers();
-                            aux.add(us);
-                            HashMap<Item, Double> recomendations1 = new Recomendacion(us, dataset, ratings.getRatings(), maxRating,aux,k).Hybrid();
+                            HashMap<Item, Double> recomendations1 = new Recomendacion(us, dataset, ratings.getRatings(), maxRating, motor, k).Hybrid();
                             Algorisme.print(Avaluacio.sortByValue(recomendations1));
                             u = new Usuari(us.getUserId());
                             u.setRatedItems(recomendations1);
@@ -0,0 +1,199 @@
+/**
+ @file MapaIntDouble.java
+ @brief Codigo de la clase MapaIntDouble
+
+ */
+package dominio.clases;
+
+import java.util.*;
+
+/**
+ * @class MapaIntDouble
+ * @brief Diccionario de claves int y valores double con direccionamiento abierto (sondeo lineal). Sustituye a
+ *    HashMap<Item, Double> en los caminos criticos: las claves son ordinales densos, de modo que no se calcula el hash de
+ *    ningun String ni se crean objetos Double. Se recorre por posiciones: para cada posicion p entre 0 y capacidad()-1
+ *    con ocupada(p), clave(p) y valor(p) dan la entrada.
+ * @author Cristian Sanchez Estape
+ */
+public final class MapaIntDouble {
+
+    private int[] claves;
+    private double[] valores;
+    private boolean[] ocupadas;
+    private int size;
+    private int mascara;
+
+    /**
+     * @brief Constructora de un mapa vacio
+     */
+    public MapaIntDouble() {
+        this(8);
+    }
+
+    /**
+     * @brief Constructora de un mapa vacio con espacio para n entradas sin redimensionar
+     * @param n Numero de entradas esperado
+     */
+    public MapaIntDouble(int n) {
+        int cap = 8;
+        while (cap * 3 < n * 4) cap <<= 1;
+        reservar(cap);
+    }
+
+    /**
+     * @brief Constructora de copia
+     * @param m Mapa a copiar
+     */
+    public MapaIntDouble(MapaIntDouble m) {
+        claves = m.claves.clone();
+        valores = m.valores.clone();
+        ocupadas = m.ocupadas.clone();
+        size = m.size;
+        mascara = m.mascara;
+    }
+
+    private void reservar(int cap) {
+        claves = new int[cap];
+        valores = new double[cap];
+        ocupadas = new boolean[cap];
+        mascara = cap - 1;
+        size = 0;
+    }
+
+    private static int mezcla(int k) {
+        int h = k * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int posicion(int k) {
+        int p = mezcla(k) & mascara;
+        while (ocupadas[p] && claves[p] != k) p = (p + 1) & mascara;
+        return p;
+    }
+
+    /**
+     * @brief Numero de entradas del mapa
+     */
+    public int size() { return size; }
+
+    /**
+     * @brief Indica si el mapa contiene la clave k
+     */
+    public boolean contains(int k) { return ocupadas[posicion(k)]; }
+
+    /**
+     * @brief Devuelve el valor asociado a la clave k, o porDefecto si no esta
+     */
+    public double get(int k, double porDefecto) {
+        int p = posicion(k);
+        return ocupadas[p] ? valores[p] : porDefecto;
+    }
+
+    /**
+     * @brief Asocia el valor v a la clave k
+     */
+    public void put(int k, double v) {
+        int p = posicion(k);
+        if (!ocupadas[p]) {
+            if ((size + 1) * 4 > claves.length * 3) {
+                crecer();
+                p = posicion(k);
+            }
+            ocupadas[p] = true;
+            claves[p] = k;
+            ++size;
+        }
+        valores[p] = v;
+    }
+
+    /**
+     * @brief Suma delta al valor asociado a la clave k (que empieza en 0 si no estaba)
+     * @return El nuevo valor asociado a k
+     */
+    public double add(int k, double delta) {
+        int p = posicion(k);
+        if (!ocupadas[p]) {
+            if ((size + 1) * 4 > claves.length * 3) {
+                crecer();
+                p = posicion(k);
+            }
+            ocupadas[p] = true;
+            claves[p] = k;
+            valores[p] = 0.0;
+            ++size;
+        }
+        return valores[p] += delta;
+    }
+
+    /**
+     * @brief Elimina la clave k del mapa (borrado con desplazamiento hacia atras, sin lapidas)
+     * @return true si la clave estaba en el mapa
+     */
+    public boolean remove(int k) {
+        int p = posicion(k);
+        if (!ocupadas[p]) return false;
+        int libre = p;
+        int q = (p + 1) & mascara;
+        while (ocupadas[q]) {
+            int ideal = mezcla(claves[q]) & mascara;
+            if (((q - ideal) & mascara) >= ((q - libre) & mascara)) {
+                claves[libre] = claves[q];
+                valores[libre] = valores[q];
+                libre = q;
+            }
+            q = (q + 1) & mascara;
+        }
+        ocupadas[libre] = false;
+        --size;
+        return true;
+    }
+
+    /**
+     * @brief Vacia el mapa conservando su capacidad
+     */
+    public void clear() {
+        Arrays.fill(ocupadas, false);
+        size = 0;
+    }
+
+    /**
+     * @brief Numero de posiciones de la tabla, para recorrerla
+     */
+    public int capacidad() { return claves.length; }
+
+    /**
+     * @brief Indica si la posicion p de la tabla contiene una entrada
+     */
+    public boolean ocupada(int p) { return ocupadas[p]; }
+
+    /**
+     * @brief Clave de la entrada en la posicion p
+     */
+    public int clave(int p) { return claves[p]; }
+
+    /**
+     * @brief Valor de la entrada en la posicion p
+     */
+    public double valor(int p) { return valores[p]; }
+
+    /**
+     * @brief Devuelve las claves del mapa ordenadas de forma creciente
+     */
+    public int[] clavesOrdenadas() {
+        int[] r = new int[size];
+        int n = 0;
+        for (int p = 0; p < claves.length; ++p)
+            if (ocupadas[p]) r[n++] = claves[p];
+        Arrays.sort(r);
+        return r;
+    }
+
+    private void crecer() {
+        int[] k = claves;
+        double[] v = valores;
+        boolean[] o = ocupadas;
+        reservar(k.length << 1);
+        for (int p = 0; p < k.length; ++p)
+            if (o[p]) put(k[p], v[p]);
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ @file MatrizValoraciones.java
+ @brief Codigo de la clase MatrizValoraciones
+
+ */
+package dominio.clases;
+
+import java.util.*;
+
+/**
+ * @class MatrizValoraciones
+ * @brief Matriz dispersa de valoraciones en formato CSR (filas = ordinales de usuario, columnas = ordinales de item) junto
+ *    con su traspuesta CSC para el acceso por item. Cada valoracion se guarda una sola vez por orientacion como un float,
+ *    en lugar de dos copias en HashMap con claves y valores encapsulados. Dentro de cada fila las columnas estan ordenadas
+ *    de forma creciente, y dentro de cada columna las filas tambien.
+ * @author Houda El Fezzak Bekkouri
+ */
+public final class MatrizValoraciones {
+
+    /**
+     * @brief Inicio de cada fila en columnas/valores (tamaño nFilas+1)
+     */
+    private final int[] rowPtr;
+    /**
+     * @brief Ordinal del item de cada valoracion, por filas
+     */
+    private final int[] itemIdx;
+    /**
+     * @brief Valor de cada valoracion, por filas
+     */
+    private final float[] values;
+
+    /**
+     * @brief Inicio de cada columna en la traspuesta (tamaño nColumnas+1)
+     */
+    private final int[] colPtr;
+    /**
+     * @brief Ordinal del usuario de cada valoracion, por columnas
+     */
+    private final int[] userIdx;
+    /**
+     * @brief Valor de cada valoracion, por columnas
+     */
+    private final float[] colValues;
+
+    /**
+     * @brief Items indexados por su ordinal, para traducir columnas a items
+     */
+    private final Item[] items;
+
+    /**
+     * @brief Constructora a partir de una lista de valoraciones (usuario, item, valor) en cualquier orden. Si un mismo par
+     * usuario-item aparece varias veces, se conserva la ultima valoracion.
+     * @param nFilas Numero de usuarios (los ordinales de usuario son menores que nFilas)
+     * @param items Items indexados por su ordinal (los ordinales de item son menores que items.length)
+     * @param usuarios Ordinal del usuario de cada valoracion
+     * @param columnas Ordinal del item de cada valoracion
+     * @param valores Valor de cada valoracion
+     * @param n Numero de valoraciones
+     */
+    public MatrizValoraciones(int nFilas, Item[] items, int[] usuarios, int[] columnas, float[] valores, int n) {
+        this.items = items;
+        int nColumnas = items.length;
+
+        // ordenacion por cubetas: primero por columna y luego, de forma estable, por fila
+        int[] porColumna = ordenarPor(columnas, identidad(n), nColumnas);
+        int[] orden = ordenarPor(usuarios, porColumna, nFilas);
+
+        int[] ptr = new int[nFilas + 1];
+        int[] idx = new int[n];
+        float[] val = new float[n];
+        int m = 0;
+        for (int k = 0; k < n; ++k) {
+            int e = orden[k];
+            if (m > 0 && k > 0 && usuarios[orden[k - 1]] == usuarios[e] && idx[m - 1] == columnas[e]) {
+                val[m - 1] = valores[e];
+                continue;
+            }
+            idx[m] = columnas[e];
+            val[m] = valores[e];
+            ++ptr[usuarios[e] + 1];
+            ++m;
+        }
+        for (int u = 0; u < nFilas; ++u) ptr[u + 1] += ptr[u];
+        this.rowPtr = ptr;
+        this.itemIdx = Arrays.copyOf(idx, m);
+        this.values = Arrays.copyOf(val, m);
+
+        // traspuesta: al recorrer las filas en orden, cada columna recibe sus filas ordenadas
+        this.colPtr = new int[nColumnas + 1];
+        for (int k = 0; k < m; ++k) ++colPtr[itemIdx[k] + 1];
+        for (int i = 0; i < nColumnas; ++i) colPtr[i + 1] += colPtr[i];
+        this.userIdx = new int[m];
+        this.colValues = new float[m];
+        int[] pos = Arrays.copyOf(colPtr, nColumnas);
+        for (int u = 0; u < nFilas; ++u)
+            for (int k = rowPtr[u]; k < rowPtr[u + 1]; ++k) {
+                int q = pos[itemIdx[k]]++;
+                userIdx[q] = u;
+                colValues[q] = values[k];
+            }
+    }
+
+    /**
+     * @brief Constructora a partir de los arrays CSR y CSC ya calculados, sin copiarlos (la usa InstantaneaDataset)
+     * @param items Items indexados por su ordinal
+     */
+    MatrizValoraciones(Item[] items, int[] rowPtr, int[] itemIdx, float[] values, int[] colPtr, int[] userIdx, float[] colValues) {
+        this.items = items;
+        this.rowPtr = rowPtr;
+        this.itemIdx = itemIdx;
+        this.values = values;
+        this.colPtr = colPtr;
+        this.userIdx = userIdx;
+        this.colValues = colValues;
+    }
+
+    /**
+     * @brief Construye la matriz a partir de las valoraciones de cada usuario
+     * @param userRatings Valoraciones de cada usuario, indexadas por su identificador
+     * @param diccionario Diccionario que da el ordinal (fila) de cada usuario
+     * @param columnas Almacen columnar del conjunto de items, que da el ordinal (columna) de cada item
+     * @return La matriz de valoraciones
+     */
+    public static MatrizValoraciones desde(Map<Integer, HashMap<Item, Double>> userRatings, DiccionarioUsuarios diccionario,
+                                           ColumnasItems columnas) {
+        int n = 0;
+        for (HashMap<Item, Double> r : userRatings.values()) n += r.size();
+        int[] us = new int[n];
+        int[] is = new int[n];
+        float[] vs = new float[n];
+        int k = 0;
+        for (Map.Entry<Integer, HashMap<Item, Double>> u : userRatings.entrySet()) {
+            int fila = diccionario.intern(u.getKey());
+            for (Map.Entry<Item, Double> e : u.getValue().entrySet()) {
+                if (!columnas.contiene(e.getKey())) continue;
+                us[k] = fila;
+                is[k] = e.getKey().getOrdinal();
+                vs[k] = e.getValue().floatValue();
+                ++k;
+            }
+        }
+        Item[] items = new Item[columnas.size()];
+        for (int o = 0; o < items.length; ++o) items[o] = columnas.getItem(o);
+        return new MatrizValoraciones(diccionario.size(), items, us, is, vs, k);
+    }
+
+    private static int[] identidad(int n) {
+        int[] r = new int[n];
+        for (int i = 0; i < n; ++i) r[i] = i;
+        return r;
+    }
+
+    private static int[] ordenarPor(int[] clave, int[] entrada, int nClaves) {
+        int[] cuenta = new int[nClaves + 1];
+        for (int e : entrada) ++cuenta[clave[e] + 1];
+        for (int c = 0; c < nClaves; ++c) cuenta[c + 1] += cuenta[c];
+        int[] salida = new int[entrada.length];
+        for (int e : entrada) salida[cuenta[clave[e]]++] = e;
+        return salida;
+    }
+
+    /**
+     * @brief Numero de filas (usuarios) de la matriz
+     */
+    public int getNumFilas() { return rowPtr.length - 1; }
+
+    /**
+     * @brief Numero de columnas (items) de la matriz
+     */
+    public int getNumColumnas() { return colPtr.length - 1; }
+
+    /**
+     * @brief Numero de valoraciones guardadas
+     */
+    public int getNumValoraciones() { return itemIdx.length; }
+
+    /**
+     * @brief Item con el ordinal o
+     */
+    public Item getItem(int o) { return items[o]; }
+
+    /**
+     * @brief Posicion de la primera valoracion de la fila u
+     */
+    public int inicioFila(int u) { return rowPtr[u]; }
+
+    /**
+     * @brief Posicion siguiente a la ultima valoracion de la fila u
+     */
+    public int finFila(int u) { return rowPtr[u + 1]; }
+
+    /**
+     * @brief Ordinal del item de la valoracion en la posicion p (recorriendo por filas)
+     */
+    public int item(int p) { return itemIdx[p]; }
+
+    /**
+     * @brief Valor de la valoracion en la posicion p (recorriendo por filas)
+     */
+    public float valor(int p) { return values[p]; }
+
+    /**
+     * @brief Posicion de la primera valoracion de la columna i
+     */
+    public int inicioColumna(int i) { return colPtr[i]; }
+
+    /**
+     * @brief Posicion siguiente a la ultima valoracion de la columna i
+     */
+    public int finColumna(int i) { return colPtr[i + 1]; }
+
+    /**
+     * @brief Ordinal del usuario de la valoracion en la posicion q (recorriendo por columnas)
+     */
+    public int usuario(int q) { return userIdx[q]; }
+
+    /**
+     * @brief Valor de la valoracion en la posicion q (recorriendo por columnas)
+     */
+    public float valorColumna(int q) { return colValues[q]; }
+
+    /**
+     * @brief Devuelve la valoracion del usuario u al item i
+     * @return La valoracion, o NaN si el usuario no ha valorado el item
+     */
+    public double valoracion(int u, int i) {
+        int p = Arrays.binarySearch(itemIdx, rowPtr[u], rowPtr[u + 1], i);
+        return p >= 0 ? values[p] : Double.NaN;
+    }
+
+    /**
+     * @brief Devuelve la media de las valoraciones del item i
+     * @return La media, o NaN si el item no tiene valoraciones
+     */
+    public double mediaColumna(int i) {
+        int ini = colPtr[i], fin = colPtr[i + 1];
+        if (ini == fin) return Double.NaN;
+        double suma = 0;
+        for (int q = ini; q < fin; ++q) suma += colValues[q];
+        return suma / (fin - ini);
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ @file MetricaCoseno.java
+ @brief Codigo de la clase MetricaCoseno
+
+ */
+package dominio.clases;
+
+/**
+ * @class MetricaCoseno
+ * @brief Distancia 1 - similitud del coseno entre las valoraciones de los items en comun. Toma valores entre 0 (mismas
+ *    proporciones) y 2; si alguno de los dos vectores es nulo sobre los items en comun la similitud se toma como 0.
+ * @author Muhammad Haris
+ */
+public class MetricaCoseno implements MetricaUsuarios {
+
+    /**
+     * @brief Valor que se resta a las valoraciones del item con ordinal o antes de compararlas (0 en el coseno simple)
+     */
+    protected double centro(int o) { return 0.0; }
+
+    @Override
+    public void distanciaYComun(MapaIntDouble f1, double[] f2, DistanceUsers.Resultado r) {
+        double dot = 0, normA = 0, normB = 0;
+        int comun = 0;
+        for (int p = 0; p < f1.capacidad(); ++p) {
+            if (!f1.ocupada(p)) continue;
+            int o = f1.clave(p);
+            double v2 = o < f2.length ? f2[o] : Double.NaN;
+            if (v2 == v2) {
+                double c = centro(o), a = f1.valor(p) - c, b = v2 - c;
+                dot += a * b;
+                normA += a * a;
+                normB += b * b;
+                ++comun;
+            }
+        }
+        r.fijar(distancia(dot, normA, normB, comun), comun);
+    }
+
+    @Override
+    public void distanciaYComun(VectorOrdenado f1, VectorOrdenado f2, DistanceUsers.Resultado r) {
+        double dot = 0, normA = 0, normB = 0;
+        int comun = 0;
+        int i = 0, j = 0, n1 = f1.size(), n2 = f2.size();
+        while (i < n1 && j < n2) {
+            int oa = f1.ordinal(i), ob = f2.ordinal(j);
+            if (oa < ob) ++i;
+            else if (oa > ob) ++j;
+            else {
+                double c = centro(oa), a = f1.valor(i++) - c, b = f2.valor(j++) - c;
+                dot += a * b;
+                normA += a * a;
+                normB += b * b;
+                ++comun;
+            }
+        }
+        r.fijar(distancia(dot, normA, normB, comun), comun);
+    }
+
+    private static double distancia(double dot, double normA, double normB, int comun) {
+        if (comun == 0) return -1.0;
+        if (normA == 0 || normB == 0) return 1.0;
+        return 1.0 - dot / Math.sqrt(normA * normB);
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ @file MetricaCosenoAjustado.java
+ @brief Codigo de la clase MetricaCosenoAjustado
+
+ */
+package dominio.clases;
+
+/**
+ * @class MetricaCosenoAjustado
+ * @brief Distancia 1 - similitud del coseno ajustado: a cada valoracion se le resta la media del item antes de calcular el
+ *    coseno, de modo que se compara si los usuarios valoran los mismos items por encima o por debajo de lo habitual.
+ * @author Muhammad Haris
+ */
+public final class MetricaCosenoAjustado extends MetricaCoseno {
+
+    /**
+     * @brief Media de las valoraciones de cada item, indexada por ordinal
+     */
+    private final double[] medias;
+
+    /**
+     * @brief Constructora a partir de las estadisticas de las valoraciones de los items
+     * @param estadisticas Estadisticas de las valoraciones; se copian las medias, por lo que cambios posteriores no afectan
+     */
+    public MetricaCosenoAjustado(EstadisticasItems estadisticas) {
+        medias = new double[estadisticas.size()];
+        for (int o = 0; o < medias.length; ++o) {
+            double m = estadisticas.media(o);
+            medias[o] = m == m ? m : 0.0;
+        }
+    }
+
+    @Override
+    protected double centro(int o) { return o < medias.length ? medias[o] : 0.0; }
+}
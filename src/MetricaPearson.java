@@ -0,0 +1,61 @@
+/**
+ @file MetricaPearson.java
+ @brief Codigo de la clase MetricaPearson
+
+ */
+package dominio.clases;
+
+/**
+ * @class MetricaPearson
+ * @brief Distancia 1 - correlacion de Pearson entre las valoraciones de los items en comun, centradas cada una en su media
+ *    sobre esos items. Toma valores entre 0 y 2; si alguno de los dos usuarios valora igual todos los items en comun la
+ *    correlacion se toma como 0. Se calcula en una pasada acumulando sumas, sumas de cuadrados y de productos.
+ * @author Muhammad Haris
+ */
+public final class MetricaPearson implements MetricaUsuarios {
+
+    @Override
+    public void distanciaYComun(MapaIntDouble f1, double[] f2, DistanceUsers.Resultado r) {
+        double sa = 0, sb = 0, saa = 0, sbb = 0, sab = 0;
+        int comun = 0;
+        for (int p = 0; p < f1.capacidad(); ++p) {
+            if (!f1.ocupada(p)) continue;
+            int o = f1.clave(p);
+            double b = o < f2.length ? f2[o] : Double.NaN;
+            if (b == b) {
+                double a = f1.valor(p);
+                sa += a; sb += b;
+                saa += a * a; sbb += b * b; sab += a * b;
+                ++comun;
+            }
+        }
+        r.fijar(distancia(sa, sb, saa, sbb, sab, comun), comun);
+    }
+
+    @Override
+    public void distanciaYComun(VectorOrdenado f1, VectorOrdenado f2, DistanceUsers.Resultado r) {
+        double sa = 0, sb = 0, saa = 0, sbb = 0, sab = 0;
+        int comun = 0;
+        int i = 0, j = 0, n1 = f1.size(), n2 = f2.size();
+        while (i < n1 && j < n2) {
+            int oa = f1.ordinal(i), ob = f2.ordinal(j);
+            if (oa < ob) ++i;
+            else if (oa > ob) ++j;
+            else {
+                double a = f1.valor(i++), b = f2.valor(j++);
+                sa += a; sb += b;
+                saa += a * a; sbb += b * b; sab += a * b;
+                ++comun;
+            }
+        }
+        r.fijar(distancia(sa, sb, saa, sbb, sab, comun), comun);
+    }
+
+    private static double distancia(double sa, double sb, double saa, double sbb, double sab, int comun) {
+        if (comun == 0) return -1.0;
+        double cov = comun * sab - sa * sb;
+        double va = comun * saa - sa * sa, vb = comun * sbb - sb * sb;
+        if (va <= 0 || vb <= 0) return 1.0;
+        return 1.0 - cov / Math.sqrt(va * vb);
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ @file MetricaUsuarios.java
+ @brief Codigo de la interfaz MetricaUsuarios
+
+ */
+package dominio.clases;
+
+/**
+ * @interface MetricaUsuarios
+ * @brief Medida de lo lejos que estan dos usuarios, o un usuario y un centroide, a partir de las valoraciones de los items
+ *    que tienen en comun. Las medidas de similitud (coseno, Pearson...) se expresan como distancia 1 - similitud, de modo
+ *    que en todas las implementaciones un valor menor indica mas parecido. Si no hay items en comun la distancia es -1.
+ * @author Muhammad Haris
+ */
+public interface MetricaUsuarios {
+
+    /**
+     * @brief Calcula la distancia y el numero de items en comun entre un usuario y un centroide denso
+     * @param f1 Mapa que guarda los ordinales de los items del usuario y sus respectivas valoraciones
+     * @param f2 Valoraciones del centroide indexadas por ordinal (NaN si el centroide no tiene valoracion para el item)
+     * @param r Resultado en el que se dejan la distancia y los items en comun
+     */
+    void distanciaYComun(MapaIntDouble f1, double[] f2, DistanceUsers.Resultado r);
+
+    /**
+     * @brief Calcula la distancia y el numero de items en comun entre dos vectores ordenados por ordinal de item
+     * @param f1 Valoraciones del usuario ordenadas por ordinal
+     * @param f2 Valoraciones del centroide (u otro usuario) ordenadas por ordinal
+     * @param r Resultado en el que se dejan la distancia y los items en comun
+     */
+    void distanciaYComun(VectorOrdenado f1, VectorOrdenado f2, DistanceUsers.Resultado r);
+
+    /**
+     * @brief Indica si la distancia cumple la desigualdad triangular sobre los items en comun, condicion para usar la
+     * variante acelerada del k-means (CotasKMeans)
+     */
+    default boolean admiteCotas() { return false; }
+}
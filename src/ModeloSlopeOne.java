@@ -0,0 +1,407 @@
+/**
+ * @file ModeloSlopeOne.java
+ * @brief Codigo de la clase ModeloSlopeOne
+ */
+package dominio.clases;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * @author Cristian Sanchez Estape
+ * @class ModeloSlopeOne
+ * @brief Modelo entrenado del Weighted SlopeOne: para cada par de items (j, J) valorados a la vez por algun usuario guarda
+ *    la suma de las diferencias r(J) - r(j) y el numero de usuarios que los han valorado. Se calcula una sola vez a partir
+ *    de los usuarios (de un Datos o de un cluster) y se guarda disperso por ordinal de item, de modo que predecir para un
+ *    usuario solo consulta las filas de los items que ha valorado. Admite valoraciones nuevas, modificadas o eliminadas
+ *    (addRating, updateRating, removeRating), que solo ajustan los pares del usuario afectado; los ajustes se guardan
+ *    aparte y se funden con las filas compactas cuando acumulan demasiadas entradas. No debe modificarse mientras se
+ *    consulta desde otros hilos.
+ */
+
+public final class ModeloSlopeOne {
+    /**
+     * @brief Las entradas del item j estan en [inicio[j], inicio[j+1]): el item J, la suma de r(J) - r(j) y el numero de
+     * usuarios que han valorado ambos, ordenadas por J
+     */
+    private int[] inicio;
+    private int[] otros;
+    private double[] desviaciones;
+    private int[] cuentas;
+
+    /**
+     * @brief Ajustes pendientes de fundir con las filas compactas: para el item j, la variacion de la suma de r(J) - r(j)
+     * y del numero de usuarios de cada item J (null si el item j no tiene ajustes)
+     */
+    private MapaIntDouble[] ajustesDesviacion;
+    private MapaIntInt[] ajustesCuenta;
+
+    /**
+     * @brief Numero de entradas de los ajustes pendientes
+     */
+    private int nAjustes;
+
+    /**
+     * @brief Numero minimo de ajustes pendientes a partir del cual se funden con las filas compactas
+     */
+    private static final int AJUSTES_MINIMOS = 1 << 16;
+
+    /**
+     * @brief Items indexados por ordinal (null para los ordinales que no ha valorado ningun usuario)
+     */
+    private Item[] items;
+
+    /**
+     * @brief Copia de las valoraciones de cada usuario del modelo, indexada por su identificador
+     */
+    private final HashMap<Integer, MapaIntDouble> usuarios;
+
+    /**
+     * @brief Acumuladores densos de un hilo durante el entrenamiento
+     */
+    private static final class Acumulador {
+        final double[] sumas;
+        final int[] cuentas;
+        final int[] tocados;
+        int nTocados;
+
+        Acumulador(int nItems) {
+            sumas = new double[nItems];
+            cuentas = new int[nItems];
+            tocados = new int[nItems];
+        }
+    }
+
+    /**
+     * @param datos Datos con las valoraciones de los usuarios
+     * @brief Constructora que entrena el modelo con todos los usuarios de un Datos
+     */
+
+    public ModeloSlopeOne(Datos datos) {
+        this(datos.getUsers());
+    }
+
+    /**
+     * @param users Usuarios con los que se entrena el modelo
+     * @brief Constructora que entrena el modelo. Cada item se procesa por separado (en paralelo) recorriendo los usuarios
+     * que lo han valorado, por lo que el resultado no depende del reparto entre hilos
+     */
+
+    public ModeloSlopeOne(List<Usuari> users) {
+        int n = users.size();
+        MapaIntDouble[] valoraciones = new MapaIntDouble[n];
+        usuarios = new HashMap<>(2 * n);
+        int nItems = 0;
+        for (int u = 0; u < n; ++u) {
+            valoraciones[u] = new MapaIntDouble(users.get(u).getValoraciones());
+            usuarios.put(users.get(u).getUserId(), valoraciones[u]);
+            MapaIntDouble r = valoraciones[u];
+            for (int p = 0; p < r.capacidad(); ++p)
+                if (r.ocupada(p)) nItems = Math.max(nItems, r.clave(p) + 1);
+        }
+        items = new Item[nItems];
+        for (Usuari i : users) {
+            if (i.getMatriz() != null) {
+                MatrizValoraciones m = i.getMatriz();
+                for (int p = m.inicioFila(i.getFila()); p < m.finFila(i.getFila()); ++p) items[m.item(p)] = m.getItem(m.item(p));
+            }
+            else for (Item it : i.getRatedItems().keySet())
+                if (it.getOrdinal() >= 0 && it.getOrdinal() < nItems) items[it.getOrdinal()] = it;
+        }
+
+        // indice invertido item -> usuarios que lo han valorado
+        int[] inicioItem = new int[nItems + 1];
+        for (MapaIntDouble r : valoraciones)
+            for (int p = 0; p < r.capacidad(); ++p)
+                if (r.ocupada(p)) ++inicioItem[r.clave(p) + 1];
+        for (int o = 0; o < nItems; ++o) inicioItem[o + 1] += inicioItem[o];
+        int[] usuariosItem = new int[inicioItem[nItems]];
+        int[] pos = Arrays.copyOf(inicioItem, nItems);
+        for (int u = 0; u < n; ++u) {
+            MapaIntDouble r = valoraciones[u];
+            for (int p = 0; p < r.capacidad(); ++p)
+                if (r.ocupada(p)) usuariosItem[pos[r.clave(p)]++] = u;
+        }
+
+        final int dim = nItems;
+        int[][] filaOtros = new int[nItems][];
+        double[][] filaDesviaciones = new double[nItems][];
+        int[][] filaCuentas = new int[nItems][];
+        ThreadLocal<Acumulador> acumuladores = ThreadLocal.withInitial(() -> new Acumulador(dim));
+        IntStream.range(0, nItems).parallel().forEach(j -> {
+            Acumulador a = acumuladores.get();
+            for (int q = inicioItem[j]; q < inicioItem[j + 1]; ++q) {
+                MapaIntDouble r = valoraciones[usuariosItem[q]];
+                double rj = r.get(j, Double.NaN);
+                for (int p = 0; p < r.capacidad(); ++p) {
+                    int J = r.clave(p);
+                    if (!r.ocupada(p) || J == j) continue;
+                    if (a.cuentas[J] == 0) a.tocados[a.nTocados++] = J;
+                    a.sumas[J] += r.valor(p) - rj;
+                    ++a.cuentas[J];
+                }
+            }
+            Arrays.sort(a.tocados, 0, a.nTocados);
+            filaOtros[j] = Arrays.copyOf(a.tocados, a.nTocados);
+            filaDesviaciones[j] = new double[a.nTocados];
+            filaCuentas[j] = new int[a.nTocados];
+            for (int t = 0; t < a.nTocados; ++t) {
+                int J = a.tocados[t];
+                filaDesviaciones[j][t] = a.sumas[J];
+                filaCuentas[j][t] = a.cuentas[J];
+                a.sumas[J] = 0.0;
+                a.cuentas[J] = 0;
+            }
+            a.nTocados = 0;
+        });
+
+        inicio = new int[nItems + 1];
+        for (int j = 0; j < nItems; ++j) inicio[j + 1] = inicio[j] + filaOtros[j].length;
+        otros = new int[inicio[nItems]];
+        desviaciones = new double[inicio[nItems]];
+        cuentas = new int[inicio[nItems]];
+        for (int j = 0; j < nItems; ++j) {
+            System.arraycopy(filaOtros[j], 0, otros, inicio[j], filaOtros[j].length);
+            System.arraycopy(filaDesviaciones[j], 0, desviaciones, inicio[j], filaDesviaciones[j].length);
+            System.arraycopy(filaCuentas[j], 0, cuentas, inicio[j], filaCuentas[j].length);
+        }
+        ajustesDesviacion = new MapaIntDouble[nItems];
+        ajustesCuenta = new MapaIntInt[nItems];
+    }
+
+    /**
+     * @brief Metodo que indica si un usuario (por su identificador) esta entre los usuarios del modelo
+     */
+    public boolean contiene(Usuari u) {
+        return usuarios.containsKey(u.getUserId());
+    }
+
+    /**
+     * @brief Numero de pares (j, J) guardados en las filas compactas (sin contar los ajustes pendientes)
+     */
+    public int getNumPares() { return otros.length; }
+
+    /**
+     * @param userId Identificador del usuario que valora (si no estaba en el modelo, se anade)
+     * @param item   Item valorado
+     * @param rating Valoracion
+     * @brief Metodo que anade una valoracion al modelo ajustando solo los pares del item con los demas items del usuario,
+     * en O(numero de valoraciones del usuario). Si el usuario ya habia valorado el item equivale a updateRating
+     */
+    public void addRating(int userId, Item item, double rating) {
+        int o = item.getOrdinal();
+        if (o < 0) throw new IllegalArgumentException("El item " + item.getId() + " no tiene ordinal");
+        MapaIntDouble r = usuarios.computeIfAbsent(userId, k -> new MapaIntDouble());
+        if (r.contains(o)) {
+            updateRating(userId, item, rating);
+            return;
+        }
+        reservarItems(o + 1);
+        if (items[o] == null) items[o] = item;
+        for (int p = 0; p < r.capacidad(); ++p) {
+            if (!r.ocupada(p)) continue;
+            ajustar(o, r.clave(p), r.valor(p) - rating, 1);
+            ajustar(r.clave(p), o, rating - r.valor(p), 1);
+        }
+        r.put(o, rating);
+        compactarSiHaceFalta();
+    }
+
+    /**
+     * @param userId Identificador del usuario que valora
+     * @param item   Item valorado
+     * @param rating Nueva valoracion
+     * @brief Metodo que cambia una valoracion del modelo, en O(numero de valoraciones del usuario). Si el usuario no habia
+     * valorado el item equivale a addRating
+     */
+    public void updateRating(int userId, Item item, double rating) {
+        int o = item.getOrdinal();
+        MapaIntDouble r = usuarios.get(userId);
+        if (r == null || o < 0 || !r.contains(o)) {
+            addRating(userId, item, rating);
+            return;
+        }
+        double delta = rating - r.get(o, rating);
+        for (int p = 0; p < r.capacidad(); ++p) {
+            if (!r.ocupada(p) || r.clave(p) == o) continue;
+            ajustar(o, r.clave(p), -delta, 0);
+            ajustar(r.clave(p), o, delta, 0);
+        }
+        r.put(o, rating);
+        compactarSiHaceFalta();
+    }
+
+    /**
+     * @param userId Identificador del usuario
+     * @param item   Item cuya valoracion se elimina
+     * @brief Metodo que elimina una valoracion del modelo, en O(numero de valoraciones del usuario)
+     * @return true si el usuario tenia valorado el item
+     */
+    public boolean removeRating(int userId, Item item) {
+        int o = item.getOrdinal();
+        MapaIntDouble r = usuarios.get(userId);
+        if (r == null || o < 0 || !r.contains(o)) return false;
+        double anterior = r.get(o, 0.0);
+        r.remove(o);
+        for (int p = 0; p < r.capacidad(); ++p) {
+            if (!r.ocupada(p)) continue;
+            ajustar(o, r.clave(p), anterior - r.valor(p), -1);
+            ajustar(r.clave(p), o, r.valor(p) - anterior, -1);
+        }
+        compactarSiHaceFalta();
+        return true;
+    }
+
+    /**
+     * @brief Suma a los ajustes pendientes del par (j, J) una variacion de la suma de desviaciones y del numero de usuarios
+     */
+    private void ajustar(int j, int J, double desviacion, int cuenta) {
+        if (ajustesDesviacion[j] == null) {
+            ajustesDesviacion[j] = new MapaIntDouble();
+            ajustesCuenta[j] = new MapaIntInt();
+        }
+        if (!ajustesCuenta[j].contains(J)) {
+            ajustesCuenta[j].put(J, 0);
+            ++nAjustes;
+        }
+        ajustesDesviacion[j].add(J, desviacion);
+        ajustesCuenta[j].add(J, cuenta);
+    }
+
+    /**
+     * @brief Amplia las filas del modelo para que quepan n items
+     */
+    private void reservarItems(int n) {
+        int nItems = inicio.length - 1;
+        if (n <= nItems) return;
+        int[] nuevoInicio = Arrays.copyOf(inicio, n + 1);
+        Arrays.fill(nuevoInicio, nItems + 1, n + 1, inicio[nItems]);
+        inicio = nuevoInicio;
+        items = Arrays.copyOf(items, n);
+        ajustesDesviacion = Arrays.copyOf(ajustesDesviacion, n);
+        ajustesCuenta = Arrays.copyOf(ajustesCuenta, n);
+    }
+
+    private void compactarSiHaceFalta() {
+        if (nAjustes > Math.max(AJUSTES_MINIMOS, otros.length / 4)) compactar();
+    }
+
+    /**
+     * @brief Metodo que funde los ajustes pendientes con las filas compactas, descartando los pares que se han quedado sin
+     * usuarios
+     */
+    public void compactar() {
+        int nItems = inicio.length - 1;
+        int[] nuevoInicio = new int[nItems + 1];
+        int[] nuevosOtros = new int[otros.length + nAjustes];
+        double[] nuevasDesviaciones = new double[nuevosOtros.length];
+        int[] nuevasCuentas = new int[nuevosOtros.length];
+        int n = 0;
+        for (int j = 0; j < nItems; ++j) {
+            MapaIntInt ac = ajustesCuenta[j];
+            MapaIntDouble ad = ajustesDesviacion[j];
+            int ini = n;
+            for (int e = inicio[j]; e < inicio[j + 1]; ++e) {
+                int c = cuentas[e] + (ac == null ? 0 : ac.get(otros[e], 0));
+                if (c <= 0) continue;
+                nuevosOtros[n] = otros[e];
+                nuevasDesviaciones[n] = desviaciones[e] + (ad == null ? 0.0 : ad.get(otros[e], 0.0));
+                nuevasCuentas[n++] = c;
+            }
+            if (ac != null) {
+                for (int p = 0; p < ac.capacidad(); ++p) {
+                    if (!ac.ocupada(p) || ac.valor(p) <= 0 || enFila(j, ac.clave(p))) continue;
+                    nuevosOtros[n] = ac.clave(p);
+                    nuevasDesviaciones[n] = ad.get(ac.clave(p), 0.0);
+                    nuevasCuentas[n++] = ac.valor(p);
+                }
+                ordenarFila(nuevosOtros, nuevasDesviaciones, nuevasCuentas, ini, n);
+            }
+            nuevoInicio[j + 1] = n;
+        }
+        inicio = nuevoInicio;
+        otros = Arrays.copyOf(nuevosOtros, n);
+        desviaciones = Arrays.copyOf(nuevasDesviaciones, n);
+        cuentas = Arrays.copyOf(nuevasCuentas, n);
+        ajustesDesviacion = new MapaIntDouble[nItems];
+        ajustesCuenta = new MapaIntInt[nItems];
+        nAjustes = 0;
+    }
+
+    /**
+     * @brief Indica si el par (j, J) esta en las filas compactas
+     */
+    private boolean enFila(int j, int J) {
+        return Arrays.binarySearch(otros, inicio[j], inicio[j + 1], J) >= 0;
+    }
+
+    /**
+     * @brief Ordena por item las entradas [ini, fin) de una fila
+     */
+    private static void ordenarFila(int[] otros, double[] desviaciones, int[] cuentas, int ini, int fin) {
+        Integer[] orden = new Integer[fin - ini];
+        for (int t = 0; t < orden.length; ++t) orden[t] = ini + t;
+        Arrays.sort(orden, Comparator.comparingInt(e -> otros[e]));
+        int[] o = new int[orden.length], c = new int[orden.length];
+        double[] d = new double[orden.length];
+        for (int t = 0; t < orden.length; ++t) {
+            o[t] = otros[orden[t]];
+            d[t] = desviaciones[orden[t]];
+            c[t] = cuentas[orden[t]];
+        }
+        System.arraycopy(o, 0, otros, ini, o.length);
+        System.arraycopy(d, 0, desviaciones, ini, d.length);
+        System.arraycopy(c, 0, cuentas, ini, c.length);
+    }
+
+    /**
+     * @brief Item con el ordinal o, o null si ningun usuario del entrenamiento lo ha valorado
+     */
+    public Item getItem(int o) { return o < items.length ? items[o] : null; }
+
+    /**
+     * @param valoraciones Valoraciones del usuario para el que se predice, indexadas por ordinal
+     * @param propio true si el usuario no esta entre los del entrenamiento y sus propias valoraciones deben contar como
+     *               las de un usuario mas del grupo
+     * @param sums Mapa en el que se acumula, para cada item J, la suma de r(j) + (r(J) - r(j)) de cada par
+     * @param nums Mapa en el que se acumula, para cada item J, el numero de pares
+     * @brief Metodo que acumula los terminos del Weighted SlopeOne de un usuario, igual que SlopeOne.slopeOne con los usuarios
+     * del entrenamiento
+     */
+
+    public void acumular(MapaIntDouble valoraciones, boolean propio, MapaIntDouble sums, MapaIntInt nums) {
+        for (int q = 0; q < valoraciones.capacidad(); ++q) {
+            if (!valoraciones.ocupada(q)) continue;
+            int j = valoraciones.clave(q);
+            if (j >= items.length) continue;
+            double query = valoraciones.valor(q);
+            MapaIntInt ac = ajustesCuenta[j];
+            MapaIntDouble ad = ajustesDesviacion[j];
+            for (int e = inicio[j]; e < inicio[j + 1]; ++e) {
+                int c = cuentas[e];
+                double d = desviaciones[e];
+                if (ac != null) {
+                    c += ac.get(otros[e], 0);
+                    d += ad.get(otros[e], 0.0);
+                }
+                if (c <= 0) continue;
+                sums.add(otros[e], c * query + d);
+                nums.add(otros[e], c);
+            }
+            if (ac != null)
+                for (int p = 0; p < ac.capacidad(); ++p) {
+                    if (!ac.ocupada(p) || ac.valor(p) <= 0 || enFila(j, ac.clave(p))) continue;
+                    sums.add(ac.clave(p), ac.valor(p) * query + ad.get(ac.clave(p), 0.0));
+                    nums.add(ac.clave(p), ac.valor(p));
+                }
+        }
+        // cada item J del usuario recibe r(j) + (r(J) - r(j)) = r(J) de cada uno de sus otros items j
+        int otrosPropios = valoraciones.size() - 1;
+        if (propio && otrosPropios > 0)
+            for (int q = 0; q < valoraciones.capacidad(); ++q) {
+                if (!valoraciones.ocupada(q)) continue;
+                sums.add(valoraciones.clave(q), otrosPropios * valoraciones.valor(q));
+                nums.add(valoraciones.clave(q), otrosPropios);
+            }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ @file MonticuloTopK.java
+ @brief Codigo de la clase MonticuloTopK
+
+ */
+package dominio.clases;
+
+/**
+ * @class MonticuloTopK
+ * @brief Monticulo de minimos acotado que conserva los k pares (ordinal, puntuacion) con mayor puntuacion vistos hasta el
+ *    momento. Guarda los pares en dos arrays primitivos, de modo que insertar un candidato cuesta O(log k) y consultar el
+ *    peor de los conservados O(1). A igual puntuacion se prefiere el ordinal menor, para que el resultado no dependa del
+ *    orden en que llegan los candidatos.
+ * @author Jordi Elgueta Serra
+ */
+public final class MonticuloTopK {
+
+    private final int[] ids;
+    private final double[] puntuaciones;
+    private int size;
+
+    /**
+     * @brief Constructora de un monticulo vacio
+     * @param k Numero maximo de pares que conserva
+     */
+    public MonticuloTopK(int k) {
+        ids = new int[Math.max(k, 0)];
+        puntuaciones = new double[Math.max(k, 0)];
+    }
+
+    /**
+     * @brief Indica si el par (ia, pa) es peor que el par (ib, pb)
+     */
+    private static boolean peor(int ia, double pa, int ib, double pb) {
+        return pa < pb || (pa == pb && ia > ib);
+    }
+
+    /**
+     * @brief Ofrece un candidato al monticulo
+     * @param id Ordinal del candidato
+     * @param puntuacion Puntuacion del candidato
+     * @return true si el candidato pasa a formar parte de los k mejores
+     */
+    public boolean ofrecer(int id, double puntuacion) {
+        if (size < ids.length) {
+            int p = size++;
+            while (p > 0) {
+                int padre = (p - 1) >>> 1;
+                if (!peor(id, puntuacion, ids[padre], puntuaciones[padre])) break;
+                ids[p] = ids[padre];
+                puntuaciones[p] = puntuaciones[padre];
+                p = padre;
+            }
+            ids[p] = id;
+            puntuaciones[p] = puntuacion;
+            return true;
+        }
+        if (size == 0 || !peor(ids[0], puntuaciones[0], id, puntuacion)) return false;
+        hundir(0, id, puntuacion, size);
+        return true;
+    }
+
+    private void hundir(int p, int id, double puntuacion, int n) {
+        while (true) {
+            int h = 2 * p + 1;
+            if (h >= n) break;
+            if (h + 1 < n && peor(ids[h + 1], puntuaciones[h + 1], ids[h], puntuaciones[h])) ++h;
+            if (!peor(ids[h], puntuaciones[h], id, puntuacion)) break;
+            ids[p] = ids[h];
+            puntuaciones[p] = puntuaciones[h];
+            p = h;
+        }
+        ids[p] = id;
+        puntuaciones[p] = puntuacion;
+    }
+
+    /**
+     * @brief Ofrece al monticulo todos los pares conservados por otro monticulo
+     * @param otro Monticulo cuyos pares se fusionan con los de este
+     */
+    public void fusionar(MonticuloTopK otro) {
+        for (int p = 0; p < otro.size; ++p) ofrecer(otro.ids[p], otro.puntuaciones[p]);
+    }
+
+    /**
+     * @brief Numero de pares conservados
+     */
+    public int size() { return size; }
+
+    /**
+     * @brief Indica si el monticulo ya conserva k pares
+     */
+    public boolean lleno() { return size == ids.length; }
+
+    /**
+     * @brief Puntuacion del peor par conservado, o -infinito si el monticulo aun no esta lleno (cualquier candidato entra)
+     */
+    public double umbral() {
+        return size < ids.length || size == 0 ? Double.NEGATIVE_INFINITY : puntuaciones[0];
+    }
+
+    /**
+     * @brief Ordinal del par en la posicion p (0 <= p < size())
+     */
+    public int id(int p) { return ids[p]; }
+
+    /**
+     * @brief Puntuacion del par en la posicion p (0 <= p < size())
+     */
+    public double puntuacion(int p) { return puntuaciones[p]; }
+
+    /**
+     * @brief Ordena los pares conservados de mayor a menor puntuacion, de modo que id(0) es el mejor. Despues de ordenar
+     * ya no se cumple la propiedad de monticulo, por lo que no deben ofrecerse mas candidatos
+     */
+    public void ordenar() {
+        for (int n = size - 1; n > 0; --n) {
+            int id = ids[n];
+            double puntuacion = puntuaciones[n];
+            ids[n] = ids[0];
+            puntuaciones[n] = puntuaciones[0];
+            hundir(0, id, puntuacion, n);
+        }
+    }
+}
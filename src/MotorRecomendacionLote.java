@@ -0,0 +1,145 @@
+/**
+ @file MotorRecomendacionLote.java
+ @brief Codigo de la clase MotorRecomendacionLote
+
+ */
+package dominio.clases;
+
+import java.util.*;
+
+/**
+ * @class MotorRecomendacionLote
+ * @brief Modelo de clustering construido una sola vez sobre los usuarios de un dataset y reutilizado para recomendar a
+ *    muchos usuarios de consulta. Cada usuario de consulta se asigna al cluster de centroide mas cercano, sin volver a
+ *    ejecutar el k-means, y se le recomienda con SlopeOne a partir de los usuarios de ese cluster. El modelo de SlopeOne de
+ *    cada cluster (ModeloSlopeOne) se entrena la primera vez que se necesita y se reutiliza para las siguientes consultas.
+ * @author Muhammad Haris
+ */
+public class MotorRecomendacionLote {
+
+    /**
+     * @brief Clusters calculados sobre los usuarios del dataset
+     */
+    private final ArrayList<Cluster> clusters;
+
+    /**
+     * @brief Metrica con la que se comparan usuarios y centroides
+     */
+    private final MetricaUsuarios distance;
+
+    /**
+     * @brief Modelo de SlopeOne de cada cluster, en el orden de clusters (null hasta que se necesita)
+     */
+    private ModeloSlopeOne[] modelos;
+
+    /**
+     * @brief Constructora que agrupa los usuarios con un numero de clusters fijo
+     * @param usuarios Usuarios del dataset (la lista no se modifica)
+     * @param k Numero de clusters
+     * @param distance Metrica con que se comparan usuarios y centroides (DistanceUsers para la euclidiana)
+     * @param n Numero maximo de iteraciones del k-means
+     */
+    public MotorRecomendacionLote(List<Usuari> usuarios, int k, MetricaUsuarios distance, int n) {
+        this.distance = distance;
+        this.clusters = new Collaborative().recommendations(new ArrayList<>(usuarios), k, distance, n);
+    }
+
+    /**
+     * @brief Constructora que agrupa los usuarios eligiendo el numero de clusters con Collaborative.calcula_k_paralelo
+     * @param usuarios Usuarios del dataset (la lista no se modifica)
+     */
+    public MotorRecomendacionLote(List<Usuari> usuarios) {
+        this.distance = new DistanceUsers();
+        this.clusters = Collaborative.calcula_k_paralelo(usuarios);
+    }
+
+    /**
+     * @brief Getter de los clusters del modelo
+     * @return Clusters calculados sobre los usuarios del dataset
+     */
+    public ArrayList<Cluster> getClusters() {
+        return clusters;
+    }
+
+    /**
+     * @brief Metodo que devuelve el cluster de centroide mas cercano a un usuario, con el mismo criterio que
+     * Collaborative.nearestCentroid (menor distancia y, a igual distancia, mas items en comun). Si el usuario no tiene
+     * items en comun con ningun centroide se devuelve el cluster con mas usuarios
+     * @param usuari Usuario de consulta
+     * @return El cluster al que pertenece el usuario
+     */
+    public Cluster clusterDe(Usuari usuari) {
+        int c = indiceClusterDe(usuari);
+        return c < 0 ? null : clusters.get(c);
+    }
+
+    /**
+     * @brief Metodo que devuelve la posicion en getClusters() del cluster de un usuario, con el criterio de clusterDe
+     * @param usuari Usuario de consulta
+     * @return Posicion del cluster, -1 si no hay clusters
+     */
+    private int indiceClusterDe(Usuari usuari) {
+        double minimumDistance = Double.MAX_VALUE;
+        int maxComun = -1;
+        int nearest = -1;
+        DistanceUsers.Resultado r = new DistanceUsers.Resultado();
+        for (int i = 0; i < clusters.size(); ++i) {
+            Centroid centroide = clusters.get(i).getCentroid();
+            if (centroide.esDenso()) distance.distanciaYComun(usuari.getValoraciones(), centroide.getMedia(), r);
+            else distance.distanciaYComun(usuari.getValoracionesOrdenadas(), centroide.getVectorOrdenado(), r);
+            if (r.sinComun()) continue;
+            double currentDistance = r.getDistancia();
+            int currentComun = r.getComun();
+            if (currentDistance < minimumDistance || currentDistance == minimumDistance && currentComun > maxComun) {
+                minimumDistance = currentDistance;
+                maxComun = currentComun;
+                nearest = i;
+            }
+        }
+        if (nearest == -1)
+            for (int i = 0; i < clusters.size(); ++i)
+                if (nearest == -1 || clusters.get(i).size() > clusters.get(nearest).size()) nearest = i;
+        return nearest;
+    }
+
+    /**
+     * @brief Metodo que devuelve los usuarios del cluster de un usuario de consulta, incluido el propio usuario
+     * @param usuari Usuario de consulta
+     * @return Lista de usuarios del cluster
+     */
+    public List<Usuari> vecinos(Usuari usuari) {
+        List<Usuari> nearby = new ArrayList<>();
+        Cluster c = clusterDe(usuari);
+        if (c != null) nearby.addAll(c.getUsuaris());
+        if (!nearby.contains(usuari)) nearby.add(usuari);
+        return nearby;
+    }
+
+    /**
+     * @brief Metodo que devuelve el modelo de SlopeOne de un cluster, entrenandolo si es la primera vez que se pide
+     * @param c Posicion del cluster en getClusters()
+     * @return Modelo entrenado con los usuarios del cluster
+     */
+    private synchronized ModeloSlopeOne modeloDe(int c) {
+        if (modelos == null) modelos = new ModeloSlopeOne[clusters.size()];
+        if (modelos[c] == null) modelos[c] = new ModeloSlopeOne(new ArrayList<>(clusters.get(c).getUsuaris()));
+        return modelos[c];
+    }
+
+    /**
+     * @brief Metodo que recomienda items a un usuario de consulta con SlopeOne sobre los usuarios de su cluster (y el
+     * propio usuario si no esta en el), a partir del modelo precalculado del cluster
+     * @param usuari Usuario de consulta
+     * @param dataset Conjunto de items al que se refieren las valoraciones
+     * @param maxRating Valoracion maxima posible
+     * @param k Numero de items a recomendar
+     * @return La prediccion de las valoraciones para los items recomendados
+     */
+    public HashMap<Item, Double> recomendar(Usuari usuari, Cjt_items dataset, double maxRating, int k) {
+        SlopeOne sp = new SlopeOne(usuari, dataset);
+        int c = indiceClusterDe(usuari);
+        if (c < 0) sp.slopeOne(vecinos(usuari), maxRating, k);
+        else sp.slopeOne(modeloDe(c), maxRating, k);
+        return sp.getPredictions();
+    }
+}
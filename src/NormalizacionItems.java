@@ -0,0 +1,298 @@
+/**
+ @file NormalizacionItems.java
+ @brief Codigo de la clase NormalizacionItems
+
+ */
+package dominio.clases;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * @class NormalizacionItems
+ * @brief Contexto inmutable de normalizacion de atributos de un Cjt_items. Guarda, para cada atributo entero, real y fecha,
+ *    el minimo y el inverso del rango (1/(max-min)) en arrays primitivos, de forma que la distancia entre dos items se
+ *    calcula sin copiar listas ni reservar memoria por cada par. Se construye una sola vez por conjunto de items y
+ *    aplica la misma ponderacion que DistanceItems. Si los dos items estan indexados en el almacen columnar del conjunto,
+ *    los atributos se leen directamente de sus arrays primitivos; si el contexto se construye sobre un CatalogoMapeado,
+ *    se leen del catalogo.
+ * @author Jordi Elgueta Serra
+ */
+public final class NormalizacionItems {
+
+    /**
+     * @brief Inverso del rango de cada atributo entero, en el orden de las columnas del dataset (0 si el rango es nulo)
+     */
+    private final double[] invRangoInt;
+    /**
+     * @brief Inverso del rango de cada atributo real, en el orden de las columnas del dataset (0 si el rango es nulo)
+     */
+    private final double[] invRangoDouble;
+    /**
+     * @brief Inverso de la diferencia de años de cada atributo fecha, en el orden de las columnas del dataset (0 si es nula)
+     */
+    private final double[] invRangoDate;
+
+    /**
+     * @brief Almacen columnar de los atributos del conjunto de items
+     */
+    private final ColumnasItems columnas;
+
+    /**
+     * @brief Catalogo proyectado del que se leen los atributos, o null si se leen del almacen columnar
+     */
+    private final CatalogoMapeado catalogo;
+
+    /**
+     * @brief Constructora que precalcula los rangos a partir de los maximos y minimos del conjunto de items
+     * @param dataset Conjunto de items del que se obtienen los valores maximos y minimos de cada atributo
+     */
+    public NormalizacionItems(Cjt_items dataset) {
+        this.columnas = dataset.getColumnas();
+        this.catalogo = null;
+        this.invRangoInt = inversosLong(dataset.getMaxValIntegers().values(), dataset.getMinValIntegers().values());
+        this.invRangoDouble = inversosDouble(dataset.getMaxValDoubles().values(), dataset.getMinValDoubles().values());
+        this.invRangoDate = inversosDate(dataset.getMaxDates().values(), dataset.getMinDates().values());
+    }
+
+    /**
+     * @brief Constructora que lee los atributos y los rangos de un catalogo proyectado en memoria, sin usar el almacen
+     * columnar ni los atributos de los items
+     * @param catalogo Catalogo del conjunto de items
+     */
+    public NormalizacionItems(CatalogoMapeado catalogo) {
+        this.columnas = null;
+        this.catalogo = catalogo;
+        this.invRangoInt = catalogo.getInvRangoInt();
+        this.invRangoDouble = catalogo.getInvRangoDouble();
+        this.invRangoDate = catalogo.getInvRangoDate();
+    }
+
+    /**
+     * @brief Metodo que devuelve la distancia entre los items a y b, con el mismo resultado que DistanceItems.get_distance().
+     * La distancia siempre sera un numero entre 0 y 1 donde 0 significa que son items exactamente iguales.
+     * @param a Primer item en el computo de la distancia
+     * @param b Segundo item en el computo de la distancia
+     * @return Devuelve el valor de la distancia, un double entre 0 y 1
+     */
+    public double distance(Item a, Item b) {
+        if (catalogo != null) {
+            int oa = catalogo.ordinal(a), ob = catalogo.ordinal(b);
+            if (oa >= 0 && ob >= 0) return catalogo.distance(oa, ob);
+        }
+        else if (columnas.contiene(a) && columnas.contiene(b)) return distance(a.getOrdinal(), b.getOrdinal());
+        double distInt = distBetweenInt(a.getIntAttributes(), b.getIntAttributes());
+        double distBool = distBetweenBool(a.getBooleanAttributes(), b.getBooleanAttributes());
+        double distDate = distBetweenDate(a.getDateAttributes(), b.getDateAttributes());
+        double distDouble = distBetweenDouble(a.getDoubleAttributes(), b.getDoubleAttributes());
+        double distBS = distBetweenCategory(a.getCategoryPscBits(), b.getCategoryPscBits());
+        return 0.2*distInt + 0.2*distDouble + 0.2*distDate + 0.1*distBool + 0.3*distBS;
+    }
+
+    /**
+     * @brief Metodo que devuelve la distancia entre los items con ordinales a y b del almacen columnar del conjunto (o del
+     * catalogo, si el contexto se ha construido sobre uno)
+     * @param a Ordinal del primer item en el computo de la distancia
+     * @param b Ordinal del segundo item en el computo de la distancia
+     * @return Devuelve el valor de la distancia, un double entre 0 y 1
+     */
+    public double distance(int a, int b) {
+        if (catalogo != null) return catalogo.distance(a, b);
+        double distInt = distColumnaInt(a, b);
+        double distBool = distColumnaBool(a, b);
+        double distDate = distColumnaDate(a, b);
+        double distDouble = distColumnaDouble(a, b);
+        double distBS = distBetweenCategory(columnas.getItem(a).getCategoryPscBits(), columnas.getItem(b).getCategoryPscBits());
+        return 0.2*distInt + 0.2*distDouble + 0.2*distDate + 0.1*distBool + 0.3*distBS;
+    }
+
+    /**
+     * @brief Inverso del rango de cada atributo entero, real y fecha (0 si el rango es nulo)
+     */
+    double[] getInvRangoInt() { return invRangoInt; }
+
+    double[] getInvRangoDouble() { return invRangoDouble; }
+
+    double[] getInvRangoDate() { return invRangoDate; }
+
+    private double distColumnaInt(int a, int b) {
+        int n = columnas.getNumEnteros();
+        if (n == 0) return 0.0;
+        long[] v = columnas.getEnteros();
+        int pa = a * n, pb = b * n;
+        int m = Math.min(n, invRangoInt.length);
+        double dist = 0.0;
+        for (int i = 0; i < m; ++i) {
+            long x = v[pa + i], y = v[pb + i];
+            if (x != ColumnasItems.LONG_NULO && y != ColumnasItems.LONG_NULO) {
+                double d = (x - y) * invRangoInt[i];
+                dist += d * d;
+            }
+        }
+        return Math.sqrt(dist/n);
+    }
+
+    private double distColumnaDouble(int a, int b) {
+        int n = columnas.getNumReales();
+        if (n == 0) return 0.0;
+        double[] v = columnas.getReales();
+        int pa = a * n, pb = b * n;
+        int m = Math.min(n, invRangoDouble.length);
+        double dist = 0.0;
+        for (int i = 0; i < m; ++i) {
+            double d = (v[pa + i] - v[pb + i]) * invRangoDouble[i];
+            if (d == d) dist += d * d;
+        }
+        return Math.sqrt(dist/n);
+    }
+
+    private double distColumnaDate(int a, int b) {
+        int n = columnas.getNumFechas();
+        if (n == 0) return 0.0;
+        int[] v = columnas.getAnyos();
+        int pa = a * n, pb = b * n;
+        int m = Math.min(n, invRangoDate.length);
+        double dist = 0.0;
+        for (int i = 0; i < m; ++i) {
+            int x = v[pa + i], y = v[pb + i];
+            if (x != ColumnasItems.ANYO_NULO && y != ColumnasItems.ANYO_NULO) {
+                double d = (x - y) * invRangoDate[i];
+                dist += d * d;
+            }
+        }
+        return Math.sqrt(dist/n);
+    }
+
+    private double distColumnaBool(int a, int b) {
+        int n = columnas.getNumBooleanos();
+        if (n == 0) return 0.0;
+        int[] v = columnas.getBooleanos();
+        int pa = a * n, pb = b * n;
+        double dist = 0.0;
+        for (int i = 0; i < n; ++i)
+            if (v[pa + i] != v[pb + i]) dist += 1;
+        return Math.sqrt(dist/n);
+    }
+
+    /**
+     * @brief Distancia entre los atributos categoricos. La cardinalidad de la interseccion se obtiene recorriendo los bits
+     * activos del primer conjunto, de modo que no se clonan los BitSet.
+     */
+    private static double distBetweenCategory(ArrayList<BitSet> c1, ArrayList<BitSet> c2) {
+        int n = c1.size();
+        if (n == 0) return 0.0;
+        double dist = 0.0;
+        for (int i = 0; i < n; ++i) {
+            BitSet x = c1.get(i);
+            BitSet y = c2.get(i);
+            int interseccio = 0;
+            for (int bit = x.nextSetBit(0); bit >= 0; bit = x.nextSetBit(bit + 1))
+                if (y.get(bit)) ++interseccio;
+            int unio = x.cardinality() + y.cardinality() - interseccio;
+            if (unio != 0) {
+                double d = 1 - (double) interseccio / unio;
+                dist += d * d;
+            }
+        }
+        return Math.sqrt(dist/n);
+    }
+
+    /**
+     * @brief Distancia entre los atributos fecha, segun la diferencia de años normalizada
+     */
+    private double distBetweenDate(ArrayList<LocalDate> ld1, ArrayList<LocalDate> ld2) {
+        int n = ld1.size();
+        if (n == 0) return 0.0;
+        double dist = 0.0;
+        for (int i = 0; i < n && i < invRangoDate.length; ++i) {
+            LocalDate x = ld1.get(i);
+            LocalDate y = ld2.get(i);
+            if (x != null && y != null) {
+                double d = (x.getYear() - y.getYear()) * invRangoDate[i];
+                dist += d * d;
+            }
+        }
+        return Math.sqrt(dist/n);
+    }
+
+    /**
+     * @brief Distancia entre los atributos booleanos: 0 si son iguales y 1 si son diferentes
+     */
+    private static double distBetweenBool(ArrayList<String> b1, ArrayList<String> b2) {
+        int n = b1.size();
+        if (n == 0) return 0.0;
+        double dist = 0.0;
+        for (int i = 0; i < n; ++i)
+            dist += Objects.equals(b1.get(i), b2.get(i)) ? 0 : 1;
+        return Math.sqrt(dist/n);
+    }
+
+    /**
+     * @brief Distancia entre los atributos reales, segun la diferencia normalizada por el rango
+     */
+    private double distBetweenDouble(ArrayList<Double> d1, ArrayList<Double> d2) {
+        int n = d1.size();
+        if (n == 0) return 0.0;
+        double dist = 0.0;
+        for (int i = 0; i < n && i < invRangoDouble.length; ++i) {
+            Double x = d1.get(i);
+            Double y = d2.get(i);
+            if (x != null && y != null) {
+                double d = (x - y) * invRangoDouble[i];
+                dist += d * d;
+            }
+        }
+        return Math.sqrt(dist/n);
+    }
+
+    /**
+     * @brief Distancia entre los atributos enteros, segun la diferencia normalizada por el rango
+     */
+    private double distBetweenInt(ArrayList<Long> i1, ArrayList<Long> i2) {
+        int n = i1.size();
+        if (n == 0) return 0.0;
+        double dist = 0.0;
+        for (int i = 0; i < n && i < invRangoInt.length; ++i) {
+            Long x = i1.get(i);
+            Long y = i2.get(i);
+            if (x != null && y != null) {
+                double d = (x - y) * invRangoInt[i];
+                dist += d * d;
+            }
+        }
+        return Math.sqrt(dist/n);
+    }
+
+    private static double[] inversosLong(Collection<Long> max, Collection<Long> min) {
+        double[] inv = new double[Math.min(max.size(), min.size())];
+        Iterator<Long> itMax = max.iterator();
+        Iterator<Long> itMin = min.iterator();
+        for (int i = 0; i < inv.length; ++i) {
+            long dif = itMax.next() - itMin.next();
+            inv[i] = dif != 0 ? 1.0 / dif : 0.0;
+        }
+        return inv;
+    }
+
+    private static double[] inversosDouble(Collection<Double> max, Collection<Double> min) {
+        double[] inv = new double[Math.min(max.size(), min.size())];
+        Iterator<Double> itMax = max.iterator();
+        Iterator<Double> itMin = min.iterator();
+        for (int i = 0; i < inv.length; ++i) {
+            double dif = itMax.next() - itMin.next();
+            inv[i] = dif != 0 ? 1.0 / dif : 0.0;
+        }
+        return inv;
+    }
+
+    private static double[] inversosDate(Collection<LocalDate> max, Collection<LocalDate> min) {
+        double[] inv = new double[Math.min(max.size(), min.size())];
+        Iterator<LocalDate> itMax = max.iterator();
+        Iterator<LocalDate> itMin = min.iterator();
+        for (int i = 0; i < inv.length; ++i) {
+            int dif = itMax.next().getYear() - itMin.next().getYear();
+            inv[i] = dif != 0 ? 1.0 / dif : 0.0;
+        }
+        return inv;
+    }
+}
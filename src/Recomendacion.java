@@ -36,6 +36,12 @@ public class Recomendacion {
 
     private int k;
 
+    /**
+     * @brief Modelo de clustering precalculado (null si el clustering se calcula en cada recomendacion)
+     */
+
+    private MotorRecomendacionLote motor;
+
     /**
      * @param user    Usuario sobre el cual se generaran recomendaciones
      * @param dataset Dataset sobre el cual se trabajara (en cuanto a items y usuarios se refiere)
@@ -54,12 +60,32 @@ public class Recomendacion {
         this.k = k;
     }
 
+    /**
+     * @param user    Usuario sobre el cual se generaran recomendaciones
+     * @param dataset Dataset sobre el cual se trabajara (en cuanto a items y usuarios se refiere)
+     * @param ratings Diccionario con todos los items del dataset que guarda, para cada uno, todas las valoraciones que tiene
+     * @param mR      Valoracion maxima posible para un dataset dado
+     * @param motor   Modelo de clustering calculado una sola vez sobre los usuarios del dataset
+     * @brief Constructora del objeto Recomendacion que reutiliza un clustering precalculado en lugar de recalcularlo
+     */
+
+    public Recomendacion(Usuari user, Cjt_items dataset, HashMap<Item, ArrayList<Double>> ratings, double mR, MotorRecomendacionLote motor, int k) {
+        this.user = user;
+        this.dataset = dataset;
+        this.ratings = new HashMap<>(ratings);
+        this.maxRating = mR;
+        this.users = new LinkedList<>();
+        this.motor = motor;
+        this.k = k;
+    }
+
     /**
      * @return La prediccion de las valoraciones para cada item no valorado del usuario
      * @brief Metodo de generacion de recomendaciones a traves del algoritmo Collaborative
      */
 
     public HashMap<Item, Double> Collaborative() {
+        if (motor != null) return Avaluacio.sortByValue(motor.recomendar(user, dataset, maxRating, k));
         if(!users.contains(user)) users.add(user);
         ArrayList<Cluster> centroids = new Collaborative().calcula_k(users);
         List<Usuari> desiredUsers = null;
@@ -71,7 +97,7 @@ public class Recomendacion {
             }
         }
         desiredUsers.remove(user);
-        SlopeOne sp = new SlopeOne(user);
+        SlopeOne sp = new SlopeOne(user, dataset);
         sp.slopeOne(desiredUsers, maxRating, k);
         return Avaluacio.sortByValue(sp.getPredictions());
     }
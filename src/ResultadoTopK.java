@@ -0,0 +1,66 @@
+/**
+ @file ResultadoTopK.java
+ @brief Codigo de la clase ResultadoTopK
+
+ */
+package dominio.clases;
+
+import java.util.*;
+
+/**
+ * @class ResultadoTopK
+ * @brief Resultado compacto de una seleccion de los k mejores items: los ordinales y las puntuaciones en dos arrays
+ *    paralelos, de mayor a menor puntuacion. Solo se traduce a un mapa de Item a puntuacion si se pide.
+ * @author Jordi Elgueta Serra
+ */
+public final class ResultadoTopK {
+
+    private final int[] ordinales;
+    private final double[] puntuaciones;
+
+    /**
+     * @brief Constructora a partir de los arrays ya ordenados, que pasan a ser del resultado
+     * @param ordinales Ordinales de los items, de mayor a menor puntuacion
+     * @param puntuaciones Puntuacion de cada item, en el mismo orden
+     */
+    public ResultadoTopK(int[] ordinales, double[] puntuaciones) {
+        this.ordinales = ordinales;
+        this.puntuaciones = puntuaciones;
+    }
+
+    /**
+     * @brief Numero de items del resultado
+     */
+    public int size() { return ordinales.length; }
+
+    /**
+     * @brief Ordinal del item en la posicion p (0 es el mejor)
+     */
+    public int ordinal(int p) { return ordinales[p]; }
+
+    /**
+     * @brief Puntuacion del item en la posicion p
+     */
+    public double puntuacion(int p) { return puntuaciones[p]; }
+
+    /**
+     * @brief Ordinales de los items, de mayor a menor puntuacion (no debe modificarse)
+     */
+    public int[] getOrdinales() { return ordinales; }
+
+    /**
+     * @brief Puntuaciones de los items, en el orden de getOrdinales() (no debe modificarse)
+     */
+    public double[] getPuntuaciones() { return puntuaciones; }
+
+    /**
+     * @brief Traduce el resultado a un mapa de Item a puntuacion que conserva el orden
+     * @param items Items indexados por ordinal
+     * @return Mapa ordenado de mayor a menor puntuacion
+     */
+    public LinkedHashMap<Item, Double> aMapa(Item[] items) {
+        LinkedHashMap<Item, Double> m = new LinkedHashMap<>(2 * ordinales.length);
+        for (int p = 0; p < ordinales.length; ++p) m.put(items[ordinales[p]], puntuaciones[p]);
+        return m;
+    }
+}
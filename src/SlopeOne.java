@@ -14,9 +14,20 @@ import java.util.*;
 
 public class SlopeOne extends Algorisme {
     /**
-     * @brief Map que almacena, para un unico usuario, las predicciones sobre un conjunto determinado de items
+     * @brief Map que almacena, para un unico usuario, las predicciones sobre un conjunto determinado de items. Se construye
+     * a partir de topK la primera vez que se pide
      */
-    private HashMap<Item, Double> predictions = new HashMap<>();
+    private HashMap<Item, Double> predictions;
+
+    /**
+     * @brief Los k items con mejor prediccion y sus predicciones, de mayor a menor
+     */
+    private ResultadoTopK topK = new ResultadoTopK(new int[0], new double[0]);
+
+    /**
+     * @brief Items indexados por ordinal con los que se traduce topK
+     */
+    private Item[] itemsTopK = new Item[0];
 
     /**
      * @param users Lista de usuarios con valoraciones sobre un conjunto determinado de items
@@ -25,42 +36,121 @@ public class SlopeOne extends Algorisme {
      */
 
     public void slopeOne(List<Usuari> users, double max, int k) {
-        HashMap<Item, Double> queries = user.getRatedItems(), usersRatings;
-        HashMap<Item, Double> sums = new HashMap<>();
-        HashMap<Item, Integer> nums = new HashMap<>();
-        for (Item j : queries.keySet()) {
+        MapaIntDouble queries = user.getValoraciones(), usersRatings;
+        MapaIntDouble sums = new MapaIntDouble();
+        MapaIntInt nums = new MapaIntInt();
+        for (int q = 0; q < queries.capacidad(); ++q) {
+            if (!queries.ocupada(q)) continue;
+            int j = queries.clave(q);
+            double query = queries.valor(q);
             for (Usuari i : users) {
-                usersRatings = i.getRatedItems();
-                if (usersRatings.containsKey(j))
-                    for (Item J : usersRatings.keySet()) {
-                        if (!J.equals(j)) {
-                            if (sums.get(J) == null) {
-                                sums.put(J, 0.);
-                                nums.put(J, 0);
-                            }
-                            sums.put(J, sums.get(J) + queries.get(j) + (usersRatings.get(J) - usersRatings.get(j)));
-                            nums.put(J, nums.get(J) + 1);
+                usersRatings = i.getValoraciones();
+                double rj = usersRatings.get(j, Double.NaN);
+                if (rj == rj)
+                    for (int p = 0; p < usersRatings.capacidad(); ++p) {
+                        int J = usersRatings.clave(p);
+                        if (usersRatings.ocupada(p) && J != j) {
+                            sums.add(J, query + (usersRatings.valor(p) - rj));
+                            nums.add(J, 1);
                         }
                     }
             }
         }
-        for (Item j : sums.keySet()) {
-            double val = sums.get(j);
-            if (val >= 0.) predictions.put(j, val / nums.get(j));
+        completar(sums, nums, resolverItems(users, sums), max, k);
+    }
+
+    /**
+     * @param modelo Modelo entrenado con los usuarios del grupo
+     * @param max    Valoracion maxima posible (cota maxima)
+     * @param k      Numero de items a recomendar
+     * @brief Metodo que computa el Weighted SlopeOne a partir de un modelo entrenado, con el mismo resultado que slopeOne
+     * sobre los usuarios del entrenamiento (mas el propio usuario si no estaba entre ellos) pero sin recorrerlos
+     */
+
+    public void slopeOne(ModeloSlopeOne modelo, double max, int k) {
+        MapaIntDouble sums = new MapaIntDouble();
+        MapaIntInt nums = new MapaIntInt();
+        modelo.acumular(user.getValoraciones(), !modelo.contiene(user), sums, nums);
+        Item[] items;
+        if (dataset != null) items = resolverItems(null, sums);
+        else {
+            int maxOrd = -1;
+            for (int p = 0; p < sums.capacidad(); ++p)
+                if (sums.ocupada(p)) maxOrd = Math.max(maxOrd, sums.clave(p));
+            items = new Item[maxOrd + 1];
+            for (int o = 0; o <= maxOrd; ++o) items[o] = modelo.getItem(o);
+            for (Item it : user.getRatedItems().keySet())
+                if (it.getOrdinal() >= 0 && it.getOrdinal() <= maxOrd && items[it.getOrdinal()] == null) items[it.getOrdinal()] = it;
+        }
+        completar(sums, nums, items, max, k);
+    }
+
+    /**
+     * @brief Metodo que calcula las predicciones a partir de las sumas y cuentas acumuladas y se queda con las k mejores
+     * con un monticulo acotado, sin ordenar todas las predicciones. Las predicciones se limitan a la valoracion maxima
+     * @param sums Suma de los terminos de cada item
+     * @param nums Numero de terminos de cada item
+     * @param items Array de items indexado por ordinal
+     * @param max Valoracion maxima posible (cota maxima)
+     * @param k Numero de items a recomendar
+     */
+    private void completar(MapaIntDouble sums, MapaIntInt nums, Item[] items, double max, int k) {
+        MonticuloTopK top = new MonticuloTopK(k);
+        for (int p = 0; p < sums.capacidad(); ++p) {
+            if (!sums.ocupada(p)) continue;
+            int o = sums.clave(p);
+            double val = sums.valor(p);
+            if (val >= 0. && o < items.length && items[o] != null) top.ofrecer(o, val / nums.get(o, 1));
+        }
+        top.ordenar();
+        int[] ordinales = new int[top.size()];
+        double[] valores = new double[top.size()];
+        for (int p = 0; p < top.size(); ++p) {
+            ordinales[p] = top.id(p);
+            valores[p] = Math.min(top.puntuacion(p), max);
         }
-        if (predictions.size() > k) {
-            Avaluacio.sortByValue(predictions);
-            int count = 0;
-            HashMap<Item, Double> finalPreds = new LinkedHashMap<>();
-            for (Item i : predictions.keySet()) {
-                double val = predictions.get(i);
-                if (val > max) finalPreds.put(i, max);
-                else finalPreds.put(i, val);
-                count++;
-                if (count == k) break;
+        topK = new ResultadoTopK(ordinales, valores);
+        itemsTopK = items;
+        predictions = null;
+    }
+
+    /**
+     * @return Los k items con mejor prediccion (por ordinal) y sus predicciones, de mayor a menor
+     * @brief Metodo get del resultado compacto de las predicciones
+     */
+
+    public ResultadoTopK getTopK() {
+        return topK;
+    }
+
+    /**
+     * @brief Metodo que traduce a items los ordinales para los que se ha calculado una prediccion. Si se conoce el dataset
+     * se usa su almacen columnar; si no, se recorren los items valorados por los usuarios
+     * @param users Usuarios a partir de los cuales se han calculado las predicciones
+     * @param sums Mapa indexado por los ordinales a traducir
+     * @return Array de items indexado por ordinal
+     */
+    private Item[] resolverItems(List<Usuari> users, MapaIntDouble sums) {
+        if (dataset != null) {
+            ColumnasItems columnas = dataset.getColumnas();
+            Item[] items = new Item[columnas.size()];
+            for (int o = 0; o < items.length; ++o) items[o] = columnas.getItem(o);
+            return items;
+        }
+        int max = -1;
+        for (int p = 0; p < sums.capacidad(); ++p)
+            if (sums.ocupada(p)) max = Math.max(max, sums.clave(p));
+        Item[] items = new Item[max + 1];
+        for (Usuari i : users) {
+            if (i.getMatriz() != null) {
+                MatrizValoraciones m = i.getMatriz();
+                for (int p = m.inicioFila(i.getFila()); p < m.finFila(i.getFila()); ++p)
+                    if (m.item(p) <= max) items[m.item(p)] = m.getItem(m.item(p));
             }
-            predictions = new LinkedHashMap<>(finalPreds);
+            else for (Item it : i.getRatedItems().keySet())
+                if (it.getOrdinal() >= 0 && it.getOrdinal() <= max) items[it.getOrdinal()] = it;
         }
+        return items;
     }
 
     /**
@@ -69,6 +159,7 @@ public class SlopeOne extends Algorisme {
      */
 
     public HashMap<Item, Double> getPredictions() {
+        if (predictions == null) predictions = topK.aMapa(itemsTopK);
         return predictions;
     }
 
@@ -82,4 +173,15 @@ public class SlopeOne extends Algorisme {
         super.setUser(u);
     }
 
+    /**
+     * @param u Usuario sobre el cual se realizaran las predicciones
+     * @param dataset Conjunto de items al que se refieren las valoraciones
+     * @brief Constructora de SlopeOne que traduce los ordinales de las predicciones a items mediante el dataset
+     */
+
+    public SlopeOne(Usuari u, Cjt_items dataset) {
+        this(u);
+        this.dataset = dataset;
+    }
+
 }
\ No newline at end of file
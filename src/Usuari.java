@@ -21,6 +21,11 @@ public class Usuari {
 
     private int userId;
 
+    /**
+     * @brief Ordinal denso del usuario en el DiccionarioUsuarios de los datos de los que proviene, -1 si no tiene
+     */
+    private int ordinal = -1;
+
 
     private Centroid centroid = new Centroid();
 
@@ -49,6 +54,26 @@ public class Usuari {
 
     private HashMap<Item, Double> ratedItems = new HashMap<>();
 
+    /**
+     * @brief Vista primitiva de ratedItems indexada por el ordinal de los items, construida bajo demanda
+     */
+    private MapaIntDouble valoraciones;
+
+    /**
+     * @brief Vista de las valoraciones ordenada por ordinal de item, construida bajo demanda
+     */
+    private VectorOrdenado ordenadas;
+
+    /**
+     * @brief Matriz de valoraciones de la que el usuario es una vista (null si el usuario guarda sus propias valoraciones)
+     */
+    private MatrizValoraciones matriz;
+
+    /**
+     * @brief Fila de la matriz que contiene las valoraciones del usuario
+     */
+    private int fila;
+
     /**
      * @brief Constructora de Usuari con id = userId
      * @param userId Identificador del Usuario
@@ -64,7 +89,28 @@ public class Usuari {
 
     public Usuari(Usuari u) {
         this.userId = u.getUserId();
-        ratedItems = new HashMap<>(u.getRatedItems());
+        this.ordinal = u.getOrdinal();
+        if (u.ratedItems == null) {
+            this.matriz = u.matriz;
+            this.fila = u.fila;
+            this.ratedItems = null;
+        }
+        else ratedItems = new HashMap<>(u.getRatedItems());
+    }
+
+    /**
+     * @brief Constructora de Usuari como vista de una fila de una matriz de valoraciones. Las valoraciones se leen de la
+     * matriz y el Map de getRatedItems() solo se construye si se pide
+     * @param userId Identificador del Usuario
+     * @param matriz Matriz de valoraciones
+     * @param fila Fila de la matriz (ordinal del usuario) con sus valoraciones
+     */
+    public Usuari(int userId, MatrizValoraciones matriz, int fila) {
+        this.userId = userId;
+        this.ordinal = fila;
+        this.matriz = matriz;
+        this.fila = fila;
+        this.ratedItems = null;
     }
 
     /**
@@ -85,21 +131,89 @@ public class Usuari {
 
     public int getUserId() { return userId; }
 
+    /**
+     * @brief Metodo getter del ordinal del usuario
+     * @return El ordinal denso del usuario, o -1 si no tiene
+     */
+    public int getOrdinal() { return ordinal; }
+
+    /**
+     * @brief Setter del ordinal del usuario
+     * @param ordinal Ordinal denso del usuario
+     */
+    public void setOrdinal(int ordinal) { this.ordinal = ordinal; }
+
+    /**
+     * @brief Metodo getter de las valoraciones del usuario indexadas por el ordinal de cada item. Los items sin ordinal
+     * (que no pertenecen a ningun Cjt_items) no aparecen en esta vista
+     * @return Mapa primitivo de ordinal de item a valoracion
+     */
+    public MapaIntDouble getValoraciones() {
+        if (valoraciones == null && ratedItems == null) {
+            int ini = matriz.inicioFila(fila), fin = matriz.finFila(fila);
+            MapaIntDouble v = new MapaIntDouble(fin - ini);
+            for (int p = ini; p < fin; ++p) v.put(matriz.item(p), matriz.valor(p));
+            valoraciones = v;
+        }
+        else if (valoraciones == null) {
+            MapaIntDouble v = new MapaIntDouble(ratedItems.size());
+            for (Map.Entry<Item, Double> e : ratedItems.entrySet())
+                if (e.getKey().getOrdinal() >= 0) v.put(e.getKey().getOrdinal(), e.getValue());
+            valoraciones = v;
+        }
+        return valoraciones;
+    }
+
+    /**
+     * @brief Metodo getter de las valoraciones del usuario ordenadas por el ordinal de cada item, para compararlas por mezcla
+     * @return Vector ordenado con las mismas entradas que getValoraciones()
+     */
+    public VectorOrdenado getValoracionesOrdenadas() {
+        if (ordenadas == null) ordenadas = new VectorOrdenado(getValoraciones());
+        return ordenadas;
+    }
+
     /**
      * @brief Metodo getter de las valoraciones realizadas por un usuario
      * @return Una estructura de datos que almacena las valoraciones realizdas por el usuario
      */
 
     public HashMap<Item, Double> getRatedItems() {
+        if (ratedItems == null) {
+            int ini = matriz.inicioFila(fila), fin = matriz.finFila(fila);
+            HashMap<Item, Double> r = new HashMap<>(2 * (fin - ini));
+            for (int p = ini; p < fin; ++p) r.put(matriz.getItem(matriz.item(p)), (double) matriz.valor(p));
+            ratedItems = r;
+            matriz = null;
+        }
         return ratedItems;
     }
 
+    /**
+     * @brief Metodo getter de la matriz de la que el usuario es una vista
+     * @return La matriz de valoraciones, o null si el usuario guarda sus propias valoraciones
+     */
+    public MatrizValoraciones getMatriz() {
+        return matriz;
+    }
+
+    /**
+     * @brief Metodo getter de la fila de la matriz que contiene las valoraciones del usuario
+     * @return La fila del usuario en getMatriz()
+     */
+    public int getFila() {
+        return fila;
+    }
+
     /**
      * @brief Setter de ratedItems
      * @param ratedItems Map de los items valorados y sus valoraciones
      */
     public void setRatedItems(HashMap<Item, Double> ratedItems) {
         this.ratedItems = ratedItems;
+        this.valoraciones = null;
+        this.ordenadas = null;
+        this.matriz = null;
     }
 
     /**
@@ -108,7 +222,9 @@ public class Usuari {
      * @param rating La valoracion del item
      */
     public void addRatedItems(Item i, Double rating) {
-        ratedItems.put(i,rating);
+        getRatedItems().put(i,rating);
+        if (valoraciones != null && i.getOrdinal() >= 0) valoraciones.put(i.getOrdinal(), rating);
+        ordenadas = null;
     }
 
     /** @brief override del metodo equals */
@@ -0,0 +1,46 @@
+/**
+ @file VectorOrdenado.java
+ @brief Codigo de la clase VectorOrdenado
+
+ */
+package dominio.clases;
+
+import java.util.*;
+
+/**
+ * @class VectorOrdenado
+ * @brief Vector disperso de valoraciones guardado como dos arrays paralelos, los ordinales de los items en orden creciente
+ *    y sus valoraciones. Dos vectores ordenados se comparan recorriendolos a la vez (como en la mezcla de un mergesort),
+ *    sin calcular ningun hash.
+ * @author Muhammad Haris
+ */
+public final class VectorOrdenado {
+
+    private final int[] ordinales;
+    private final double[] valores;
+
+    /**
+     * @brief Constructora a partir de un mapa primitivo de ordinal de item a valoracion
+     * @param m Mapa del que se copian las entradas
+     */
+    public VectorOrdenado(MapaIntDouble m) {
+        ordinales = m.clavesOrdenadas();
+        valores = new double[ordinales.length];
+        for (int i = 0; i < ordinales.length; ++i) valores[i] = m.get(ordinales[i], Double.NaN);
+    }
+
+    /**
+     * @brief Numero de entradas del vector
+     */
+    public int size() { return ordinales.length; }
+
+    /**
+     * @brief Ordinal del item de la entrada i (creciente con i)
+     */
+    public int ordinal(int i) { return ordinales[i]; }
+
+    /**
+     * @brief Valoracion de la entrada i
+     */
+    public double valor(int i) { return valores[i]; }
+}
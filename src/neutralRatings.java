@@ -164,7 +164,7 @@ public class neutralRatings {
         for (int i : UserRatings.keySet()){
             HashMap<Item,Double> item_ratings = UserRatings.get(i);
             for (String id : datasetItems.keySet()){
-                Item it = new Item(id);
+                Item it = datasetItems.get(id);
                 if (!item_ratings.containsKey(it)){
                     item_ratings.put(it, neutral);
 